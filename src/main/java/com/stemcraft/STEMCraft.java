@@ -2,15 +2,18 @@ package com.stemcraft;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
-import java.util.logging.Logger;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
@@ -23,11 +26,14 @@ import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitRunnable;
 import com.stemcraft.core.SMBridge;
 import com.stemcraft.core.SMCommon;
+import com.stemcraft.core.SMComponentIndex;
 import com.stemcraft.core.SMDatabase;
 import com.stemcraft.core.SMDebugger;
 import com.stemcraft.core.SMFeature;
+import com.stemcraft.core.SMFeatureManager;
 import com.stemcraft.core.SMLocale;
 import com.stemcraft.core.SMMessenger;
+import com.stemcraft.core.SMPersistent;
 import com.stemcraft.core.SMTask;
 import com.stemcraft.core.command.SMCommand;
 import com.stemcraft.core.config.SMConfig;
@@ -53,11 +59,6 @@ public class STEMCraft extends JavaPlugin implements Listener {
      */
     private Boolean allowEnable = true;
 
-    /**
-     * A list of loaded features in the plugin.
-     */
-    private static HashMap<String, SMFeature> features = new HashMap<>();
-
     private static HashMap<String, Long> runOnceMap = new HashMap<>();
     private static HashMap<String, SMTask> runOnceMapDelay = new HashMap<>();
 
@@ -68,6 +69,11 @@ public class STEMCraft extends JavaPlugin implements Listener {
      */
     private static String displayVersion = null;
 
+    /**
+     * The component index by type, loaded on first use.
+     */
+    private static Map<String, List<String>> componentIndex = null;
+
     /**
      * On Bukkit Plugin load
      */
@@ -170,9 +176,7 @@ public class STEMCraft extends JavaPlugin implements Listener {
         });
 
         // Enable features
-        features.forEach((name, instance) -> {
-            enableFeature(name);
-        });
+        SMFeatureManager.enableAll();
 
         SMEvent.register(PlayerJoinEvent.class, EventPriority.HIGHEST, (ctx) -> {
             PlayerJoinEvent event = (PlayerJoinEvent) ctx.event;
@@ -194,6 +198,8 @@ public class STEMCraft extends JavaPlugin implements Listener {
             .tabComplete("info")
             .tabComplete("give", "{material}", "{quantity}", "{player}")
             .tabComplete("reload")
+            .tabComplete("stats")
+            .tabComplete("features")
             .action(ctx -> {
                 if (ctx.args.size() == 0) {
                     ctx.returnInvalidArgs();
@@ -209,6 +215,27 @@ public class STEMCraft extends JavaPlugin implements Listener {
                         onEnable();
 
                         ctx.returnInfo("STEMCraft reloaded");
+                    } else if ("stats".equalsIgnoreCase(ctx.args.get(0))) {
+                        ctx.checkPermission("stemcraft.stats");
+
+                        SMMessenger.info(ctx.sender, "Statement cache: " + SMDatabase.getStatementCacheSize()
+                            + " open, " + SMDatabase.getStatementCacheHits() + " hits, "
+                            + SMDatabase.getStatementCacheMisses() + " misses");
+                        SMMessenger.info(ctx.sender, "Persistent cache: " + SMPersistent.getCacheStats());
+                        SMMessenger.info(ctx.sender, "Event dispatch: " + SMEvent.getDispatcherCount()
+                            + " executors, " + SMEvent.getCallbackCount() + " callbacks");
+                    } else if ("features".equalsIgnoreCase(ctx.args.get(0))) {
+                        ctx.checkPermission("stemcraft.stats");
+
+                        for (String name : SMFeatureManager.getNames()) {
+                            SMFeatureManager.State state = SMFeatureManager.getState(name);
+                            double time = SMFeatureManager.getEnableTime(name);
+
+                            String status = state != null ? state.name().toLowerCase().replace('_', ' ') : "not enabled";
+
+                            SMMessenger.info(ctx.sender,
+                                name + ": " + status + (time >= 0 ? String.format(" in %.2fms", time) : ""));
+                        }
                     } else if ("give".equalsIgnoreCase(ctx.args.get(0))) {
                         ctx.checkArgsLocale(2, "STEMCRAFT_GIVE_USAGE_SHOW");
                         ctx.checkBooleanLocale(!(ctx.fromConsole() && ctx.args.size() < 3),
@@ -254,19 +281,11 @@ public class STEMCraft extends JavaPlugin implements Listener {
     @Override
     public void onDisable() {
         // Disable features
-        features.forEach((name, instance) -> {
-            if (instance.isEnabled()) {
-                instance.disable();
-                if (!instance.isEnabled()) {
-                    getLogger().info("Feature " + name + " disabled");
-                } else {
-                    getLogger().info("Feature " + name + " could not be disabled");
-                }
-            }
-        });
+        SMFeatureManager.disableAll();
 
         // Disconnect from Database
         if (SMDatabase.isConnected()) {
+            SMPersistent.flush();
             SMDatabase.disconnect();
         }
     }
@@ -293,39 +312,51 @@ public class STEMCraft extends JavaPlugin implements Listener {
     }
 
     /**
-     * JarFileProcessor callback interface
+     * Get the components of a type listed in the component index. The index is written into the plugin jar at build
+     * time. If the plugin was built without it, the jar is scanned once instead.
+     *
+     * @param type The component type: feature, adapter or locale.
+     * @return The class names, or file names for locales, of the components.
      */
-    @FunctionalInterface
-    public interface JarFileProcessor {
-        void process(JarEntry jarFile);
+    public static synchronized List<String> getComponents(String type) {
+        if (componentIndex == null) {
+            componentIndex = loadComponentIndex();
+        }
+
+        return componentIndex.getOrDefault(type, Collections.emptyList());
     }
 
     /**
-     * Iterate plugin files using the callback
-     * 
-     * @param callback
+     * Load the component index from the plugin jar, falling back to scanning the jar.
+     *
+     * @return The components by type.
      */
-    public static void iteratePluginFiles(String path, JarFileProcessor callback) {
+    private static Map<String, List<String>> loadComponentIndex() {
+        long start = System.nanoTime();
+
+        try (InputStream stream = STEMCraft.class.getClassLoader().getResourceAsStream(SMComponentIndex.RESOURCE)) {
+            if (stream != null) {
+                Map<String, List<String>> index = SMComponentIndex.read(stream);
+                info("Loaded component index in " + (System.nanoTime() - start) / 1000 + "us");
+                return index;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        Map<String, List<String>> index = new HashMap<>();
         try {
             File pluginFile = new File(STEMCraft.class.getProtectionDomain().getCodeSource().getLocation().toURI());
-            if (pluginFile.getPath().endsWith(".jar")) {
-                try (JarInputStream jarInputStream = new JarInputStream(new FileInputStream(pluginFile))) {
-                    JarEntry jarEntry;
-                    while ((jarEntry = jarInputStream.getNextJarEntry()) != null) {
-                        if (path != null && path != "") {
-                            String className = jarEntry.getName();
-                            if (!className.startsWith(path)) {
-                                continue;
-                            }
-                        }
-
-                        callback.process(jarEntry);
-                    }
-                }
+            try (JarInputStream jar = new JarInputStream(new FileInputStream(pluginFile))) {
+                index = SMComponentIndex.scan(jar);
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
+
+        warning("Component index not found, scanned the plugin jar in " + (System.nanoTime() - start) / 1000
+            + "us");
+        return index;
     }
 
     /**
@@ -360,26 +391,19 @@ public class STEMCraft extends JavaPlugin implements Listener {
      * @return
      */
     public static Boolean featureEnabled(String name) {
-        if (features.containsKey(name)) {
-            return features.get(name).isEnabled();
-        }
-
-        return false;
+        return SMFeatureManager.isEnabled(name);
     }
 
     /**
-     * Return the instance of a specific feature.
+     * Return the instance of a specific feature. A lazy feature that is waiting to be enabled is enabled first.
      * 
      * @param name
      * @return
      */
     public static <T extends SMFeature> T getFeature(String name, Class<T> featureClass) {
-        if (features.containsKey(name)) {
-            SMFeature foundFeature = features.get(name);
-
-            if (featureClass.isInstance(foundFeature)) {
-                return featureClass.cast(foundFeature);
-            }
+        SMFeature foundFeature = SMFeatureManager.get(name);
+        if (featureClass.isInstance(foundFeature)) {
+            return featureClass.cast(foundFeature);
         }
 
         return null;
@@ -389,71 +413,31 @@ public class STEMCraft extends JavaPlugin implements Listener {
      * Load the plugin features.
      */
     private static void loadFeatures() {
-        iteratePluginFiles("com/stemcraft/feature/", jar -> {
-            String className = jar.getName();
-
-            if (className.endsWith(".class")) {
-                try {
-                    Class<?> classItem = Class.forName(
-                        className.substring(0, className.length() - 6).replaceAll("/", "."));
-
-                    if (SMFeature.class.isAssignableFrom(classItem)) {
-                        @SuppressWarnings("unchecked")
-                        Class<? extends SMFeature> smFeatureClass = (Class<? extends SMFeature>) classItem;
-                        Constructor<?> constructor = smFeatureClass.getDeclaredConstructor();
-                        SMFeature featureInstance = (SMFeature) constructor.newInstance();
-                        String featureName = featureInstance.getName();
-
-                        if (featureName.length() > 0 && !features.containsKey(featureName)) {
-                            if (featureInstance.onLoad()) {
-                                features.put(featureName, featureInstance); // Store the instance, not the class
-                            }
+        long start = System.nanoTime();
+
+        for (String className : getComponents("feature")) {
+            try {
+                Class<?> classItem = Class.forName(className);
+
+                if (SMFeature.class.isAssignableFrom(classItem) && !Modifier.isAbstract(classItem.getModifiers())) {
+                    @SuppressWarnings("unchecked")
+                    Class<? extends SMFeature> smFeatureClass = (Class<? extends SMFeature>) classItem;
+                    Constructor<?> constructor = smFeatureClass.getDeclaredConstructor();
+                    SMFeature featureInstance = (SMFeature) constructor.newInstance();
+                    String featureName = featureInstance.getName();
+
+                    if (featureName.length() > 0 && !SMFeatureManager.contains(featureName)) {
+                        if (featureInstance.onLoad()) {
+                            SMFeatureManager.add(featureInstance);
                         }
                     }
-                } catch (Exception e) {
-                    e.printStackTrace();
                 }
+            } catch (Exception e) {
+                e.printStackTrace();
             }
-        });
-    }
-
-    private static Boolean enableFeature(String name) {
-        Logger logger = STEMCraft.getPlugin().getLogger();
-
-        if (SMConfig.main().getBoolean("features." + name, true)) {
-            SMFeature instance = features.getOrDefault(name, null);
-            if (instance != null) {
-                if (!instance.isEnabled()) {
-                    // check required features are enabled
-                    for (String required : instance.getRequireFeatures()) {
-                        if (!enableFeature(required)) {
-                            logger
-                                .info("Feature " + name + " not enabled as it requires " + required + " to be enabled");
-                            return false;
-                        }
-                    }
-
-                    // perform any load befores
-                    for (String loadAfter : instance.getLoadAfterFeatures()) {
-                        enableFeature(loadAfter);
-                    }
-
-                    instance.enable();
-                    if (instance.isEnabled()) {
-                        logger.info("Feature " + name + " enabled");
-                        return true;
-                    }
-                } else {
-                    return true;
-                }
-            }
-
-            logger.info("Feature " + name + " not enabled");
-            return false;
-        } else {
-            logger.info("Feature " + name + " disabled in config");
-            return false;
         }
+
+        info("Loaded " + SMFeatureManager.size() + " features in " + (System.nanoTime() - start) / 1000000 + "ms");
     }
 
     /**
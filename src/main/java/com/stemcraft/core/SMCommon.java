@@ -16,6 +16,7 @@ import org.bukkit.inventory.meta.Damageable;
 import org.bukkit.inventory.meta.ItemMeta;
 import com.stemcraft.STEMCraft;
 import com.stemcraft.core.config.SMConfig;
+import com.stemcraft.core.event.SMPlayerPrepareTeleportEvent;
 import lombok.NonNull;
 import static org.bukkit.ChatColor.COLOR_CHAR;
 import java.text.DecimalFormat;
@@ -374,12 +375,15 @@ public class SMCommon {
     }
 
     /**
-     * Teleport a player after 1 tick. This avoids the moved too quickly issue
+     * Teleport a player after 1 tick. This avoids the moved too quickly issue. A SMPlayerPrepareTeleportEvent is called
+     * first so features can prepare for the destination in the meantime.
      * 
      * @param player
      * @param location
      */
     public static void delayedPlayerTeleport(Player player, Location location) {
+        Bukkit.getPluginManager().callEvent(new SMPlayerPrepareTeleportEvent(player, location));
+
         STEMCraft.runLater(1, () -> {
             player.teleport(location);
         });
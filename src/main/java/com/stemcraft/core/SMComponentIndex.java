@@ -0,0 +1,90 @@
+package com.stemcraft.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+/**
+ * The features, JSON adapters and locales in the plugin jar.
+ *
+ * The index is written into the jar by the component-index step of the build. Each line holds a component type and a
+ * name separated by a space, such as "feature com.stemcraft.feature.SMWaystones" or "locale messages_en.yml". Blank
+ * lines are ignored. A jar built without the index can be scanned for the same components instead.
+ */
+public class SMComponentIndex {
+    /**
+     * The resource holding the component index.
+     */
+    public static final String RESOURCE = "stemcraft-components.index";
+
+    /**
+     * Read a component index.
+     *
+     * @param stream The index resource.
+     * @return The component names by type.
+     * @throws IOException
+     */
+    public static Map<String, List<String>> read(InputStream stream) throws IOException {
+        Map<String, List<String>> index = new HashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            int space = line.indexOf(' ');
+            if (space > 0) {
+                index.computeIfAbsent(line.substring(0, space), key -> new ArrayList<>())
+                    .add(line.substring(space + 1).trim());
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Scan a jar for the components the build would list in the index.
+     *
+     * @param jar The jar.
+     * @return The component names by type.
+     * @throws IOException
+     */
+    public static Map<String, List<String>> scan(JarInputStream jar) throws IOException {
+        Map<String, List<String>> index = new HashMap<>();
+        JarEntry entry;
+
+        while ((entry = jar.getNextJarEntry()) != null) {
+            add(index, entry.getName());
+        }
+
+        return index;
+    }
+
+    /**
+     * Add a jar entry to an index if it is a component. These are the top level classes below the feature and adapter
+     * packages, and the locale files in the jar root.
+     *
+     * @param index The component names by type.
+     * @param name The jar entry name.
+     */
+    static void add(Map<String, List<String>> index, String name) {
+        if (name.endsWith(".class") && !name.contains("$")) {
+            String className = name.substring(0, name.length() - 6).replace('/', '.');
+
+            if (name.startsWith("com/stemcraft/feature/")) {
+                index.computeIfAbsent("feature", key -> new ArrayList<>()).add(className);
+            } else if (name.startsWith("com/stemcraft/core/adapters/")) {
+                index.computeIfAbsent("adapter", key -> new ArrayList<>()).add(className);
+            }
+        } else if (name.startsWith("messages_") && name.endsWith(".yml")) {
+            index.computeIfAbsent("locale", key -> new ArrayList<>()).add(name);
+        }
+    }
+}
@@ -2,20 +2,123 @@ package com.stemcraft.core;
 
 import java.sql.*;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import org.bukkit.Bukkit;
+import org.sqlite.SQLiteConfig;
 import org.sqlite.SQLiteDataSource;
 import com.stemcraft.STEMCraft;
 import com.stemcraft.core.exception.SMException;
 import com.stemcraft.core.interfaces.SMSQLConsumer;
+import com.stemcraft.core.interfaces.SMSQLFunction;
+import com.stemcraft.core.interfaces.SMSQLTask;
 
 public class SMDatabase {
     private static Connection connection = null;
     private static final String DATABASE_NAME = "database.db";
     public static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
+    /**
+     * The number of threads servicing asynchronous read queries.
+     */
+    private static final int READ_THREADS = 2;
+
+    /**
+     * The number of read only connections kept open. This covers the reader threads plus synchronous reads from the
+     * main and chat threads.
+     */
+    private static final int READ_CONNECTIONS = READ_THREADS + 2;
+
+    /**
+     * The number of milliseconds to wait for a free read connection before giving up.
+     */
+    private static final int READ_TIMEOUT_MS = 5000;
+
+    /**
+     * The number of milliseconds SQLite waits on a locked database before returning SQLITE_BUSY.
+     */
+    private static final int BUSY_TIMEOUT_MS = 5000;
+
+    /**
+     * The page cache size in KiB for the writer and each reader connection.
+     */
+    private static final int WRITE_CACHE_KB = 8192;
+    private static final int READ_CACHE_KB = 2048;
+
+    /**
+     * The maximum number of prepared statements cached per connection.
+     */
+    private static final int STATEMENT_CACHE_SIZE = 64;
+
+    /**
+     * The number of seconds to wait for queued writes when disconnecting.
+     */
+    private static final int SHUTDOWN_TIMEOUT_SECS = 30;
+
+    /**
+     * Guards the writer connection. Held by whichever thread is currently using it.
+     */
+    private static final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * The pool of read only connections.
+     */
+    private static final BlockingQueue<Connection> readPool = new LinkedBlockingQueue<>();
+
+    /**
+     * The read connection borrowed by the current thread, so nested reads reuse it.
+     */
+    private static final ThreadLocal<Connection> borrowedRead = new ThreadLocal<>();
+
+    /**
+     * The prepared statement cache for each open connection.
+     */
+    private static final Map<Connection, SMStatementCache> statementCaches = new ConcurrentHashMap<>();
+
+    /**
+     * The single thread that performs all asynchronous writes, in the order they were queued.
+     */
+    private static ExecutorService writeExecutor = null;
+
+    /**
+     * The threads that perform asynchronous read queries.
+     */
+    private static ExecutorService readExecutor = null;
+
+    /**
+     * The writer thread, used to detect when we are already running on it.
+     */
+    private static volatile Thread writeThread = null;
+
+    /**
+     * The names of the migrations recorded in the database, loaded once when connecting.
+     */
+    private static final Set<String> appliedMigrations = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The batched migrations currently running in the background, by name.
+     */
+    private static final Map<String, CompletableFuture<Void>> runningMigrations = new ConcurrentHashMap<>();
+
     /**
      * Return if connected to the database.
-     * 
+     *
      * @return
      */
     public static Boolean isConnected() {
@@ -23,7 +126,8 @@ public class SMDatabase {
     }
 
     /**
-     * Connect to the database (if not already connected).
+     * Connect to the database (if not already connected). The writer connection switches the database to WAL
+     * journaling so that the read only connections can query while a write is in progress.
      */
     public static Boolean connect() {
         if (connection != null) {
@@ -32,31 +136,93 @@ public class SMDatabase {
 
         try {
             DATE_FORMAT.setTimeZone(TimeZone.getTimeZone("UTC"));
-            SQLiteDataSource dataSource = new SQLiteDataSource();
-            dataSource.setUrl("jdbc:sqlite:" + STEMCraft.getPlugin().getDataFolder().getAbsolutePath() + "/"
-                + SMDatabase.DATABASE_NAME);
-            connection = dataSource.getConnection();
+
+            String url = "jdbc:sqlite:" + STEMCraft.getPlugin().getDataFolder().getAbsolutePath() + "/"
+                + SMDatabase.DATABASE_NAME;
+
+            SQLiteConfig writeConfig = new SQLiteConfig();
+            writeConfig.setJournalMode(SQLiteConfig.JournalMode.WAL);
+            writeConfig.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+            writeConfig.setTempStore(SQLiteConfig.TempStore.MEMORY);
+            writeConfig.setCacheSize(-WRITE_CACHE_KB);
+            writeConfig.setBusyTimeout(BUSY_TIMEOUT_MS);
+
+            SQLiteDataSource writeSource = new SQLiteDataSource(writeConfig);
+            writeSource.setUrl(url);
+            connection = writeSource.getConnection();
 
             initalize();
+
+            SQLiteConfig readConfig = new SQLiteConfig();
+            readConfig.setReadOnly(true);
+            readConfig.setTempStore(SQLiteConfig.TempStore.MEMORY);
+            readConfig.setCacheSize(-READ_CACHE_KB);
+            readConfig.setBusyTimeout(BUSY_TIMEOUT_MS);
+
+            SQLiteDataSource readSource = new SQLiteDataSource(readConfig);
+            readSource.setUrl(url);
+            for (int i = 0; i < READ_CONNECTIONS; i++) {
+                readPool.add(readSource.getConnection());
+            }
+
+            startExecutors();
             return true;
         } catch (SQLException e) {
             e.printStackTrace();
+            closeStatementCaches();
+            closeReadPool();
         }
 
         return false;
     }
 
     /**
-     * Disconnect from the database if connected.
+     * Disconnect from the database if connected. Any queued writes are completed before the connections are closed.
      */
     public static void disconnect() {
+        stopExecutors();
+        closeStatementCaches();
+        closeReadPool();
+
+        writeLock.lock();
         try {
             if (connection != null) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("PRAGMA optimize");
+                    statement.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+
                 connection.close();
                 connection = null;
             }
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Close all cached prepared statements.
+     */
+    private static void closeStatementCaches() {
+        statementCaches.values().forEach(SMStatementCache::close);
+        statementCaches.clear();
+    }
+
+    /**
+     * Close all pooled read connections.
+     */
+    private static void closeReadPool() {
+        Connection readConnection;
+        while ((readConnection = readPool.poll()) != null) {
+            try {
+                readConnection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
         }
     }
 
@@ -70,14 +236,79 @@ public class SMDatabase {
 
         try (Statement statement = SMDatabase.connection.createStatement()) {
             statement.execute(createTableSQL);
+
+            appliedMigrations.clear();
+            try (ResultSet resultSet = statement.executeQuery("SELECT migration FROM " + tableName)) {
+                while (resultSet.next()) {
+                    appliedMigrations.add(resultSet.getString(1));
+                }
+            }
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Prepare a database statement.
-     * 
+     * Start the read and write executors.
+     */
+    private static void startExecutors() {
+        if (writeExecutor == null) {
+            writeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "STEMCraft-DB-Writer");
+                thread.setDaemon(true);
+                writeThread = thread;
+                return thread;
+            });
+        }
+
+        if (readExecutor == null) {
+            readExecutor = Executors.newFixedThreadPool(READ_THREADS, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "STEMCraft-DB-Reader-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Stop the read and write executors, waiting for any queued work to finish.
+     */
+    private static void stopExecutors() {
+        if (readExecutor != null) {
+            readExecutor.shutdown();
+        }
+
+        if (writeExecutor != null) {
+            writeExecutor.shutdown();
+        }
+
+        try {
+            if (writeExecutor != null && !writeExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECS, TimeUnit.SECONDS)) {
+                STEMCraft.warning("Timed out waiting for database writes to complete");
+                writeExecutor.shutdownNow();
+            }
+
+            if (readExecutor != null && !readExecutor.awaitTermination(SHUTDOWN_TIMEOUT_SECS, TimeUnit.SECONDS)) {
+                readExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        writeExecutor = null;
+        readExecutor = null;
+        writeThread = null;
+    }
+
+    /**
+     * Prepare a database statement on the writer connection. Only safe from within a migration or a
+     * {@link #write(SMSQLFunction)} callback, where the writer connection is held by the calling thread.
+     *
      * @param statement
      * @return
      */
@@ -94,8 +325,278 @@ public class SMDatabase {
     }
 
     /**
-     * Run a database migration if it is not yet executed in the database.
-     * 
+     * Get a cached prepared statement for a connection, preparing it on first use. The statement belongs to the cache
+     * and must not be closed by the caller.
+     *
+     * @param connection The connection passed to the database callback.
+     * @param sql The SQL to prepare.
+     * @return The prepared statement with its parameters cleared.
+     * @throws SQLException
+     */
+    public static PreparedStatement prepareCached(Connection connection, String sql) throws SQLException {
+        return statementCaches.computeIfAbsent(connection, key -> new SMStatementCache(key, STATEMENT_CACHE_SIZE))
+            .prepare(sql);
+    }
+
+    /**
+     * Return the total number of prepared statements served from the statement caches.
+     *
+     * @return The hit count.
+     */
+    public static long getStatementCacheHits() {
+        return statementCaches.values().stream().mapToLong(SMStatementCache::getHits).sum();
+    }
+
+    /**
+     * Return the total number of prepared statements that had to be compiled.
+     *
+     * @return The miss count.
+     */
+    public static long getStatementCacheMisses() {
+        return statementCaches.values().stream().mapToLong(SMStatementCache::getMisses).sum();
+    }
+
+    /**
+     * Return the total number of prepared statements currently held open by the statement caches.
+     *
+     * @return The cached statement count.
+     */
+    public static int getStatementCacheSize() {
+        return statementCaches.values().stream().mapToInt(SMStatementCache::size).sum();
+    }
+
+    /**
+     * Run a read only query on the calling thread using a pooled read connection. When called while the calling
+     * thread holds the writer connection, the writer connection is used instead so that uncommitted changes are
+     * visible.
+     *
+     * @param callback The query to run. Receives the connection to use.
+     * @return The query result.
+     * @throws SQLException
+     */
+    public static <T> T read(SMSQLFunction<T> callback) throws SQLException {
+        if (writeLock.isHeldByCurrentThread()) {
+            return callback.apply(connection);
+        }
+
+        Connection borrowed = borrowedRead.get();
+        if (borrowed != null) {
+            return callback.apply(borrowed);
+        }
+
+        if (connection == null) {
+            throw new SQLException("Database is not connected");
+        }
+
+        try {
+            borrowed = readPool.poll(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (borrowed == null) {
+            throw new SQLException("Timed out waiting for a database read connection");
+        }
+
+        borrowedRead.set(borrowed);
+        try {
+            return callback.apply(borrowed);
+        } finally {
+            borrowedRead.remove();
+            readPool.offer(borrowed);
+        }
+    }
+
+    /**
+     * Run a write on the calling thread using the writer connection. Blocks while another thread is using the writer
+     * connection.
+     *
+     * @param callback The write to run. Receives the connection to use.
+     * @return The callback result.
+     * @throws SQLException
+     */
+    public static <T> T write(SMSQLFunction<T> callback) throws SQLException {
+        writeLock.lock();
+        try {
+            if (connection == null) {
+                throw new SQLException("Database is not connected");
+            }
+
+            return callback.apply(connection);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Run a task inside a transaction on the connection. Changes are committed if the task completes and rolled back
+     * if it throws. If the connection is already inside a transaction the task joins it.
+     *
+     * @param connection The connection passed to the database callback.
+     * @param task The task to run.
+     * @throws SQLException
+     */
+    public static void transaction(Connection connection, SMSQLTask task) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            task.run(connection);
+            return;
+        }
+
+        connection.setAutoCommit(false);
+        try {
+            task.run(connection);
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Log a warning if a query is planned to scan a whole table or to sort its results in a temporary b-tree, which
+     * usually means an index is missing. Parameters in the query are left unbound.
+     *
+     * @param sql The query to check.
+     */
+    public static void checkQueryPlan(String sql) {
+        try {
+            List<String> problems = read(connection -> {
+                List<String> details = new ArrayList<>();
+
+                try (PreparedStatement statement = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+                    ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        String detail = resultSet.getString("detail");
+
+                        if ((detail.startsWith("SCAN ") && !detail.startsWith("SCAN CONSTANT ROW"))
+                            || detail.startsWith("USE TEMP B-TREE")) {
+                            details.add(detail);
+                        }
+                    }
+                }
+
+                return details;
+            });
+
+            if (!problems.isEmpty()) {
+                STEMCraft.warning("Query plan for \"" + sql + "\" uses " + String.join(", ", problems));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Run a read only query on a reader thread.
+     *
+     * @param callback The query to run. Receives the connection to use.
+     * @return A future completed with the query result.
+     */
+    public static <T> CompletableFuture<T> queryAsync(SMSQLFunction<T> callback) {
+        return submit(readExecutor, () -> read(callback));
+    }
+
+    /**
+     * Run a write on the writer thread. Writes are executed in the order they are queued.
+     *
+     * @param callback The write to run. Receives the connection to use.
+     * @return A future completed with the callback result.
+     */
+    public static <T> CompletableFuture<T> updateAsync(SMSQLFunction<T> callback) {
+        return submit(writeExecutor, () -> write(callback));
+    }
+
+    /**
+     * Run a write on the writer thread that does not return a result.
+     *
+     * @param callback The write to run. Receives the connection to use.
+     * @return A future completed once the write has finished.
+     */
+    public static CompletableFuture<Void> executeAsync(SMSQLTask callback) {
+        return submit(writeExecutor, () -> write(connection -> {
+            callback.run(connection);
+            return null;
+        }));
+    }
+
+    /**
+     * Hop the result of a database future back onto the server main thread.
+     *
+     * @param future The database future.
+     * @param callback The callback to run on the main thread with the result.
+     * @return A future completed once the callback has run.
+     */
+    public static <T> CompletableFuture<Void> sync(CompletableFuture<T> future, Consumer<T> callback) {
+        return future.thenAcceptAsync(result -> {
+            try {
+                callback.accept(result);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, SMDatabase::runSync);
+    }
+
+    /**
+     * Run a task on the server main thread. Runs immediately if already on the main thread or the plugin is
+     * disabled.
+     *
+     * @param runnable The task to run.
+     */
+    public static void runSync(Runnable runnable) {
+        if (Bukkit.isPrimaryThread() || !STEMCraft.getPlugin().isEnabled()) {
+            runnable.run();
+        } else {
+            Bukkit.getScheduler().runTask(STEMCraft.getPlugin(), runnable);
+        }
+    }
+
+    /**
+     * Return if the current thread is the database writer thread.
+     *
+     * @return If running on the writer thread.
+     */
+    public static boolean isWriterThread() {
+        return Thread.currentThread() == writeThread;
+    }
+
+    /**
+     * Submit a callback to an executor. If the executor is unavailable (not connected or shutting down), the callback
+     * is run on the calling thread so that writes are never lost.
+     *
+     * @param executor The executor to use.
+     * @param callback The callback to run.
+     * @return A future completed with the callback result.
+     */
+    private static <T> CompletableFuture<T> submit(ExecutorService executor, Callable<T> callback) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable runnable = () -> {
+            try {
+                future.complete(callback.call());
+            } catch (Throwable t) {
+                t.printStackTrace();
+                future.completeExceptionally(t);
+            }
+        };
+
+        if (executor == null || executor.isShutdown()) {
+            runnable.run();
+        } else {
+            try {
+                executor.execute(runnable);
+            } catch (RejectedExecutionException e) {
+                runnable.run();
+            }
+        }
+
+        return future;
+    }
+
+    /**
+     * Run a database migration if it is not yet executed in the database. The migration and its record are committed
+     * in a single transaction, so a migration that fails is rolled back and tried again on the next start.
+     *
      * @param name
      * @param callback
      */
@@ -104,33 +605,123 @@ public class SMDatabase {
             throw new SMException("Database is not connected");
         }
 
-        try {
-            PreparedStatement statement = connection.prepareStatement("SELECT id FROM migration WHERE migration = ?");
-            statement.setString(1, name);
-            ResultSet resultSet = statement.executeQuery();
+        if (appliedMigrations.contains(name)) {
+            return;
+        }
 
-            if (!resultSet.next()) {
-                resultSet.close();
-                statement.close();
+        writeLock.lock();
+        try {
+            if (appliedMigrations.contains(name)) {
+                return;
+            }
 
-                STEMCraft.info("Running migration " + name);
-                try {
-                    callback.accept();
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
+            STEMCraft.info("Running migration " + name);
+            long start = System.nanoTime();
 
-                statement = connection.prepareStatement("INSERT INTO migration (migration) VALUES (?)");
-                statement.setString(1, name);
-                statement.executeUpdate();
-            }
+            transaction(connection, transaction -> {
+                callback.accept();
+                recordMigration(transaction, name);
+            });
 
-            resultSet.close();
-            statement.close();
+            appliedMigrations.add(name);
+            STEMCraft.info("Migration " + name + " completed in " + elapsedMillis(start) + "ms");
         } catch (Exception e) {
             e.printStackTrace();
+            STEMCraft.warning("Migration " + name + " failed and was rolled back");
+        } finally {
+            writeLock.unlock();
         }
     }
 
+    /**
+     * Run a long data migration in the background if it is not yet executed in the database. The batch callback is
+     * called repeatedly on the writer thread, each call in its own transaction, until it returns false. Other writes
+     * are run between batches so the server is not held up.
+     *
+     * The migration is only recorded once the last batch completes. Each batch should select the rows still left to
+     * convert, so that a migration stopped by a failure or a restart carries on where it left off.
+     *
+     * @param name The migration name.
+     * @param batch Converts the next batch. Receives the connection to use and returns if there is more to do.
+     * @return A future completed once the migration has finished, or straight away if it has already been run.
+     */
+    public static CompletableFuture<Void> runBatchedMigration(String name, SMSQLFunction<Boolean> batch) {
+        if (appliedMigrations.contains(name)) {
+            return CompletableFuture.completedFuture(null);
+        }
 
+        return runningMigrations.computeIfAbsent(name, key -> {
+            STEMCraft.info("Running migration " + name + " in the background");
+
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.whenComplete((result, e) -> runningMigrations.remove(name));
+            runMigrationBatch(name, batch, future, System.nanoTime(), 1);
+
+            return future;
+        });
+    }
+
+    /**
+     * Queue the next batch of a batched migration.
+     *
+     * @param name The migration name.
+     * @param batch The batch callback.
+     * @param future The future of the migration.
+     * @param start The time the migration started, from {@link System#nanoTime()}.
+     * @param count The number of this batch.
+     */
+    private static void runMigrationBatch(String name, SMSQLFunction<Boolean> batch, CompletableFuture<Void> future,
+        long start, int count) {
+        if (writeExecutor == null || writeExecutor.isShutdown()) {
+            STEMCraft.warning("Migration " + name + " stopped after " + (count - 1) + " batches and will resume on the "
+                + "next start");
+            future.completeExceptionally(new SMException("Database is shutting down"));
+            return;
+        }
+
+        updateAsync(connection -> {
+            boolean[] more = {false};
+
+            transaction(connection, transaction -> {
+                more[0] = batch.apply(transaction);
+                if (!more[0]) {
+                    recordMigration(transaction, name);
+                }
+            });
+
+            return more[0];
+        }).whenComplete((more, e) -> {
+            if (e != null) {
+                STEMCraft.warning("Migration " + name + " failed in batch " + count + " and will resume on the next "
+                    + "start");
+                future.completeExceptionally(e);
+            } else if (more) {
+                runMigrationBatch(name, batch, future, start, count + 1);
+            } else {
+                appliedMigrations.add(name);
+                STEMCraft.info("Migration " + name + " completed in " + elapsedMillis(start) + "ms over " + count
+                    + " batches");
+                future.complete(null);
+            }
+        });
+    }
+
+    /**
+     * Record a migration as executed.
+     *
+     * @param connection The writer connection.
+     * @param name The migration name.
+     * @throws SQLException
+     */
+    private static void recordMigration(Connection connection, String name) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+            "INSERT INTO migration (migration) VALUES (?)")) {
+            statement.setString(1, name);
+            statement.executeUpdate();
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
 }
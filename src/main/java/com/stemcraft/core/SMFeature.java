@@ -22,6 +22,24 @@ public class SMFeature {
     @Getter
     protected List<String> requireFeatures = new ArrayList<>();
 
+    /**
+     * In lazy mode, enable this feature when one of these commands or aliases is first used
+     */
+    @Getter
+    protected List<String> lazyCommands = new ArrayList<>();
+
+    /**
+     * In lazy mode, enable this feature when a player first enters one of these worlds
+     */
+    @Getter
+    protected List<String> lazyWorlds = new ArrayList<>();
+
+    /**
+     * In lazy mode, enable this feature at startup if one of these config keys is true
+     */
+    @Getter
+    protected List<String> lazyConfig = new ArrayList<>();
+
     /**
      * Called when the feature is to be loaded (after enable).
      * Should return true if the plugin can be enabled.
@@ -72,6 +90,14 @@ public class SMFeature {
         return this.enabled;
     }
 
+    /**
+     * Return if the feature declares lazy triggers and can wait to be enabled.
+     * @return
+     */
+    public Boolean isLazy() {
+        return !lazyCommands.isEmpty() || !lazyWorlds.isEmpty() || !lazyConfig.isEmpty();
+    }
+
     /**
      * Called to disable the feature.
      */
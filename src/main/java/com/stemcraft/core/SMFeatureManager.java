@@ -0,0 +1,486 @@
+package com.stemcraft.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+import org.bukkit.event.server.ServerCommandEvent;
+import org.spigotmc.event.player.PlayerSpawnLocationEvent;
+import com.stemcraft.STEMCraft;
+import com.stemcraft.core.config.SMConfig;
+import com.stemcraft.core.event.SMEvent;
+
+/**
+ * Enables and disables the plugin features in dependency order.
+ *
+ * The required and load after features of each feature form a graph. Features are enabled in waves, where each wave
+ * holds the features whose dependencies have all been handled by earlier waves. Features in a dependency cycle, or
+ * that require a feature that could not be enabled, are not enabled.
+ *
+ * When lazy-features is set in the config, features that declare lazy triggers are not enabled at startup. They are
+ * enabled the first time one of their commands is used, a player enters one of their worlds, another feature asks for
+ * them or they are required by a feature being enabled. A lazy feature with a config trigger that is true is enabled at
+ * startup as usual.
+ */
+public class SMFeatureManager {
+    /**
+     * The state of a feature after the last enable.
+     */
+    public enum State {
+        DISABLED_IN_CONFIG, WAITING, ENABLED, FAILED
+    }
+
+    /**
+     * The loaded features by name.
+     */
+    private static final Map<String, SMFeature> features = new TreeMap<>();
+
+    /**
+     * The state of each feature.
+     */
+    private static final Map<String, State> states = new HashMap<>();
+
+    /**
+     * The time taken by each feature to enable in nanoseconds.
+     */
+    private static final Map<String, Long> enableTimes = new HashMap<>();
+
+    /**
+     * The features in the order they were enabled, so they can be disabled in reverse.
+     */
+    private static final List<String> enableOrder = new ArrayList<>();
+
+    /**
+     * Waiting features by lower case command label.
+     */
+    private static final Map<String, String> commandTriggers = new HashMap<>();
+
+    /**
+     * Waiting features by world name.
+     */
+    private static final Map<String, List<String>> worldTriggers = new HashMap<>();
+
+    /**
+     * If the trigger listeners have been registered.
+     */
+    private static boolean triggersRegistered = false;
+
+    /**
+     * Add a loaded feature.
+     *
+     * @param feature The feature.
+     * @return If the feature was added. False if a feature with the same name exists.
+     */
+    public static boolean add(SMFeature feature) {
+        return features.putIfAbsent(feature.getName(), feature) == null;
+    }
+
+    /**
+     * Return if a feature has been loaded.
+     *
+     * @param name The feature name.
+     * @return If the feature is loaded.
+     */
+    public static boolean contains(String name) {
+        return features.containsKey(name);
+    }
+
+    /**
+     * Return the number of loaded features.
+     *
+     * @return The feature count.
+     */
+    public static int size() {
+        return features.size();
+    }
+
+    /**
+     * Return if a feature is enabled. A waiting lazy feature is not enabled.
+     *
+     * @param name The feature name.
+     * @return If the feature is enabled.
+     */
+    public static boolean isEnabled(String name) {
+        SMFeature feature = features.get(name);
+        return feature != null && feature.isEnabled();
+    }
+
+    /**
+     * Return a feature, enabling it first if it is waiting for a lazy trigger.
+     *
+     * @param name The feature name.
+     * @return The feature or null if it is not loaded.
+     */
+    public static SMFeature get(String name) {
+        if (states.get(name) == State.WAITING) {
+            activate(name, "requested");
+        }
+
+        return features.get(name);
+    }
+
+    /**
+     * Return the state of a feature.
+     *
+     * @param name The feature name.
+     * @return The state or null if the feature has not been enabled since it was loaded.
+     */
+    public static State getState(String name) {
+        return states.get(name);
+    }
+
+    /**
+     * Return the time a feature took to enable.
+     *
+     * @param name The feature name.
+     * @return The time in milliseconds or -1 if the feature has not been enabled.
+     */
+    public static double getEnableTime(String name) {
+        Long nanos = enableTimes.get(name);
+        return nanos != null ? nanos / 1000000.0 : -1;
+    }
+
+    /**
+     * Return the loaded feature names in name order.
+     *
+     * @return The feature names.
+     */
+    public static List<String> getNames() {
+        return new ArrayList<>(features.keySet());
+    }
+
+    /**
+     * Enable the features in dependency order. Lazy features are left waiting for their triggers when lazy mode is
+     * set.
+     */
+    public static void enableAll() {
+        Logger logger = STEMCraft.getPlugin().getLogger();
+        long start = System.nanoTime();
+        boolean lazyMode = SMConfig.main().getBoolean("lazy-features", false);
+
+        states.clear();
+        enableTimes.clear();
+        commandTriggers.clear();
+        worldTriggers.clear();
+
+        // Build the graph from the features enabled in config
+        Map<String, Set<String>> dependents = new HashMap<>();
+        Map<String, Integer> inDegree = new TreeMap<>();
+        for (SMFeature feature : features.values()) {
+            String name = feature.getName();
+
+            if (SMConfig.main().getBoolean("features." + name, true)) {
+                inDegree.put(name, 0);
+                dependents.put(name, new HashSet<>());
+            } else {
+                states.put(name, State.DISABLED_IN_CONFIG);
+                logger.info("Feature " + name + " disabled in config");
+            }
+        }
+
+        for (String name : inDegree.keySet()) {
+            Set<String> dependencies = new HashSet<>(features.get(name).getRequireFeatures());
+            dependencies.addAll(features.get(name).getLoadAfterFeatures());
+
+            for (String dependency : dependencies) {
+                if (dependents.containsKey(dependency) && dependents.get(dependency).add(name)) {
+                    inDegree.merge(name, 1, Integer::sum);
+                }
+            }
+        }
+
+        // Enable the features in waves
+        List<String> wave = new ArrayList<>();
+        inDegree.forEach((name, degree) -> {
+            if (degree == 0) {
+                wave.add(name);
+            }
+        });
+
+        int waves = 0;
+        while (!wave.isEmpty()) {
+            waves++;
+
+            List<String> nextWave = new ArrayList<>();
+            for (String name : wave) {
+                inDegree.remove(name);
+                enableInWave(name, lazyMode);
+
+                for (String dependent : dependents.get(name)) {
+                    if (inDegree.merge(dependent, -1, Integer::sum) == 0) {
+                        nextWave.add(dependent);
+                    }
+                }
+            }
+
+            Collections.sort(nextWave);
+            wave.clear();
+            wave.addAll(nextWave);
+        }
+
+        // Anything left depends on itself through other features
+        for (String name : inDegree.keySet()) {
+            states.put(name, State.FAILED);
+            logger.warning("Feature " + name + " not enabled as it has a circular dependency");
+        }
+
+        if (!worldTriggers.isEmpty()) {
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                triggerWorld(player.getWorld());
+            }
+        }
+
+        if (!commandTriggers.isEmpty() || !worldTriggers.isEmpty()) {
+            registerTriggers();
+        }
+
+        long waiting = states.values().stream().filter(state -> state == State.WAITING).count();
+        logger.info("Enabled " + enableOrder.size() + " features in " + waves + " waves in "
+            + (System.nanoTime() - start) / 1000000 + "ms" + (waiting > 0 ? ", " + waiting + " waiting" : ""));
+    }
+
+    /**
+     * Disable the enabled features in the reverse order they were enabled.
+     */
+    public static void disableAll() {
+        Logger logger = STEMCraft.getPlugin().getLogger();
+
+        for (int i = enableOrder.size() - 1; i >= 0; i--) {
+            String name = enableOrder.get(i);
+            SMFeature feature = features.get(name);
+
+            if (feature.isEnabled()) {
+                feature.disable();
+                if (!feature.isEnabled()) {
+                    logger.info("Feature " + name + " disabled");
+                } else {
+                    logger.info("Feature " + name + " could not be disabled");
+                }
+            }
+        }
+
+        enableOrder.clear();
+        commandTriggers.clear();
+        worldTriggers.clear();
+        states.clear();
+    }
+
+    /**
+     * Handle a feature whose dependencies have all been handled.
+     *
+     * @param name The feature name.
+     * @param lazyMode If lazy features should wait for their triggers.
+     */
+    private static void enableInWave(String name, boolean lazyMode) {
+        SMFeature feature = features.get(name);
+
+        if (!requirementsEnabled(name)) {
+            return;
+        }
+
+        if (lazyMode && feature.isLazy() && !configTriggered(feature)) {
+            states.put(name, State.WAITING);
+
+            for (String command : feature.getLazyCommands()) {
+                commandTriggers.put(command.toLowerCase(), name);
+            }
+
+            for (String world : feature.getLazyWorlds()) {
+                worldTriggers.computeIfAbsent(world, key -> new ArrayList<>()).add(name);
+            }
+
+            return;
+        }
+
+        enable(name, null);
+    }
+
+    /**
+     * Enable a waiting feature and any waiting features it requires.
+     *
+     * @param name The feature name.
+     * @param trigger What caused the feature to be enabled, for the log.
+     */
+    private static void activate(String name, String trigger) {
+        if (states.get(name) != State.WAITING) {
+            return;
+        }
+
+        // Mark the feature first so that a dependency cycle through get() cannot recurse
+        states.put(name, State.FAILED);
+
+        if (!requirementsEnabled(name)) {
+            return;
+        }
+
+        SMFeature feature = features.get(name);
+        commandTriggers.values().removeIf(name::equals);
+        worldTriggers.values().forEach(waiting -> waiting.remove(name));
+
+        enable(name, trigger);
+
+        if (feature.isEnabled() && !feature.getLazyCommands().isEmpty()) {
+            Bukkit.getOnlinePlayers().forEach(Player::updateCommands);
+        }
+    }
+
+    /**
+     * Check the required features of a feature are enabled, enabling any that are waiting.
+     *
+     * @param name The feature name.
+     * @return If all required features are enabled. The feature is marked as failed if not.
+     */
+    private static boolean requirementsEnabled(String name) {
+        for (String required : features.get(name).getRequireFeatures()) {
+            activate(required, "required by " + name);
+
+            if (!isEnabled(required)) {
+                states.put(name, State.FAILED);
+                STEMCraft.getPlugin().getLogger()
+                    .info("Feature " + name + " not enabled as it requires " + required + " to be enabled");
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Enable a feature and record the time it took.
+     *
+     * @param name The feature name.
+     * @param trigger What caused the feature to be enabled or null if it was enabled at startup.
+     */
+    private static void enable(String name, String trigger) {
+        SMFeature feature = features.get(name);
+        long start = System.nanoTime();
+
+        try {
+            feature.enable();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        if (feature.isEnabled()) {
+            states.put(name, State.ENABLED);
+            enableTimes.put(name, elapsed);
+            enableOrder.add(name);
+            STEMCraft.getPlugin().getLogger().info("Feature " + name + " enabled in "
+                + String.format("%.2f", elapsed / 1000000.0) + "ms" + (trigger != null ? " (" + trigger + ")" : ""));
+        } else {
+            states.put(name, State.FAILED);
+            STEMCraft.getPlugin().getLogger().info("Feature " + name + " not enabled");
+        }
+    }
+
+    /**
+     * Return if any config trigger of a lazy feature is true.
+     *
+     * @param feature The feature.
+     * @return If the feature should be enabled at startup.
+     */
+    private static boolean configTriggered(SMFeature feature) {
+        for (String key : feature.getLazyConfig()) {
+            if (SMConfig.main().getBoolean(key, false)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Enable the waiting features for a command line.
+     *
+     * @param commandLine The command line, with or without the leading slash.
+     */
+    private static void triggerCommand(String commandLine) {
+        if (commandTriggers.isEmpty()) {
+            return;
+        }
+
+        String label = commandLine.startsWith("/") ? commandLine.substring(1) : commandLine;
+        int space = label.indexOf(' ');
+        if (space >= 0) {
+            label = label.substring(0, space);
+        }
+
+        label = label.toLowerCase();
+        if (label.startsWith("stemcraft:")) {
+            label = label.substring("stemcraft:".length());
+        }
+
+        String name = commandTriggers.get(label);
+        if (name != null) {
+            activate(name, "/" + label);
+        }
+    }
+
+    /**
+     * Enable the waiting features for a world.
+     *
+     * @param world The world a player is entering.
+     */
+    private static void triggerWorld(World world) {
+        if (world == null || worldTriggers.isEmpty()) {
+            return;
+        }
+
+        List<String> waiting = worldTriggers.remove(world.getName());
+        if (waiting != null) {
+            for (String name : waiting) {
+                activate(name, "world " + world.getName());
+            }
+        }
+    }
+
+    /**
+     * Register the listeners that enable waiting features. Commands are caught before they are dispatched so the
+     * feature can register them in time. Worlds are caught before the player arrives so the feature listeners see the
+     * join, respawn or world change.
+     */
+    private static void registerTriggers() {
+        if (triggersRegistered) {
+            return;
+        }
+
+        triggersRegistered = true;
+
+        SMEvent.register(PlayerCommandPreprocessEvent.class, EventPriority.LOWEST, ctx -> {
+            triggerCommand(ctx.event.getMessage());
+        });
+
+        SMEvent.register(ServerCommandEvent.class, EventPriority.LOWEST, ctx -> {
+            triggerCommand(ctx.event.getCommand());
+        });
+
+        SMEvent.register(PlayerSpawnLocationEvent.class, EventPriority.MONITOR, ctx -> {
+            triggerWorld(ctx.event.getSpawnLocation().getWorld());
+        });
+
+        SMEvent.register(PlayerRespawnEvent.class, EventPriority.MONITOR, ctx -> {
+            triggerWorld(ctx.event.getRespawnLocation().getWorld());
+        });
+
+        SMEvent.register(PlayerTeleportEvent.class, EventPriority.MONITOR, ctx -> {
+            Location to = ctx.event.getTo();
+            if (to != null && to.getWorld() != ctx.event.getFrom().getWorld()) {
+                triggerWorld(to.getWorld());
+            }
+        }, true);
+    }
+}
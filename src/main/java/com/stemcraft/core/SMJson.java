@@ -17,29 +17,23 @@ public final class SMJson {
                 .setObjectToNumberStrategy(JsonReader::nextInt)
                 .setLenient();
 
-            STEMCraft.iteratePluginFiles("com/stemcraft/core/adapters/", jar -> {
-                String className = jar.getName();
-        
-                if (className.endsWith(".class")) {
-                    try {
-                        Class<?> classItem = Class.forName(
-                            className.substring(0, className.length() - 6).replaceAll("/", ".")
-                        );
-        
-                        if (SMJsonAdapter.class.isAssignableFrom(classItem)) {
-                            @SuppressWarnings("unchecked")
-                            Class<SMJsonAdapter> adapterClass = (Class<SMJsonAdapter>) classItem;
-                            Constructor<SMJsonAdapter> constructor = adapterClass.getDeclaredConstructor();
-                            SMJsonAdapter adapterInstance = constructor.newInstance();
-
-                            builder.registerTypeAdapter(adapterInstance.adapterFor(), adapterInstance);
-                            STEMCraft.info("JSON Adapter registered for " + adapterInstance.adapterFor().getSimpleName());
-                        }
-                    } catch (Exception e) {
-                        e.printStackTrace();
+            for (String className : STEMCraft.getComponents("adapter")) {
+                try {
+                    Class<?> classItem = Class.forName(className);
+
+                    if (SMJsonAdapter.class.isAssignableFrom(classItem)) {
+                        @SuppressWarnings("unchecked")
+                        Class<SMJsonAdapter> adapterClass = (Class<SMJsonAdapter>) classItem;
+                        Constructor<SMJsonAdapter> constructor = adapterClass.getDeclaredConstructor();
+                        SMJsonAdapter adapterInstance = constructor.newInstance();
+
+                        builder.registerTypeAdapter(adapterInstance.adapterFor(), adapterInstance);
+                        STEMCraft.info("JSON Adapter registered for " + adapterInstance.adapterFor().getSimpleName());
                     }
+                } catch (Exception e) {
+                    e.printStackTrace();
                 }
-            });
+            }
 
             // builder.registerTypeAdapter(ItemStack[].class, new SMAdapterItemStackArray());
 
@@ -30,9 +30,7 @@ public class SMLocale {
      * Load all the locale files. Will reload if called twice.
      */
     public final static void loadAll() {
-        STEMCraft.iteratePluginFiles("", jarFile -> {
-            String fileName = jarFile.getName();
-
+        for (String fileName : STEMCraft.getComponents("locale")) {
             if (fileName.startsWith(prefix) && fileName.endsWith(extension)) {
                 String locale = fileName.substring(prefix.length(), fileName.length() - extension.length());
                 STEMCraft.info("Loaded built-in locale: " + locale);
@@ -40,7 +38,7 @@ public class SMLocale {
                 localeFile.addMissingDefaultValues();
                 localeFiles.put(locale, localeFile);
             }
-        });
+        }
 
         File dataFolder = STEMCraft.getPlugin().getDataFolder();
         if (dataFolder.exists()) {
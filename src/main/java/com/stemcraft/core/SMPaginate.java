@@ -1,9 +1,22 @@
 package com.stemcraft.core;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.function.BiFunction;
+import java.util.function.Function;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
+import com.stemcraft.core.interfaces.SMSQLRowMapper;
+import com.stemcraft.core.util.SMCache;
 import net.md_5.bungee.api.chat.BaseComponent;
 import net.md_5.bungee.api.chat.ClickEvent;
 import net.md_5.bungee.api.chat.HoverEvent;
@@ -17,18 +30,34 @@ public class SMPaginate {
     private String command;
     private String title;
     private String none = "No items where found";
-    private final static int ITEMS_PER_PAGE = 8;
+    private String token = "";
+    public final static int ITEMS_PER_PAGE = 8;
+
+    /**
+     * Row counts of keyset listings, keyed by table and filter. Cleared for a table by {@link #invalidateCount}.
+     */
+    private static final SMCache<String, Integer> countCache = new SMCache<>(128, 5 * 60 * 1000L, 0);
 
     public SMPaginate(CommandSender sender, int page) {
         this.sender = sender;
         this.page = page;
     }
 
+    /**
+     * Create a paginator from a command argument, which is either a page number or a page token created by
+     * {@link #showKeyset}.
+     *
+     * @param sender The sender to show the listing to.
+     * @param page The page number or token.
+     */
     public SMPaginate(CommandSender sender, String page) {
+        this.sender = sender;
+        this.token = page == null ? "" : page;
+
         try {
             this.page = Integer.parseInt(page);
         } catch(Exception e) {
-            this.page = 0;
+            this.page = 1;
         }
     }
 
@@ -54,7 +83,7 @@ public class SMPaginate {
 
     public SMPaginate showItems(BiFunction<Integer, Integer, List<BaseComponent[]>> func) {
         int start = (page - 1) * ITEMS_PER_PAGE;
-        int maxPages = (int)Math.ceil(count / ITEMS_PER_PAGE);
+        int maxPages = pageCount(count);
         List<BaseComponent[]> lines = func.apply(start, ITEMS_PER_PAGE);
 
         if(lines.size() == 0) {
@@ -62,6 +91,71 @@ public class SMPaginate {
             return this;
         }
 
+        sendPage(lines, page, maxPages, page > 1 ? String.valueOf(page - 1) : null,
+            page < maxPages ? String.valueOf(page + 1) : null);
+        return this;
+    }
+
+    /**
+     * Show a page of a keyset listing. The rows and the total count are loaded on the database thread and the page is
+     * shown on the main thread. Page links carry a token holding the sort key of the first or last row shown, so a
+     * page is found through the index instead of by skipping rows. A plain page number is still accepted for pages
+     * typed by hand.
+     *
+     * @param keyset The listing query.
+     * @param render Creates the chat line for a row. Called on the main thread.
+     * @param <T> The row type.
+     */
+    public <T> void showKeyset(Keyset<T> keyset, Function<T, BaseComponent[]> render) {
+        PageToken pageToken = PageToken.parse(token, keyset.keyColumns.length);
+
+        SMDatabase.sync(SMDatabase.queryAsync(connection -> keyset.fetch(connection, pageToken)), result -> {
+            if (result.rows.isEmpty()) {
+                SMMessenger.error(sender, none);
+                return;
+            }
+
+            List<BaseComponent[]> lines = new ArrayList<>(result.rows.size());
+            for (T row : result.rows) {
+                lines.add(render.apply(row));
+            }
+
+            int maxPages = Math.max(result.page, pageCount(result.count));
+            String prevToken = result.hasPrev ? new PageToken(result.page - 1, true, result.firstKey).toString() : null;
+            String nextToken = result.hasNext ? new PageToken(result.page + 1, false, result.lastKey).toString() : null;
+
+            sendPage(lines, result.page, maxPages, prevToken, nextToken);
+        });
+    }
+
+    /**
+     * Create a keyset listing over a table.
+     *
+     * @param table The table to list.
+     * @param mapper Maps a result row. Called on the database thread for each row as it is read.
+     * @param keyColumns The columns the listing is sorted by. Together they must be unique, so end with the primary
+     *        key when the first column is not.
+     * @param <T> The row type.
+     * @return The listing.
+     */
+    public static <T> Keyset<T> keyset(String table, SMSQLRowMapper<T> mapper, String... keyColumns) {
+        return new Keyset<>(table, mapper, keyColumns);
+    }
+
+    /**
+     * Forget the cached row counts of listings over a table. Call after rows are added to or removed from it.
+     *
+     * @param table The table.
+     */
+    public static void invalidateCount(String table) {
+        countCache.invalidateIf(key -> key.startsWith(table + "|"));
+    }
+
+    private static int pageCount(int count) {
+        return (count + ITEMS_PER_PAGE - 1) / ITEMS_PER_PAGE;
+    }
+
+    private void sendPage(List<BaseComponent[]> lines, int page, int maxPages, String prevArg, String nextArg) {
         sender.spigot().sendMessage(createSeperatorString(ChatColor.AQUA + title));
 
         // Display the content for the current page
@@ -70,23 +164,22 @@ public class SMPaginate {
         }
 
         // Pagination
-        BaseComponent prev = new TextComponent((page <= 1 ? ChatColor.GRAY : ChatColor.GOLD) + "<<< ");
-        if(page > 1) {
-            prev.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, command + " " + (page - 1)));
+        BaseComponent prev = new TextComponent((prevArg == null ? ChatColor.GRAY : ChatColor.GOLD) + "<<< ");
+        if(prevArg != null) {
+            prev.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, command + " " + prevArg));
             prev.setHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, new Text("Previous page")));
         }
 
         BaseComponent pageInfo = new TextComponent(ChatColor.YELLOW + "Page " + ChatColor.GOLD + page + ChatColor.YELLOW + " of " + maxPages);
 
-        BaseComponent next = new TextComponent((page >= maxPages ? ChatColor.GRAY : ChatColor.GOLD) + " >>>");
-        if(page < maxPages) {
-            next.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, command + " " + (page + 1)));
+        BaseComponent next = new TextComponent((nextArg == null ? ChatColor.GRAY : ChatColor.GOLD) + " >>>");
+        if(nextArg != null) {
+            next.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, command + " " + nextArg));
             next.setHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, new Text("Next page")));
         }
 
         BaseComponent components[] = { prev, pageInfo, next };
         sender.spigot().sendMessage(createSeperatorString(components));
-        return this;
     }
 
     private static BaseComponent[] createSeperatorString(String title) {
@@ -117,4 +210,232 @@ public class SMPaginate {
         return components;
     }
 
+    /**
+     * A listing over a table, sorted by a unique key.
+     *
+     * @param <T> The row type.
+     */
+    public static class Keyset<T> {
+        private final String table;
+        private final SMSQLRowMapper<T> mapper;
+        private final String[] keyColumns;
+        private String columns = "*";
+        private String where = null;
+        private Object[] params = new Object[0];
+
+        private Keyset(String table, SMSQLRowMapper<T> mapper, String[] keyColumns) {
+            if (keyColumns.length == 0) {
+                throw new IllegalArgumentException("A keyset listing needs at least one key column");
+            }
+
+            this.table = table;
+            this.mapper = mapper;
+            this.keyColumns = keyColumns;
+        }
+
+        /**
+         * Set the columns to select. The key columns are always selected.
+         *
+         * @param columns The column list.
+         * @return This listing.
+         */
+        public Keyset<T> columns(String columns) {
+            this.columns = columns;
+            return this;
+        }
+
+        /**
+         * Only list rows matching a condition.
+         *
+         * @param where The SQL condition.
+         * @param params The condition parameters.
+         * @return This listing.
+         */
+        public Keyset<T> where(String where, Object... params) {
+            this.where = where;
+            this.params = params;
+            return this;
+        }
+
+        private PageResult<T> fetch(Connection connection, PageToken token) throws SQLException {
+            String keyList = String.join(", ", keyColumns);
+            String order = token.before ? " DESC" : " ASC";
+            List<String> conditions = new ArrayList<>();
+
+            if (where != null) {
+                conditions.add("(" + where + ")");
+            }
+
+            if (token.key != null) {
+                String placeholders = String.join(", ", Collections.nCopies(keyColumns.length, "?"));
+                conditions.add("(" + keyList + ") " + (token.before ? "<" : ">") + " (" + placeholders + ")");
+            }
+
+            StringBuilder sql = new StringBuilder("SELECT " + columns + ", " + keyList + " FROM " + table);
+            if (!conditions.isEmpty()) {
+                sql.append(" WHERE ").append(String.join(" AND ", conditions));
+            }
+            sql.append(" ORDER BY ").append(String.join(order + ", ", keyColumns)).append(order);
+            sql.append(" LIMIT ").append(ITEMS_PER_PAGE + 1);
+            if (token.key == null && token.page > 1) {
+                sql.append(" OFFSET ").append((token.page - 1) * ITEMS_PER_PAGE);
+            }
+
+            PageResult<T> result = new PageResult<>();
+            result.page = token.page;
+            result.count = count(connection);
+
+            PreparedStatement statement = SMDatabase.prepareCached(connection, sql.toString());
+            int index = bindParams(statement, 1);
+            if (token.key != null) {
+                for (String value : token.key) {
+                    statement.setString(index++, value);
+                }
+            }
+
+            // Rows are mapped as they are read, with one extra row fetched to learn if there is another page
+            statement.setFetchSize(ITEMS_PER_PAGE + 1);
+            boolean more = false;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    if (result.rows.size() == ITEMS_PER_PAGE) {
+                        more = true;
+                        break;
+                    }
+
+                    String[] key = new String[keyColumns.length];
+                    for (int i = 0; i < keyColumns.length; i++) {
+                        key[i] = resultSet.getString(unqualified(keyColumns[i]));
+                    }
+
+                    if (result.firstKey == null) {
+                        result.firstKey = key;
+                    }
+                    result.lastKey = key;
+                    result.rows.add(mapper.map(resultSet));
+                }
+            }
+
+            if (token.before) {
+                // Rows were read backwards from the page after
+                Collections.reverse(result.rows);
+                String[] first = result.lastKey;
+                result.lastKey = result.firstKey;
+                result.firstKey = first;
+
+                result.hasPrev = more;
+                result.hasNext = true;
+                if (!more) {
+                    result.page = 1;
+                }
+            } else {
+                result.hasPrev = result.page > 1;
+                result.hasNext = more;
+            }
+
+            return result;
+        }
+
+        private int count(Connection connection) throws SQLException {
+            String key = table + "|" + where + "|" + Arrays.toString(params);
+            Optional<Integer> cached = countCache.get(key);
+            if (cached != null && cached.isPresent()) {
+                return cached.get();
+            }
+
+            String sql = "SELECT COUNT(*) FROM " + table + (where != null ? " WHERE " + where : "");
+            PreparedStatement statement = SMDatabase.prepareCached(connection, sql);
+            bindParams(statement, 1);
+
+            int count;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                count = resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+
+            countCache.put(key, count);
+            return count;
+        }
+
+        private int bindParams(PreparedStatement statement, int index) throws SQLException {
+            for (Object param : params) {
+                statement.setObject(index++, param);
+            }
+
+            return index;
+        }
+
+        private static String unqualified(String column) {
+            return column.substring(column.lastIndexOf('.') + 1);
+        }
+    }
+
+    /**
+     * A page loaded by a keyset listing.
+     */
+    private static class PageResult<T> {
+        final List<T> rows = new ArrayList<>(ITEMS_PER_PAGE);
+        int page;
+        int count;
+        boolean hasPrev;
+        boolean hasNext;
+        String[] firstKey;
+        String[] lastKey;
+    }
+
+    /**
+     * The position of a page in a keyset listing. A token holds the page number, the direction to read in and the
+     * key of the row to read from, encoded so it can be passed as a single command argument.
+     */
+    private static class PageToken {
+        private static final String SEPARATOR = "\u0000";
+
+        final int page;
+        final boolean before;
+        final String[] key;
+
+        PageToken(int page, boolean before, String[] key) {
+            this.page = Math.max(1, page);
+            this.before = before;
+            this.key = key;
+        }
+
+        /**
+         * Parse a command argument. Page numbers and invalid tokens read from the start of the listing by offset.
+         */
+        static PageToken parse(String token, int keyLength) {
+            if (token.length() > 1 && (token.charAt(0) == 'a' || token.charAt(0) == 'b')) {
+                int dot = token.indexOf('.');
+
+                try {
+                    int page = Integer.parseInt(token.substring(1, dot));
+                    String decoded = new String(Base64.getUrlDecoder().decode(token.substring(dot + 1)),
+                        StandardCharsets.UTF_8);
+                    String[] key = decoded.split(SEPARATOR, -1);
+
+                    if (key.length == keyLength) {
+                        return new PageToken(page, token.charAt(0) == 'b', key);
+                    }
+                } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                    // Fall through to an offset page
+                }
+            }
+
+            int page;
+            try {
+                page = Integer.parseInt(token);
+            } catch (NumberFormatException e) {
+                page = 1;
+            }
+
+            return new PageToken(page, false, null);
+        }
+
+        @Override
+        public String toString() {
+            String encoded = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(String.join(SEPARATOR, key).getBytes(StandardCharsets.UTF_8));
+
+            return (before ? "b" : "a") + page + "." + encoded;
+        }
+    }
 }
@@ -4,29 +4,77 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import com.stemcraft.STEMCraft;
 import com.stemcraft.core.exception.SMException;
+import com.stemcraft.core.util.SMCache;
 
 /**
  * A helper class that allows features to store data in a persistent manner across server restarts.
  */
 public class SMPersistent {
     /**
-     * The meta data cache
+     * The maximum number of cached persistent values.
      */
-    private static final Map<String, String> dataCache = new HashMap<>();
+    private static final int CACHE_MAX_SIZE = 10000;
+
+    /**
+     * The number of milliseconds a cached value may go unused before it is dropped.
+     */
+    private static final long CACHE_IDLE_MS = 30 * 60 * 1000L;
+
+    /**
+     * The number of milliseconds a persistent value is remembered as not existing.
+     */
+    private static final long CACHE_NEGATIVE_MS = 5 * 60 * 1000L;
+
+    /**
+     * The meta data cache. Read from the async chat thread as well as the main thread.
+     */
+    private static final SMCache<String, String> dataCache =
+        new SMCache<>(CACHE_MAX_SIZE, CACHE_IDLE_MS, CACHE_NEGATIVE_MS);
+
+    /**
+     * Writes waiting to be flushed to the database, in the order they were made. A null value is a pending delete.
+     * Repeated writes to the same key replace the earlier pending write.
+     */
+    private static final Map<String, String> pendingWrites = new LinkedHashMap<>();
+
+    /**
+     * Sections with a pending clear. Reads treat keys in these sections as missing until the clear has been written.
+     */
+    private static final Set<String> pendingClears = new HashSet<>();
+
+    /**
+     * Separates the section and key in the names used by the cache and pending writes.
+     */
+    private static final char NAME_SEPARATOR = '\0';
+
+    /**
+     * The number of ticks to wait after the first pending write before flushing.
+     */
+    private static final int FLUSH_DELAY_TICKS = 100;
+
+    /**
+     * The scheduled flush, if any.
+     */
+    private static SMTask flushTask = null;
 
     /**
      * If the Meta engine has been initalized.
      */
-    private static boolean initalized = false;
+    private static volatile boolean initalized = false;
 
     /**
      * Initalize the meta engine.
      */
-    private static void initalize() {
+    private static synchronized void initalize() {
         if (!initalized) {
             if (SMDatabase.connect()) {
                 SMDatabase.runMigration("231027093900_UpdatePersistentTable", () -> {
@@ -47,6 +95,26 @@ public class SMPersistent {
                     }
                 });
 
+                SMDatabase.runMigration("240115100000_SplitPersistentName", () -> {
+                    SMDatabase.prepareStatement(
+                        "CREATE TABLE persistent_split (" +
+                            "section TEXT NOT NULL, " +
+                            "key TEXT NOT NULL, " +
+                            "data BLOB, " +
+                            "PRIMARY KEY (section, key)) WITHOUT ROWID")
+                        .executeUpdate();
+
+                    // Names were stored as "section-key", split on the first dash
+                    SMDatabase.prepareStatement(
+                        "INSERT OR REPLACE INTO persistent_split (section, key, data) " +
+                            "SELECT substr(name, 1, instr(name, '-') - 1), substr(name, instr(name, '-') + 1), data " +
+                            "FROM persistent WHERE instr(name, '-') > 0")
+                        .executeUpdate();
+
+                    SMDatabase.prepareStatement("DROP TABLE persistent").executeUpdate();
+                    SMDatabase.prepareStatement("ALTER TABLE persistent_split RENAME TO persistent").executeUpdate();
+                });
+
                 initalized = true;
             } else {
                 throw new SMException("Cannot connect to Database");
@@ -137,44 +205,8 @@ public class SMPersistent {
      * @return The persistent value as a String.
      */
     public static String getString(Object section, String key, String defaultValue) {
-        Boolean found = false;
-        String value = "";
-        String sectionNameKey = getObjectName(section) + "-" + key;
-
-        if (dataCache.containsKey(sectionNameKey)) {
-            value = dataCache.get(sectionNameKey);
-            found = true;
-        } else {
-            try {
-                initalize();
-                PreparedStatement statement = SMDatabase.prepareStatement(
-                    "SELECT data FROM persistent WHERE name = ? LIMIT 1");
-                statement.setString(1, sectionNameKey);
-                ResultSet resultSet = statement.executeQuery();
-
-                if (resultSet.next()) {
-                    value = resultSet.getString("data");
-                    dataCache.put(sectionNameKey, value);
-                    found = true;
-                }
-
-                resultSet.close();
-                statement.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
-        }
-
-        if (found) {
-            try {
-                return value;
-            } catch (Exception ex) {
-                ex.printStackTrace();
-            }
-        }
-
-        dataCache.put(sectionNameKey, defaultValue);
-        return defaultValue;
+        String value = lookup(getName(section, key));
+        return value != null ? value : defaultValue;
     }
 
     /**
@@ -197,7 +229,7 @@ public class SMPersistent {
      * @param classOf The class type of the value.
      */
     public static void set(Object section, String key, Object value, Class<?> classOf) {
-        String sectionNameKey = getObjectName(section) + "-" + key;
+        String sectionNameKey = getName(section, key);
 
         try {
             String valueString = "";
@@ -209,19 +241,7 @@ public class SMPersistent {
             }
 
             initalize();
-            PreparedStatement statement = SMDatabase.prepareStatement(
-                "DELETE FROM persistent WHERE name = ?");
-            statement.setString(1, sectionNameKey);
-            statement.executeUpdate();
-
-            statement = SMDatabase.prepareStatement(
-                "INSERT INTO persistent (name, data) VALUES (?, ?)");
-            statement.setString(1, sectionNameKey);
-            statement.setString(2, valueString);
-            statement.executeUpdate();
-
-            statement.close();
-
+            queueWrite(sectionNameKey, valueString);
             dataCache.put(sectionNameKey, valueString);
         } catch (Exception e) {
             e.printStackTrace();
@@ -235,21 +255,11 @@ public class SMPersistent {
      * @param key The key for the persistent value to clear.
      */
     public static void clear(Object section, String key) {
-        String sectionNameKey = getObjectName(section) + "-" + key;
-
-        try {
-            initalize();
-            PreparedStatement statement = SMDatabase.prepareStatement(
-                "DELETE FROM persistent WHERE name = ?");
-            statement.setString(1, sectionNameKey);
-            statement.executeUpdate();
+        String sectionNameKey = getName(section, key);
 
-            statement.close();
-
-            dataCache.remove(sectionNameKey);
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        initalize();
+        queueWrite(sectionNameKey, null);
+        dataCache.putAbsent(sectionNameKey);
     }
 
     /**
@@ -260,62 +270,273 @@ public class SMPersistent {
      * @return True if the persistent value exists, otherwise false.
      */
     public static Boolean exists(Object section, String key) {
-        String sectionNameKey = getObjectName(section) + "-" + key;
+        return lookup(getName(section, key)) != null;
+    }
 
-        if (dataCache.containsKey(sectionNameKey)) {
-            return true;
-        }
+    /**
+     * Load all persistent values for a section into the cache using a single query.
+     *
+     * @param section The section object or string.
+     */
+    public static void preload(Object section) {
+        String sectionName = getObjectName(section);
+
+        export(section).forEach((key, data) -> {
+            String name = getName(sectionName, key);
+            if (!isPending(name)) {
+                dataCache.putIfAbsent(name, data);
+            }
+        });
+    }
+
+    /**
+     * Return a one line summary of the persistent cache statistics.
+     *
+     * @return The statistics summary.
+     */
+    public static String getCacheStats() {
+        return dataCache.getStats();
+    }
+
+    /**
+     * Get a list of keys for a section.
+     * 
+     * @param section The section object or string.
+     * @return A list of keys for the specified section.
+     */
+    public static List<String> keys(Object section) {
+        return new ArrayList<>(export(section).keySet());
+    }
+
+    /**
+     * Get all keys and their raw data for a section, including changes that are not yet written to the database.
+     *
+     * @param section The section object or string.
+     * @return A map of keys to their stored data, ordered by key.
+     */
+    public static Map<String, String> export(Object section) {
+        String sectionName = getObjectName(section);
+        Map<String, String> values = new TreeMap<>();
 
         try {
             initalize();
-            PreparedStatement statement = SMDatabase.prepareStatement(
-                "SELECT COUNT(*) FROM persistent WHERE name = ?");
-            statement.setString(1, sectionNameKey);
-            ResultSet resultSet = statement.executeQuery();
-
-            if (resultSet.next()) {
-                int count = resultSet.getInt(1);
-                if (count > 0) {
-                    dataCache.put(sectionNameKey, "");
-                    return true;
+            SMDatabase.read(connection -> {
+                PreparedStatement statement = SMDatabase.prepareCached(connection,
+                    "SELECT key, data FROM persistent WHERE section = ?");
+                statement.setString(1, sectionName);
+
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        values.put(resultSet.getString("key"), resultSet.getString("data"));
+                    }
                 }
-            }
 
-            resultSet.close();
-            statement.close();
+                return null;
+            });
         } catch (SQLException e) {
             e.printStackTrace();
         }
 
-        return false;
+        synchronized (pendingWrites) {
+            if (pendingClears.contains(sectionName)) {
+                values.clear();
+            }
+
+            pendingWrites.forEach((name, data) -> {
+                if (getSectionName(name).equals(sectionName)) {
+                    if (data == null) {
+                        values.remove(getKey(name));
+                    } else {
+                        values.put(getKey(name), data);
+                    }
+                }
+            });
+        }
+
+        return values;
     }
 
     /**
-     * Get a list of keys for a section.
-     * 
+     * Remove all persistent values in a section.
+     *
      * @param section The section object or string.
-     * @return A list of keys for the specified section.
      */
-    public List<String> keys(Object section) {
+    public static void clearSection(Object section) {
         String sectionName = getObjectName(section);
-        List<String> keys = new ArrayList<>();
+
+        initalize();
+        synchronized (pendingWrites) {
+            pendingWrites.keySet().removeIf(name -> getSectionName(name).equals(sectionName));
+            pendingClears.add(sectionName);
+        }
+
+        dataCache.invalidateIf(name -> getSectionName(name).equals(sectionName));
+
+        SMDatabase.executeAsync(connection -> {
+            PreparedStatement statement = SMDatabase.prepareCached(connection,
+                "DELETE FROM persistent WHERE section = ?");
+            statement.setString(1, sectionName);
+            statement.executeUpdate();
+        }).whenComplete((result, error) -> {
+            synchronized (pendingWrites) {
+                pendingClears.remove(sectionName);
+            }
+        });
+    }
+
+    /**
+     * Find the data for a persistent name, checking the cache, then pending writes, then the database. Database
+     * results, including misses, are cached.
+     *
+     * @param name The internal name.
+     * @return The data, or null if it does not exist.
+     */
+    private static String lookup(String name) {
+        Optional<String> cached = dataCache.get(name);
+        if (cached != null) {
+            return cached.orElse(null);
+        }
+
+        synchronized (pendingWrites) {
+            if (pendingWrites.containsKey(name)) {
+                return pendingWrites.get(name);
+            }
+
+            if (pendingClears.contains(getSectionName(name))) {
+                return null;
+            }
+        }
 
         try {
             initalize();
-            PreparedStatement statement = SMDatabase.prepareStatement(
-                "SELECT `name` FROM persistent WHERE name LIKE ?");
-            statement.setString(1, sectionName + "-%");
-            ResultSet resultSet = statement.executeQuery();
-            int sectionNameLength = sectionName.length() + 1;
-
-            while (resultSet.next()) {
-                keys.add(resultSet.getString(1).substring(sectionNameLength));
-            }
+            String data = SMDatabase.read(connection -> {
+                PreparedStatement statement = SMDatabase.prepareCached(connection,
+                    "SELECT data FROM persistent WHERE section = ? AND key = ?");
+                statement.setString(1, getSectionName(name));
+                statement.setString(2, getKey(name));
+
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    return resultSet.next() ? resultSet.getString("data") : null;
+                }
+            });
+
+            dataCache.putIfAbsent(name, data);
+            return data;
         } catch (SQLException e) {
             e.printStackTrace();
         }
 
-        return keys;
+        return null;
+    }
+
+    /**
+     * Write all pending changes to the database in a single transaction. Pending changes remain visible to reads until
+     * the transaction has committed.
+     */
+    public static void flush() {
+        Map<String, String> writes;
+
+        synchronized (pendingWrites) {
+            if (flushTask != null) {
+                flushTask.cancel();
+                flushTask = null;
+            }
+
+            if (pendingWrites.isEmpty()) {
+                return;
+            }
+
+            writes = new LinkedHashMap<>(pendingWrites);
+        }
+
+        SMDatabase.executeAsync(connection -> {
+            SMDatabase.transaction(connection, transaction -> {
+                PreparedStatement upsert = SMDatabase.prepareCached(transaction,
+                    "INSERT OR REPLACE INTO persistent (section, key, data) VALUES (?, ?, ?)");
+                PreparedStatement delete = SMDatabase.prepareCached(transaction,
+                    "DELETE FROM persistent WHERE section = ? AND key = ?");
+
+                for (Map.Entry<String, String> write : writes.entrySet()) {
+                    String sectionName = getSectionName(write.getKey());
+                    String key = getKey(write.getKey());
+
+                    if (write.getValue() == null) {
+                        delete.setString(1, sectionName);
+                        delete.setString(2, key);
+                        delete.executeUpdate();
+                    } else {
+                        upsert.setString(1, sectionName);
+                        upsert.setString(2, key);
+                        upsert.setString(3, write.getValue());
+                        upsert.executeUpdate();
+                    }
+                }
+            });
+        }).thenRun(() -> {
+            synchronized (pendingWrites) {
+                writes.forEach(pendingWrites::remove);
+            }
+        });
+    }
+
+    /**
+     * Queue a write to be flushed to the database, scheduling a flush if one is not already scheduled.
+     *
+     * @param name The internal name.
+     * @param data The data to write, or null to delete.
+     */
+    private static void queueWrite(String name, String data) {
+        synchronized (pendingWrites) {
+            pendingWrites.remove(name);
+            pendingWrites.put(name, data);
+
+            if (flushTask == null) {
+                flushTask = STEMCraft.runLater(FLUSH_DELAY_TICKS, SMPersistent::flush);
+            }
+        }
+    }
+
+    /**
+     * Return if there is a pending write for the persistent name.
+     *
+     * @param name The internal name.
+     * @return If a write is pending.
+     */
+    private static boolean isPending(String name) {
+        synchronized (pendingWrites) {
+            return pendingWrites.containsKey(name);
+        }
+    }
+
+    /**
+     * Build the internal name for a section and key.
+     *
+     * @param section The section object or string.
+     * @param key The key.
+     * @return The name used by the cache and pending writes.
+     */
+    private static String getName(Object section, String key) {
+        return getObjectName(section) + NAME_SEPARATOR + key;
+    }
+
+    /**
+     * Get the section name from an internal name.
+     *
+     * @param name The internal name.
+     * @return The section name.
+     */
+    private static String getSectionName(String name) {
+        return name.substring(0, name.indexOf(NAME_SEPARATOR));
+    }
+
+    /**
+     * Get the key from an internal name.
+     *
+     * @param name The internal name.
+     * @return The key.
+     */
+    private static String getKey(String name) {
+        return name.substring(name.indexOf(NAME_SEPARATOR) + 1);
     }
 
     /**
@@ -0,0 +1,128 @@
+package com.stemcraft.core;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of prepared statements for a single connection, keyed by SQL text. The least recently used
+ * statement is closed once the cache is full.
+ *
+ * Statements handed out by the cache are owned by the cache and must not be closed by the caller. Result sets should
+ * still be closed as normal.
+ */
+public class SMStatementCache {
+    private final Connection connection;
+    private final int maxSize;
+    private final Map<String, PreparedStatement> statements;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Create a statement cache for a connection.
+     *
+     * @param connection The connection statements are prepared on.
+     * @param maxSize The maximum number of statements to keep open.
+     */
+    public SMStatementCache(Connection connection, int maxSize) {
+        this.connection = connection;
+        this.maxSize = maxSize;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > SMStatementCache.this.maxSize) {
+                    closeStatement(eldest.getValue());
+                    evictions.increment();
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get a prepared statement for the SQL, preparing it if it is not cached. Parameters from any previous use are
+     * cleared.
+     *
+     * @param sql The SQL to prepare.
+     * @return The prepared statement.
+     * @throws SQLException
+     */
+    public synchronized PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+
+        if (statement != null && !statement.isClosed()) {
+            hits.increment();
+            statement.clearParameters();
+            return statement;
+        }
+
+        misses.increment();
+        statement = connection.prepareStatement(sql);
+        statements.put(sql, statement);
+        return statement;
+    }
+
+    /**
+     * Close and remove all cached statements.
+     */
+    public synchronized void close() {
+        statements.values().forEach(SMStatementCache::closeStatement);
+        statements.clear();
+    }
+
+    /**
+     * Return the number of statements currently cached.
+     *
+     * @return The cached statement count.
+     */
+    public synchronized int size() {
+        return statements.size();
+    }
+
+    /**
+     * Return the number of requests served from the cache.
+     *
+     * @return The hit count.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Return the number of requests that required preparing a statement.
+     *
+     * @return The miss count.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Return the number of statements closed to make room for others.
+     *
+     * @return The eviction count.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Close a statement, logging any error.
+     *
+     * @param statement The statement to close.
+     */
+    private static void closeStatement(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
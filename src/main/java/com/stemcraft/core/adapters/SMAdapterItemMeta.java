@@ -1,7 +1,10 @@
 package com.stemcraft.core.adapters;
 
-import com.google.gson.*;
+import com.google.gson.TypeAdapter;
 import com.google.gson.internal.LinkedTreeMap;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import com.stemcraft.core.SMJsonAdapter;
 import org.bukkit.Color;
 import org.bukkit.FireworkEffect;
@@ -9,30 +12,72 @@ import org.bukkit.configuration.serialization.ConfigurationSerialization;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionEffectType;
-import java.lang.reflect.Type;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
-public class SMAdapterItemMeta implements SMJsonAdapter, JsonSerializer<ItemMeta>, JsonDeserializer<ItemMeta> {
-    private final String META_TYPE_KEY = "meta-type";
-    private final String DISPLAY_MAP_COLOR_KEY = "display-map-color";
-    private final String CUSTOM_COLOR_KEY = "custom-color";
-    private final String CUSTOM_EFFECTS_KEY = "custom-effects";
-        private final String FIREWORK_EFFECTS_KEY = "firework-effects";
-    private final String FIREWORK_EFFECT_KEY = "firework-effect";
-    private final String COLOR_KEY = "color";
+public class SMAdapterItemMeta extends TypeAdapter<ItemMeta> implements SMJsonAdapter {
+    private static final String META_TYPE_KEY = "meta-type";
+    private static final String DISPLAY_MAP_COLOR_KEY = "display-map-color";
+    private static final String CUSTOM_COLOR_KEY = "custom-color";
+    private static final String CUSTOM_EFFECTS_KEY = "custom-effects";
+    private static final String FIREWORK_EFFECTS_KEY = "firework-effects";
+    private static final String FIREWORK_EFFECT_KEY = "firework-effect";
+    private static final String COLOR_KEY = "color";
 
     @Override
     public Class<?> adapterFor() {
         return ItemMeta.class;
     }
-    
+
     @Override
+    public ItemMeta read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        return fromMap(SMJsonValues.readMap(in));
+    }
+
+    @Override
+    public void write(JsonWriter out, ItemMeta src) throws IOException {
+        if (src == null) {
+            out.nullValue();
+            return;
+        }
+
+        writeMeta(out, src, false);
+    }
+
+    /**
+     * Write item meta as an object of its serialization map.
+     *
+     * @param out The writer.
+     * @param meta The item meta.
+     * @param withAlias If the serialization alias is written under "==", as it is for meta within an item.
+     * @throws IOException
+     */
+    static void writeMeta(JsonWriter out, ItemMeta meta, boolean withAlias) throws IOException {
+        out.beginObject();
+        if (withAlias) {
+            out.name(ConfigurationSerialization.SERIALIZED_TYPE_KEY)
+                .value(ConfigurationSerialization.getAlias(meta.getClass()));
+        }
+        SMJsonValues.writeEntries(out, meta.serialize());
+        out.endObject();
+    }
+
+    /**
+     * Create item meta from a map read from JSON, converting the nested colors and effects the meta type expects.
+     *
+     * @param deserialize The meta map. Modified in place.
+     * @return The item meta.
+     */
     @SuppressWarnings("unchecked")
-    public ItemMeta deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-        Map<String, Object> deserialize = context.deserialize(json, Map.class);
+    static ItemMeta fromMap(Map<String, Object> deserialize) {
         String metaType = deserialize.getOrDefault(META_TYPE_KEY, "").toString().toUpperCase();
         
         if(metaType.equals("MAP")) {
@@ -73,12 +118,6 @@ public class SMAdapterItemMeta implements SMJsonAdapter, JsonSerializer<ItemMeta
         return (ItemMeta) ConfigurationSerialization.deserializeObject(deserialize, ConfigurationSerialization.getClassByAlias("ItemMeta"));
     }
 
-    @Override
-    public JsonElement serialize(ItemMeta src, Type typeOfSrc, JsonSerializationContext context) {
-        Map<String, Object> serialize = src.serialize();
-        return context.serialize(serialize, Map.class);
-    }
-
     private static List<PotionEffect> deserializePotionEffects(List<Map<String, Object>> rawEffects) {
         return rawEffects.stream().map(SMAdapterItemMeta::deserializeRawPotionEffect).collect(Collectors.toList());
     }
@@ -86,15 +125,15 @@ public class SMAdapterItemMeta implements SMJsonAdapter, JsonSerializer<ItemMeta
     @SuppressWarnings({"unchecked", "deprecation"})
     private static PotionEffect deserializeRawPotionEffect(Map<String, Object> rawEffect) {
         Map<String, Object> rawType = (Map<String, Object>) rawEffect.getOrDefault("type", new LinkedTreeMap<>());
-        int typeId = ((Double) rawType.getOrDefault("id", 1D)).intValue();
+        int typeId = ((Number) rawType.getOrDefault("id", 1)).intValue();
         
         PotionEffectType type = PotionEffectType.getById(typeId);
         if (type == null) {
             type = PotionEffectType.GLOWING;
         }
         
-        int duration = ((Double) rawEffect.getOrDefault("duration", 1D)).intValue();
-        int amplifier = ((Double) rawEffect.getOrDefault("amplifier", 1D)).intValue();
+        int duration = ((Number) rawEffect.getOrDefault("duration", 1)).intValue();
+        int amplifier = ((Number) rawEffect.getOrDefault("amplifier", 1)).intValue();
         boolean ambient = (boolean) rawEffect.getOrDefault("ambient", true);
         boolean particles = (boolean) rawEffect.getOrDefault("particles", true);
         boolean icon = (boolean) rawEffect.getOrDefault("icon", true);
@@ -1,64 +1,103 @@
 package com.stemcraft.core.adapters;
 
-import com.google.gson.*;
-import com.google.gson.reflect.TypeToken;
-import com.stemcraft.core.SMJson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import com.stemcraft.core.SMJsonAdapter;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
-import org.bukkit.configuration.serialization.ConfigurationSerializable;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.inventory.meta.SkullMeta;
-import java.lang.reflect.Type;
+import java.io.IOException;
 import java.util.Map;
 import java.util.UUID;
 
-public class SMAdapterItemStack implements SMJsonAdapter, JsonSerializer<ItemStack>, JsonDeserializer<ItemStack> {
+/**
+ * Streams an ItemStack as the JSON of its Bukkit serialization map, with the item meta written as an object holding
+ * the meta alias under "==".
+ */
+public class SMAdapterItemStack extends TypeAdapter<ItemStack> implements SMJsonAdapter {
     @Override
     public Class<?> adapterFor() {
         return ItemStack.class;
     }
-    
+
     @Override
     @SuppressWarnings({"deprecation", "unchecked"})
-    public ItemStack deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-        Map<String, Object> map = SMJson.getGson().fromJson(json, TypeToken.get(Map.class).getType());
+    public ItemStack read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        Map<String, Object> map = SMJsonValues.readMap(in);
         map.putIfAbsent("v", Bukkit.getUnsafe().getDataVersion());
 
-        if(map.containsKey("meta")) {
-            Map<String, Object> meta = (Map<String, Object>) map.get("meta");
-            map.remove("meta");
-            ItemStack is = ItemStack.deserialize(map);
+        Object meta = map.remove("meta");
+        ItemStack is = ItemStack.deserialize(map);
 
-            if(is.getType() == Material.PLAYER_HEAD) {
-                Map<String, Object> skullOwner = (Map<String, Object>)meta.get("skull-owner");
-                Map<String, Object> profile = (Map<String, Object>)skullOwner.get("profile");
+        if (meta instanceof Map) {
+            Map<String, Object> metaMap = (Map<String, Object>) meta;
+            String skullOwnerId = is.getType() == Material.PLAYER_HEAD ? getSkullOwnerId(metaMap) : null;
 
-                SkullMeta skullMeta = (SkullMeta)is.getItemMeta();
-                skullMeta.setOwningPlayer(Bukkit.getOfflinePlayer(UUID.fromString(profile.get("id").toString())));
+            if (skullOwnerId != null) {
+                SkullMeta skullMeta = (SkullMeta) is.getItemMeta();
+                skullMeta.setOwningPlayer(Bukkit.getOfflinePlayer(UUID.fromString(skullOwnerId)));
                 is.setItemMeta(skullMeta);
-
             } else {
-                ItemMeta deserializedMeta = context.deserialize(SMJson.getGson().toJsonTree(meta), ItemMeta.class);
-                is.setItemMeta((ItemMeta) deserializedMeta);
+                is.setItemMeta(SMAdapterItemMeta.fromMap(metaMap));
             }
-
-            return is;
-        } else {
-            return ItemStack.deserialize(map);
         }
+
+        return is;
     }
 
     @Override
     @SuppressWarnings("deprecation")
-    public JsonElement serialize(ItemStack src, Type typeOfSrc, JsonSerializationContext context) {
+    public void write(JsonWriter out, ItemStack src) throws IOException {
+        if (src == null) {
+            out.nullValue();
+            return;
+        }
+
         Map<String, Object> map = src.serialize();
-        map.putIfAbsent("v", Bukkit.getUnsafe().getDataVersion());
-        if(src.hasItemMeta()) {
-            JsonElement meta = context.serialize(src.getItemMeta(), ConfigurationSerializable.class);
-            map.put("meta", meta.getAsJsonObject());
+
+        out.beginObject();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            if (entry.getValue() instanceof ItemMeta) {
+                out.name(entry.getKey());
+                SMAdapterItemMeta.writeMeta(out, (ItemMeta) entry.getValue(), true);
+            } else if (entry.getValue() != null) {
+                out.name(entry.getKey());
+                SMJsonValues.write(out, entry.getValue());
+            }
+        }
+
+        if (!map.containsKey("v")) {
+            out.name("v").value(Bukkit.getUnsafe().getDataVersion());
         }
-        return SMJson.getGson().toJsonTree(map);
+        out.endObject();
+    }
+
+    /**
+     * Return the profile id of the owner stored in player head meta.
+     *
+     * @param meta The meta map.
+     * @return The owner id, or null if the meta has no owner.
+     */
+    @SuppressWarnings("unchecked")
+    private static String getSkullOwnerId(Map<String, Object> meta) {
+        if (!(meta.get("skull-owner") instanceof Map)) {
+            return null;
+        }
+
+        Object profile = ((Map<String, Object>) meta.get("skull-owner")).get("profile");
+        if (!(profile instanceof Map) || ((Map<String, Object>) profile).get("id") == null) {
+            return null;
+        }
+
+        return ((Map<String, Object>) profile).get("id").toString();
     }
-}
\ No newline at end of file
+}
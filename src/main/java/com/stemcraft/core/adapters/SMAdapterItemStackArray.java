@@ -1,34 +1,97 @@
 package com.stemcraft.core.adapters;
 
-import com.google.gson.*;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import com.stemcraft.core.SMJsonAdapter;
 import org.bukkit.Material;
 import org.bukkit.inventory.ItemStack;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
-import java.lang.reflect.Type;
+/**
+ * Streams an ItemStack array as an object holding the array size and a list of the slots that are not empty.
+ */
+public class SMAdapterItemStackArray extends TypeAdapter<ItemStack[]> implements SMJsonAdapter {
+    private final TypeAdapter<ItemStack> itemAdapter;
+
+    public SMAdapterItemStackArray() {
+        this(new SMAdapterItemStack());
+    }
+
+    /**
+     * Create the adapter with the adapter used for each item.
+     *
+     * @param itemAdapter The item adapter.
+     */
+    SMAdapterItemStackArray(TypeAdapter<ItemStack> itemAdapter) {
+        this.itemAdapter = itemAdapter;
+    }
 
-public class SMAdapterItemStackArray implements SMJsonAdapter, JsonSerializer<ItemStack[]>, JsonDeserializer<ItemStack[]> {
     @Override
     public Class<?> adapterFor() {
         return ItemStack[].class;
     }
 
     @Override
-    public ItemStack[] deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-        JsonObject jsonMap = json.getAsJsonObject();
-        JsonArray jsonArray = jsonMap.getAsJsonArray("contents");
-        int size = jsonMap.get("size").getAsInt();
+    public ItemStack[] read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
 
-        ItemStack[] itemStackArray = new ItemStack[size];
+        int size = -1;
+        List<Integer> slots = new ArrayList<>();
+        List<ItemStack> items = new ArrayList<>();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+
+            if ("size".equals(name)) {
+                size = in.nextInt();
+            } else if ("contents".equals(name)) {
+                in.beginArray();
+                while (in.hasNext()) {
+                    int slot = -1;
+                    ItemStack item = null;
+
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        String field = in.nextName();
+
+                        if ("slot".equals(field)) {
+                            slot = in.nextInt();
+                        } else if ("item".equals(field)) {
+                            item = itemAdapter.read(in);
+                        } else {
+                            in.skipValue();
+                        }
+                    }
+                    in.endObject();
 
-        for (int i = 0; i < jsonArray.size(); i++) {
-            JsonObject itemJsonObject = jsonArray.get(i).getAsJsonObject();
-            int slot = itemJsonObject.get("slot").getAsInt();
-            JsonElement itemJsonElement = itemJsonObject.get("item");
-            ItemStack itemStack = context.deserialize(itemJsonElement, ItemStack.class);
-            itemStackArray[slot] = itemStack;
+                    slots.add(slot);
+                    items.add(item);
+                }
+                in.endArray();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if (size < 0) {
+            throw new JsonParseException("Item array is missing its size");
+        }
+
+        ItemStack[] itemStackArray = new ItemStack[size];
+        for (int i = 0; i < slots.size(); i++) {
+            itemStackArray[slots.get(i)] = items.get(i);
         }
-    
+
         // Fill in any null slots with Material.AIR
         for (int i = 0; i < itemStackArray.length; i++) {
             if (itemStackArray[i] == null) {
@@ -40,24 +103,28 @@ public class SMAdapterItemStackArray implements SMJsonAdapter, JsonSerializer<It
     }
 
     @Override
-    public JsonElement serialize(ItemStack[] src, Type typeOfSrc, JsonSerializationContext context) {
-        JsonObject jsonMap = new JsonObject();
-        JsonArray jsonArray = new JsonArray();
+    public void write(JsonWriter out, ItemStack[] src) throws IOException {
+        if (src == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        out.name("size").value(src.length);
+        out.name("contents").beginArray();
 
         for (int i = 0; i < src.length; i++) {
             ItemStack itemStack = src[i];
             if (itemStack != null && itemStack.getType() != Material.AIR) {
-                JsonObject itemJsonObject = new JsonObject();
-                itemJsonObject.addProperty("slot", i);
-                JsonElement itemJsonElement = context.serialize(itemStack, ItemStack.class);
-                itemJsonObject.add("item", itemJsonElement);
-                jsonArray.add(itemJsonObject);
+                out.beginObject();
+                out.name("slot").value(i);
+                out.name("item");
+                itemAdapter.write(out, itemStack);
+                out.endObject();
             }
         }
 
-        jsonMap.addProperty("size", src.length);
-        jsonMap.add("contents", jsonArray);
-
-        return jsonMap;
+        out.endArray();
+        out.endObject();
     }
-}
\ No newline at end of file
+}
@@ -1,51 +1,114 @@
 package com.stemcraft.core.adapters;
 
-import com.google.gson.*;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import com.stemcraft.core.SMJsonAdapter;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-import java.lang.reflect.Type;
+/**
+ * Streams a Location as an object of its world name, coordinates and rotation. Also provides interning of world names
+ * for code that stores many locations.
+ */
+public class SMAdapterLocation extends TypeAdapter<Location> implements SMJsonAdapter {
+    /**
+     * The canonical instance of each world name, so that decoded locations share one string per world.
+     */
+    private static final Map<String, String> worldNames = new ConcurrentHashMap<>();
 
-public class SMAdapterLocation implements SMJsonAdapter, JsonSerializer<Location>, JsonDeserializer<Location> {
     @Override
     public Class<?> adapterFor() {
         return Location.class;
     }
-    
+
     @Override
-    public Location deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-        JsonObject jsonObject = json.getAsJsonObject();
-        
-        String worldName = jsonObject.get("world").getAsString();
-        double x = jsonObject.get("x").getAsDouble();
-        double y = jsonObject.get("y").getAsDouble();
-        double z = jsonObject.get("z").getAsDouble();
+    public Location read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        String worldName = null;
+        double x = 0;
+        double y = 0;
+        double z = 0;
         float yaw = 0.0f;
         float pitch = 0.0f;
-    
-        // Check if yaw and pitch properties are present, and if so, read their values
-        if (jsonObject.has("yaw")) {
-            yaw = jsonObject.get("yaw").getAsFloat();
+        int found = 0;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "world":
+                    worldName = in.nextString();
+                    found |= 1;
+                    break;
+                case "x":
+                    x = in.nextDouble();
+                    found |= 2;
+                    break;
+                case "y":
+                    y = in.nextDouble();
+                    found |= 4;
+                    break;
+                case "z":
+                    z = in.nextDouble();
+                    found |= 8;
+                    break;
+                case "yaw":
+                    yaw = (float) in.nextDouble();
+                    break;
+                case "pitch":
+                    pitch = (float) in.nextDouble();
+                    break;
+                default:
+                    in.skipValue();
+            }
         }
-        if (jsonObject.has("pitch")) {
-            pitch = jsonObject.get("pitch").getAsFloat();
+        in.endObject();
+
+        if (found != 15) {
+            throw new JsonParseException("Location is missing its world or coordinates at " + in.getPath());
         }
 
         return new Location(Bukkit.getWorld(worldName), x, y, z, yaw, pitch);
     }
 
     @Override
-    public JsonElement serialize(Location src, Type typeOfSrc, JsonSerializationContext context) {
-        JsonObject jsonObject = new JsonObject();
-        
-        jsonObject.addProperty("world", src.getWorld().getName());
-        jsonObject.addProperty("x", src.getX());
-        jsonObject.addProperty("y", src.getY());
-        jsonObject.addProperty("z", src.getZ());
-        jsonObject.addProperty("pitch", src.getPitch());
-        jsonObject.addProperty("yaw", src.getYaw());
-
-        return jsonObject;
+    public void write(JsonWriter out, Location src) throws IOException {
+        if (src == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        out.name("world").value(src.getWorld().getName());
+        out.name("x").value(src.getX());
+        out.name("y").value(src.getY());
+        out.name("z").value(src.getZ());
+        out.name("pitch").value((Number) src.getPitch());
+        out.name("yaw").value((Number) src.getYaw());
+        out.endObject();
+    }
+
+    /**
+     * Return the canonical instance of a world name.
+     *
+     * @param name The world name.
+     * @return The interned name.
+     */
+    public static String internWorld(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        String existing = worldNames.putIfAbsent(name, name);
+        return existing != null ? existing : name;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,211 @@
+package com.stemcraft.core.adapters;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.stemcraft.core.SMJson;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams the plain values found in Bukkit serialization maps directly to and from JSON tokens, without building a
+ * JSON tree. The output matches what Gson writes for the same map, and reading gives the maps the old tree based
+ * adapters read.
+ */
+final class SMJsonValues {
+    private SMJsonValues() {
+    }
+
+    /**
+     * Write a value. Strings, numbers, booleans, maps and collections are written directly. Any other value is passed
+     * to the Gson adapter for its runtime class, as the runtime type wrapper Gson uses for map values does.
+     *
+     * @param out The writer.
+     * @param value The value.
+     * @throws IOException
+     */
+    static void write(JsonWriter out, Object value) throws IOException {
+        write(null, out, value);
+    }
+
+    /**
+     * Write a value, passing values that are not written directly to the adapters of a Gson instance.
+     *
+     * @param gson The Gson instance, or null for the SMJson instance.
+     * @param out The writer.
+     * @param value The value.
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    static void write(Gson gson, JsonWriter out, Object value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else if (value instanceof String) {
+            out.value((String) value);
+        } else if (value instanceof Boolean) {
+            out.value((Boolean) value);
+        } else if (value instanceof Number) {
+            if (value instanceof Double || value instanceof Float) {
+                checkFinite(((Number) value).doubleValue());
+            }
+            out.value((Number) value);
+        } else if (value instanceof Map) {
+            writeMap(gson, out, (Map<?, ?>) value);
+        } else if (value instanceof Collection) {
+            out.beginArray();
+            for (Object element : (Collection<?>) value) {
+                write(gson, out, element);
+            }
+            out.endArray();
+        } else {
+            TypeAdapter<Object> adapter =
+                (TypeAdapter<Object>) (gson != null ? gson : SMJson.getGson()).getAdapter(value.getClass());
+            adapter.write(out, value);
+        }
+    }
+
+    /**
+     * Write a map as an object. Entries with a null value are skipped, as Gson does.
+     *
+     * @param out The writer.
+     * @param map The map.
+     * @throws IOException
+     */
+    static void writeMap(JsonWriter out, Map<?, ?> map) throws IOException {
+        writeMap(null, out, map);
+    }
+
+    /**
+     * Write a map as an object using the adapters of a Gson instance.
+     *
+     * @param gson The Gson instance, or null for the SMJson instance.
+     * @param out The writer.
+     * @param map The map.
+     * @throws IOException
+     */
+    static void writeMap(Gson gson, JsonWriter out, Map<?, ?> map) throws IOException {
+        out.beginObject();
+        writeEntries(gson, out, map);
+        out.endObject();
+    }
+
+    /**
+     * Write the entries of a map into the current object.
+     *
+     * @param out The writer.
+     * @param map The map.
+     * @throws IOException
+     */
+    static void writeEntries(JsonWriter out, Map<?, ?> map) throws IOException {
+        writeEntries(null, out, map);
+    }
+
+    /**
+     * Write the entries of a map into the current object using the adapters of a Gson instance. Keys are written
+     * with String.valueOf like the Gson map adapter, so enum keys use toString.
+     *
+     * @param gson The Gson instance, or null for the SMJson instance.
+     * @param out The writer.
+     * @param map The map.
+     * @throws IOException
+     */
+    static void writeEntries(Gson gson, JsonWriter out, Map<?, ?> map) throws IOException {
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (entry.getValue() != null) {
+                out.name(String.valueOf(entry.getKey()));
+                write(gson, out, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Throw if a floating point value cannot be written, as the Gson float and double adapters do.
+     *
+     * @param value The value.
+     */
+    private static void checkFinite(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException(value + " is not a valid double value as per JSON specification. To "
+                + "override this behavior, use GsonBuilder.serializeSpecialFloatingPointValues() method.");
+        }
+    }
+
+    /**
+     * Read a value. Objects are read as maps and arrays as lists.
+     *
+     * @param in The reader.
+     * @return The value.
+     * @throws IOException
+     */
+    static Object read(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case BEGIN_OBJECT:
+                return readMap(in);
+            case BEGIN_ARRAY:
+                List<Object> list = new ArrayList<>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    list.add(read(in));
+                }
+                in.endArray();
+                return list;
+            case STRING:
+                return in.nextString();
+            case NUMBER:
+                return readNumber(in.nextString());
+            case BOOLEAN:
+                return in.nextBoolean();
+            case NULL:
+                in.nextNull();
+                return null;
+            default:
+                throw new JsonParseException("Unexpected " + in.peek() + " at " + in.getPath());
+        }
+    }
+
+    /**
+     * Read an object as a map, keeping the order of its entries.
+     *
+     * @param in The reader.
+     * @return The map.
+     * @throws IOException
+     */
+    static Map<String, Object> readMap(JsonReader in) throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            map.put(in.nextName(), read(in));
+        }
+        in.endObject();
+
+        return map;
+    }
+
+    /**
+     * Convert a JSON number to an integer the same way the items have always been read. The old adapters read items
+     * through a JSON tree with the nextInt number strategy of SMJson, which truncates fractions and wraps numbers
+     * outside the int range instead of failing, so saved items must read back with those same values.
+     *
+     * @param text The number text.
+     * @return The number.
+     */
+    private static Integer readNumber(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            try {
+                return (int) Long.parseLong(text);
+            } catch (NumberFormatException notLong) {
+                return new BigDecimal(text).intValue();
+            }
+        }
+    }
+}
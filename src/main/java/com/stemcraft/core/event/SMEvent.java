@@ -1,16 +1,22 @@
 package com.stemcraft.core.event;
 
+import java.util.HashMap;
+import java.util.Map;
 import org.bukkit.Bukkit;
 import org.bukkit.event.Event;
 import org.bukkit.event.EventPriority;
-import org.bukkit.event.Listener;
 import com.stemcraft.STEMCraft;
 
 public class SMEvent {
+    /**
+     * The dispatchers by event class, indexed by priority. Each is registered with Bukkit once.
+     */
+    private static final Map<Class<? extends Event>, SMEventDispatcher<?>[]> dispatchers = new HashMap<>();
+
     public static <T extends Event> void register(Class<T> event, SMEventProcessor<T> callback) {
         SMEvent.register(event, EventPriority.NORMAL, callback, false);
     }
-    
+
     public static <T extends Event> void register(Class<T> event, SMEventProcessor<T> callback, boolean ignoreCancelled) {
         SMEvent.register(event, EventPriority.NORMAL, callback, ignoreCancelled);
     }
@@ -20,12 +26,68 @@ public class SMEvent {
     }
 
     public static <T extends Event> void register(Class<T> event, EventPriority priority, SMEventProcessor<T> callback, boolean ignoreCancelled) {
-        Bukkit.getPluginManager().registerEvent(event, new Listener() {}, priority, (listener, rawEvent) -> {
-            if (event.isInstance(rawEvent)) {
-                @SuppressWarnings("unchecked")
-                SMEventContext<T> context = new SMEventContext<>(listener, (T)rawEvent);
-                callback.process(context);
+        getDispatcher(event, priority).add(callback, ignoreCancelled);
+    }
+
+    /**
+     * Return the number of Bukkit executors registered.
+     *
+     * @return
+     */
+    public static synchronized int getDispatcherCount() {
+        int count = 0;
+        for (SMEventDispatcher<?>[] byPriority : dispatchers.values()) {
+            for (SMEventDispatcher<?> dispatcher : byPriority) {
+                if (dispatcher != null) {
+                    count++;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Return the number of callbacks registered.
+     *
+     * @return
+     */
+    public static synchronized int getCallbackCount() {
+        int count = 0;
+        for (SMEventDispatcher<?>[] byPriority : dispatchers.values()) {
+            for (SMEventDispatcher<?> dispatcher : byPriority) {
+                if (dispatcher != null) {
+                    count += dispatcher.size();
+                }
             }
-        }, STEMCraft.getPlugin(), ignoreCancelled);
+        }
+
+        return count;
+    }
+
+    /**
+     * Return the dispatcher for an event class and priority, registering it with Bukkit if needed.
+     *
+     * @param event
+     * @param priority
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private static synchronized <T extends Event> SMEventDispatcher<T> getDispatcher(Class<T> event,
+        EventPriority priority) {
+        SMEventDispatcher<?>[] byPriority =
+            dispatchers.computeIfAbsent(event, key -> new SMEventDispatcher<?>[EventPriority.values().length]);
+
+        SMEventDispatcher<T> dispatcher = (SMEventDispatcher<T>) byPriority[priority.ordinal()];
+        if (dispatcher == null) {
+            dispatcher = new SMEventDispatcher<>(event);
+            byPriority[priority.ordinal()] = dispatcher;
+
+            // Cancelled events are filtered per callback, so the executor must always be called
+            Bukkit.getPluginManager().registerEvent(event, dispatcher, priority, dispatcher, STEMCraft.getPlugin(),
+                false);
+        }
+
+        return dispatcher;
     }
 }
@@ -0,0 +1,125 @@
+package com.stemcraft.core.event;
+
+import java.util.Arrays;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.EventExecutor;
+
+/**
+ * The single Bukkit executor for an event class and priority. Callbacks are kept in an array that is replaced when a
+ * callback is added, so dispatching needs no locking or copying.
+ *
+ * The context passed to callbacks on the main thread is reused between events. Callbacks that need the event later,
+ * such as in a scheduled task, must keep the event and not the context. Asynchronous and nested events get their own
+ * context.
+ */
+final class SMEventDispatcher<T extends Event> implements Listener, EventExecutor {
+    /**
+     * A registered callback.
+     */
+    private static final class Callback<T extends Event> {
+        final SMEventProcessor<T> processor;
+        final boolean ignoreCancelled;
+
+        Callback(SMEventProcessor<T> processor, boolean ignoreCancelled) {
+            this.processor = processor;
+            this.ignoreCancelled = ignoreCancelled;
+        }
+    }
+
+    /**
+     * The event class this dispatcher was registered for.
+     */
+    private final Class<T> eventClass;
+
+    /**
+     * The callbacks in the order they were registered.
+     */
+    private volatile Callback<T>[] callbacks;
+
+    /**
+     * The context reused for main thread events.
+     */
+    private final SMEventContext<T> context = new SMEventContext<>(this, null);
+
+    /**
+     * If a main thread event is being dispatched, so that nested events do not overwrite the shared context.
+     */
+    private boolean dispatching = false;
+
+    @SuppressWarnings("unchecked")
+    SMEventDispatcher(Class<T> eventClass) {
+        this.eventClass = eventClass;
+        this.callbacks = new Callback[0];
+    }
+
+    /**
+     * Add a callback.
+     *
+     * @param processor The callback.
+     * @param ignoreCancelled If the callback is skipped when the event has been cancelled.
+     */
+    synchronized void add(SMEventProcessor<T> processor, boolean ignoreCancelled) {
+        Callback<T>[] updated = Arrays.copyOf(callbacks, callbacks.length + 1);
+        updated[callbacks.length] = new Callback<>(processor, ignoreCancelled);
+        callbacks = updated;
+    }
+
+    /**
+     * Return the number of callbacks.
+     *
+     * @return The callback count.
+     */
+    int size() {
+        return callbacks.length;
+    }
+
+    @Override
+    public void execute(Listener listener, Event rawEvent) {
+        // Events without their own handler list are delivered to the list of their parent class
+        if (!eventClass.isInstance(rawEvent)) {
+            return;
+        }
+
+        T event = eventClass.cast(rawEvent);
+        Callback<T>[] current = callbacks;
+
+        if (rawEvent.isAsynchronous() || dispatching) {
+            dispatch(current, event, new SMEventContext<>(this, event));
+            return;
+        }
+
+        dispatching = true;
+        context.event = event;
+        try {
+            dispatch(current, event, context);
+        } finally {
+            context.event = null;
+            dispatching = false;
+        }
+    }
+
+    /**
+     * Call each callback. A callback that throws is logged and does not stop the others.
+     *
+     * @param current The callbacks.
+     * @param event The event.
+     * @param eventContext The context to pass.
+     */
+    private static <T extends Event> void dispatch(Callback<T>[] current, T event, SMEventContext<T> eventContext) {
+        Cancellable cancellable = event instanceof Cancellable ? (Cancellable) event : null;
+
+        for (Callback<T> callback : current) {
+            if (callback.ignoreCancelled && cancellable != null && cancellable.isCancelled()) {
+                continue;
+            }
+
+            try {
+                callback.processor.process(eventContext);
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.stemcraft.core.event;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.player.PlayerEvent;
+
+/**
+ * Called when a player is about to be teleported by SMCommon.delayedPlayerTeleport, a tick before the teleport
+ * happens. Features can use the delay to prepare anything the player needs at the destination.
+ */
+public class SMPlayerPrepareTeleportEvent extends PlayerEvent {
+    private static final HandlerList handlers = new HandlerList();
+
+    /**
+     * The teleport destination.
+     */
+    private final Location to;
+
+    public SMPlayerPrepareTeleportEvent(Player player, Location to) {
+        super(player);
+        this.to = to;
+    }
+
+    /**
+     * Return the teleport destination.
+     *
+     * @return
+     */
+    public Location getTo() {
+        return to;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return handlers;
+    }
+
+    public static HandlerList getHandlerList() {
+        return handlers;
+    }
+}
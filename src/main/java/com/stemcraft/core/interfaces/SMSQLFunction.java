@@ -0,0 +1,9 @@
+package com.stemcraft.core.interfaces;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+@FunctionalInterface
+public interface SMSQLFunction<T> {
+    T apply(Connection connection) throws SQLException;
+}
@@ -0,0 +1,9 @@
+package com.stemcraft.core.interfaces;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+@FunctionalInterface
+public interface SMSQLRowMapper<T> {
+    T map(ResultSet resultSet) throws SQLException;
+}
@@ -0,0 +1,9 @@
+package com.stemcraft.core.interfaces;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+@FunctionalInterface
+public interface SMSQLTask {
+    void run(Connection connection) throws SQLException;
+}
@@ -0,0 +1,276 @@
+package com.stemcraft.core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * A thread safe cache with a maximum size, idle expiry and negative entries.
+ *
+ * Lookups do not lock. When the cache grows past its maximum size the least recently used entries are evicted in a
+ * batch so that the cost is spread over many writes.
+ *
+ * A negative entry records that a key is known not to exist. Negative entries expire after their own, usually
+ * shorter, time to live.
+ *
+ * @param <K> The key type.
+ * @param <V> The value type.
+ */
+public class SMCache<K, V> {
+    /**
+     * The fraction of the maximum size the cache is trimmed to when it overflows.
+     */
+    private static final double TRIM_FACTOR = 0.9;
+
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final long idleMillis;
+    private final long negativeMillis;
+    private final Object trimLock = new Object();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Create a cache.
+     *
+     * @param maxSize The maximum number of entries to hold.
+     * @param idleMillis The number of milliseconds an entry may go unused before it expires, or 0 to never expire.
+     * @param negativeMillis The number of milliseconds a negative entry is kept.
+     */
+    public SMCache(int maxSize, long idleMillis, long negativeMillis) {
+        this.maxSize = maxSize;
+        this.idleMillis = idleMillis;
+        this.negativeMillis = negativeMillis;
+    }
+
+    /**
+     * Look up a key.
+     *
+     * @param key The key to look up.
+     * @return null if the key is not cached, an empty optional if the key is cached as not existing, otherwise the
+     *         cached value.
+     */
+    public Optional<V> get(K key) {
+        Entry<V> entry = entries.get(key);
+        long now = System.currentTimeMillis();
+
+        if (entry == null || isExpired(entry, now)) {
+            if (entry != null && entries.remove(key, entry)) {
+                evictions.increment();
+            }
+
+            misses.increment();
+            return null;
+        }
+
+        entry.lastAccess = now;
+        if (entry.value == null) {
+            negativeHits.increment();
+            return Optional.empty();
+        }
+
+        hits.increment();
+        return Optional.of(entry.value);
+    }
+
+    /**
+     * Cache a value.
+     *
+     * @param key The key.
+     * @param value The value.
+     */
+    public void put(K key, V value) {
+        entries.put(key, new Entry<>(value, System.currentTimeMillis()));
+        trimIfNeeded();
+    }
+
+    /**
+     * Cache that a key does not exist.
+     *
+     * @param key The key.
+     */
+    public void putAbsent(K key) {
+        entries.put(key, new Entry<>(null, System.currentTimeMillis()));
+        trimIfNeeded();
+    }
+
+    /**
+     * Cache a value, or a negative entry if the value is null, unless the key is already cached. Used when loading
+     * from a slower store so that a newer value put while loading is not overwritten.
+     *
+     * @param key The key.
+     * @param value The value, or null to cache that the key does not exist.
+     */
+    public void putIfAbsent(K key, V value) {
+        long now = System.currentTimeMillis();
+
+        entries.compute(key, (k, existing) -> {
+            if (existing == null || isExpired(existing, now)) {
+                return new Entry<>(value, now);
+            }
+
+            return existing;
+        });
+        trimIfNeeded();
+    }
+
+    /**
+     * Remove a key from the cache.
+     *
+     * @param key The key.
+     */
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Remove all keys matching a predicate from the cache.
+     *
+     * @param predicate The predicate to test keys against.
+     */
+    public void invalidateIf(Predicate<K> predicate) {
+        entries.keySet().removeIf(predicate);
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Remove all expired entries.
+     */
+    public void cleanUp() {
+        long now = System.currentTimeMillis();
+
+        entries.forEach((key, entry) -> {
+            if (isExpired(entry, now) && entries.remove(key, entry)) {
+                evictions.increment();
+            }
+        });
+    }
+
+    /**
+     * Return the number of entries in the cache, including negative entries.
+     *
+     * @return The entry count.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getNegativeHits() {
+        return negativeHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Return a one line summary of the cache statistics.
+     *
+     * @return The statistics summary.
+     */
+    public String getStats() {
+        return size() + "/" + maxSize + " entries, " + getHits() + " hits, " + getNegativeHits() + " negative hits, "
+            + getMisses() + " misses, " + getEvictions() + " evictions";
+    }
+
+    /**
+     * Return if an entry has expired.
+     *
+     * @param entry The entry.
+     * @param now The current time in milliseconds.
+     * @return If the entry has expired.
+     */
+    private boolean isExpired(Entry<V> entry, long now) {
+        if (entry.value == null) {
+            return now - entry.created > negativeMillis;
+        }
+
+        return idleMillis > 0 && now - entry.lastAccess > idleMillis;
+    }
+
+    /**
+     * Evict expired entries, then the least recently used entries, once the cache has grown past its maximum size.
+     */
+    private void trimIfNeeded() {
+        if (entries.size() <= maxSize) {
+            return;
+        }
+
+        synchronized (trimLock) {
+            if (entries.size() <= maxSize) {
+                return;
+            }
+
+            cleanUp();
+
+            int target = (int) (maxSize * TRIM_FACTOR);
+            int excess = entries.size() - target;
+            if (excess <= 0) {
+                return;
+            }
+
+            // Snapshot access times so the sort order cannot change while sorting
+            List<Candidate<K, V>> candidates = new ArrayList<>(entries.size());
+            entries.forEach((key, entry) -> candidates.add(new Candidate<>(key, entry, entry.lastAccess)));
+            candidates.sort((a, b) -> Long.compare(a.lastAccess, b.lastAccess));
+
+            for (int i = 0; i < excess && i < candidates.size(); i++) {
+                Candidate<K, V> candidate = candidates.get(i);
+                if (entries.remove(candidate.key, candidate.entry)) {
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * A cached value. A null value is a negative entry.
+     */
+    private static class Entry<V> {
+        final V value;
+        final long created;
+        volatile long lastAccess;
+
+        Entry(V value, long created) {
+            this.value = value;
+            this.created = created;
+            this.lastAccess = created;
+        }
+    }
+
+    /**
+     * An entry considered for eviction.
+     */
+    private static class Candidate<K, V> {
+        final K key;
+        final Entry<V> entry;
+        final long lastAccess;
+
+        Candidate(K key, Entry<V> entry, long lastAccess) {
+            this.key = key;
+            this.entry = entry;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package com.stemcraft.core.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import com.stemcraft.STEMCraft;
+import com.stemcraft.core.SMJson;
+import com.stemcraft.core.SMJson.SMSerializeFailedException;
+import de.tr7zw.nbtapi.NBT;
+import de.tr7zw.nbtapi.iface.ReadWriteNBT;
+
+/**
+ * A compact binary format for item arrays.
+ *
+ * The data starts with a 4 byte header of the magic bytes "SMI" and a format version. The rest is Deflate compressed
+ * and holds the server data version, the slot count, a dictionary of the materials used and then one record per slot.
+ * Items without NBT tags are stored as a dictionary index and an amount. Other items are stored as their SNBT.
+ *
+ * Items saved by an older server are upgraded with the data fixer of the installed NBT-API when it has one.
+ *
+ * Data without the header is treated as the older JSON format, so rows can be read before they are converted.
+ */
+public class SMItemCodec {
+    private static final byte[] MAGIC = {'S', 'M', 'I'};
+    private static final byte VERSION = 1;
+
+    private static final byte SLOT_EMPTY = 0;
+    private static final byte SLOT_PLAIN = 1;
+    private static final byte SLOT_NBT = 2;
+
+    /**
+     * The NBT-API method that upgrades item NBT between data versions. It is only found in newer NBT-API releases.
+     */
+    private static final String DATA_FIXER_CLASS = "de.tr7zw.nbtapi.utils.DataFixerUtil";
+    private static final String DATA_FIXER_METHOD = "fixUpItemData";
+
+    private static Method dataFixer = null;
+    private static boolean dataFixerChecked = false;
+
+    /**
+     * The slots of an item array as stored, before any items are created.
+     */
+    static final class Frame {
+        /**
+         * The server data version the items were saved by.
+         */
+        final int dataVersion;
+
+        /**
+         * The material name of each plain slot, or null.
+         */
+        final String[] materials;
+
+        /**
+         * The amount of each plain slot.
+         */
+        final int[] amounts;
+
+        /**
+         * The SNBT of each slot with tags, or null.
+         */
+        final String[] snbt;
+
+        Frame(int dataVersion, int size) {
+            this.dataVersion = dataVersion;
+            this.materials = new String[size];
+            this.amounts = new int[size];
+            this.snbt = new String[size];
+        }
+
+        int size() {
+            return materials.length;
+        }
+    }
+
+    /**
+     * Encode an item array.
+     *
+     * @param items The items to encode. Null and air slots are stored as empty.
+     * @return The encoded data.
+     */
+    @SuppressWarnings("deprecation")
+    public static byte[] encode(ItemStack[] items) {
+        Frame frame = new Frame(Bukkit.getUnsafe().getDataVersion(), items.length);
+
+        for (int i = 0; i < items.length; i++) {
+            ItemStack item = items[i];
+            if (item == null || item.getType() == Material.AIR) {
+                continue;
+            }
+
+            ReadWriteNBT nbt = NBT.itemStackToNBT(item);
+            if (nbt.hasTag("tag")) {
+                frame.snbt[i] = nbt.toString();
+            } else {
+                frame.materials[i] = item.getType().name();
+                frame.amounts[i] = item.getAmount();
+            }
+        }
+
+        try {
+            return writeFrame(frame);
+        } catch (IOException e) {
+            throw new SMSerializeFailedException(e.getMessage());
+        }
+    }
+
+    /**
+     * Decode an item array. Data in the older JSON format is passed to the JSON adapters.
+     *
+     * @param data The encoded data.
+     * @return The items. Empty slots are null.
+     */
+    @SuppressWarnings("deprecation")
+    public static ItemStack[] decode(byte[] data) {
+        if (data == null) {
+            throw new SMSerializeFailedException("No item data to decode");
+        }
+
+        if (!isEncoded(data)) {
+            return SMJson.fromJson(ItemStack[].class, new String(data, StandardCharsets.UTF_8));
+        }
+
+        Frame frame;
+        try {
+            frame = readFrame(data);
+        } catch (IOException e) {
+            throw new SMSerializeFailedException(e.getMessage());
+        }
+
+        int currentVersion = Bukkit.getUnsafe().getDataVersion();
+        Method fixer = frame.dataVersion < currentVersion ? getDataFixer() : null;
+
+        ItemStack[] items = new ItemStack[frame.size()];
+        for (int i = 0; i < items.length; i++) {
+            if (frame.snbt[i] != null) {
+                ReadWriteNBT nbt = NBT.parseNBT(frame.snbt[i]);
+                if (fixer != null) {
+                    nbt = fixUp(fixer, nbt, frame.dataVersion, currentVersion);
+                }
+
+                items[i] = NBT.itemStackFromNBT(nbt);
+            } else if (frame.materials[i] != null) {
+                if (fixer != null) {
+                    // Materials may have been renamed, so plain items are upgraded by their id
+                    ReadWriteNBT nbt = NBT.parseNBT("{id:\"minecraft:" + frame.materials[i].toLowerCase(Locale.ROOT)
+                        + "\",Count:" + frame.amounts[i] + "b}");
+                    items[i] = NBT.itemStackFromNBT(fixUp(fixer, nbt, frame.dataVersion, currentVersion));
+                } else {
+                    Material material = Material.matchMaterial(frame.materials[i]);
+                    if (material != null) {
+                        items[i] = new ItemStack(material, frame.amounts[i]);
+                    }
+                }
+            }
+        }
+
+        return items;
+    }
+
+    /**
+     * Return if data is in the binary format.
+     *
+     * @param data The data to check.
+     * @return If the data starts with the binary format header.
+     */
+    public static boolean isEncoded(byte[] data) {
+        if (data == null || data.length <= MAGIC.length) {
+            return false;
+        }
+
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Write the slots of an item array in the binary format.
+     *
+     * @param frame The slots.
+     * @return The encoded data.
+     * @throws IOException
+     */
+    static byte[] writeFrame(Frame frame) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> materials = new ArrayList<>();
+        ByteArrayOutputStream slotBytes = new ByteArrayOutputStream();
+        DataOutputStream slots = new DataOutputStream(slotBytes);
+
+        for (int i = 0; i < frame.size(); i++) {
+            if (frame.snbt[i] != null) {
+                byte[] snbt = frame.snbt[i].getBytes(StandardCharsets.UTF_8);
+
+                slots.writeByte(SLOT_NBT);
+                slots.writeInt(snbt.length);
+                slots.write(snbt);
+            } else if (frame.materials[i] != null) {
+                Integer index = dictionary.get(frame.materials[i]);
+                if (index == null) {
+                    index = materials.size();
+                    dictionary.put(frame.materials[i], index);
+                    materials.add(frame.materials[i]);
+                }
+
+                slots.writeByte(SLOT_PLAIN);
+                slots.writeShort(index);
+                slots.writeByte(frame.amounts[i]);
+            } else {
+                slots.writeByte(SLOT_EMPTY);
+            }
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(slotBytes.size() / 2 + 64);
+        output.write(MAGIC);
+        output.write(VERSION);
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream data = new DataOutputStream(new DeflaterOutputStream(output, deflater))) {
+            data.writeInt(frame.dataVersion);
+            data.writeShort(frame.size());
+            data.writeShort(materials.size());
+            for (String material : materials) {
+                data.writeUTF(material);
+            }
+
+            slotBytes.writeTo(data);
+        } finally {
+            deflater.end();
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Read the slots of an item array from the binary format.
+     *
+     * @param data The encoded data, starting with the header.
+     * @return The slots.
+     * @throws IOException
+     */
+    static Frame readFrame(byte[] data) throws IOException {
+        if (!isEncoded(data)) {
+            throw new SMSerializeFailedException("Item data is not in the binary format");
+        }
+
+        if (data[MAGIC.length] != VERSION) {
+            throw new SMSerializeFailedException("Unsupported item data version " + data[MAGIC.length]);
+        }
+
+        ByteArrayInputStream input = new ByteArrayInputStream(data, MAGIC.length + 1, data.length - MAGIC.length - 1);
+        try (DataInputStream stream = new DataInputStream(new InflaterInputStream(input))) {
+            int dataVersion = stream.readInt();
+            Frame frame = new Frame(dataVersion, stream.readUnsignedShort());
+
+            String[] materials = new String[stream.readUnsignedShort()];
+            for (int i = 0; i < materials.length; i++) {
+                materials[i] = stream.readUTF();
+            }
+
+            for (int i = 0; i < frame.size(); i++) {
+                byte type = stream.readByte();
+
+                if (type == SLOT_PLAIN) {
+                    frame.materials[i] = materials[stream.readUnsignedShort()];
+                    frame.amounts[i] = stream.readUnsignedByte();
+                } else if (type == SLOT_NBT) {
+                    byte[] snbt = new byte[stream.readInt()];
+                    stream.readFully(snbt);
+
+                    frame.snbt[i] = new String(snbt, StandardCharsets.UTF_8);
+                } else if (type != SLOT_EMPTY) {
+                    throw new SMSerializeFailedException("Invalid item slot type " + type);
+                }
+            }
+
+            return frame;
+        }
+    }
+
+    /**
+     * Return the NBT-API data fixer, or null if the installed NBT-API does not have one. A warning is logged the first
+     * time it is missing.
+     *
+     * @return The data fixer method.
+     */
+    private static synchronized Method getDataFixer() {
+        if (!dataFixerChecked) {
+            dataFixerChecked = true;
+
+            try {
+                dataFixer = Class.forName(DATA_FIXER_CLASS)
+                    .getMethod(DATA_FIXER_METHOD, ReadWriteNBT.class, int.class, int.class);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                STEMCraft.warning("Items saved by an older server version will not be upgraded as the installed "
+                    + "NBT-API has no data fixer");
+            }
+        }
+
+        return dataFixer;
+    }
+
+    /**
+     * Upgrade item NBT from the data version it was saved by to the current version.
+     *
+     * @param fixer The data fixer method.
+     * @param nbt The item NBT.
+     * @param fromVersion The data version the item was saved by.
+     * @param toVersion The current data version.
+     * @return The upgraded NBT, or the NBT unchanged if it could not be upgraded.
+     */
+    private static ReadWriteNBT fixUp(Method fixer, ReadWriteNBT nbt, int fromVersion, int toVersion) {
+        try {
+            Object fixed = fixer.invoke(null, nbt, fromVersion, toVersion);
+            return fixed instanceof ReadWriteNBT ? (ReadWriteNBT) fixed : nbt;
+        } catch (ReflectiveOperationException e) {
+            e.printStackTrace();
+            return nbt;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.stemcraft.core.util;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from long keys to long values without boxing, using open addressing with linear probing. Not thread
+ * safe.
+ */
+public class SMLongLongHashMap {
+    private static final float LOAD_FACTOR = 0.5f;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private long[] values;
+    private boolean[] used;
+    private int size = 0;
+    private int mask;
+    private int resizeAt;
+
+    /**
+     * Callback for iterating the map.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+
+    public SMLongLongHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Create a map sized to hold a number of entries without resizing.
+     *
+     * @param expectedSize The expected number of entries.
+     */
+    public SMLongLongHashMap(int expectedSize) {
+        allocate(tableSizeFor((int) Math.ceil(expectedSize / LOAD_FACTOR)));
+    }
+
+    /**
+     * Pack two ints, such as chunk coordinates, into a single key.
+     *
+     * @param high The value stored in the upper 32 bits.
+     * @param low The value stored in the lower 32 bits.
+     * @return The packed key.
+     */
+    public static long pack(int high, int low) {
+        return ((long) high << 32) | (low & 0xffffffffL);
+    }
+
+    /**
+     * Return the upper int of a packed key.
+     *
+     * @param key The packed key.
+     * @return The upper 32 bits.
+     */
+    public static int unpackHigh(long key) {
+        return (int) (key >> 32);
+    }
+
+    /**
+     * Return the lower int of a packed key.
+     *
+     * @param key The packed key.
+     * @return The lower 32 bits.
+     */
+    public static int unpackLow(long key) {
+        return (int) key;
+    }
+
+    /**
+     * Set the value for a key.
+     *
+     * @param key The key.
+     * @param value The value.
+     */
+    public void put(long key, long value) {
+        int slot = findSlot(key);
+
+        if (used[slot]) {
+            values[slot] = value;
+            return;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        used[slot] = true;
+
+        if (++size > resizeAt) {
+            resize(keys.length * 2);
+        }
+    }
+
+    /**
+     * Get the value for a key.
+     *
+     * @param key The key.
+     * @param defaultValue The value to return if the key is not in the map.
+     * @return The value.
+     */
+    public long get(long key, long defaultValue) {
+        int slot = findSlot(key);
+        return used[slot] ? values[slot] : defaultValue;
+    }
+
+    /**
+     * Return if the map contains a key.
+     *
+     * @param key The key.
+     * @return If the key is in the map.
+     */
+    public boolean containsKey(long key) {
+        return used[findSlot(key)];
+    }
+
+    /**
+     * Remove a key from the map.
+     *
+     * @param key The key.
+     * @return If the key was in the map.
+     */
+    public boolean remove(long key) {
+        int slot = findSlot(key);
+        if (!used[slot]) {
+            return false;
+        }
+
+        used[slot] = false;
+        size--;
+
+        // Move later entries in the probe sequence back so that lookups do not stop at the gap
+        int gap = slot;
+        int next = (slot + 1) & mask;
+        while (used[next]) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                used[gap] = true;
+                used[next] = false;
+                gap = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        return true;
+    }
+
+    /**
+     * Call a consumer for every entry in the map.
+     *
+     * @param consumer The consumer.
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all entries, keeping the current capacity.
+     */
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private int findSlot(long key) {
+        int slot = hash(key) & mask;
+
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = findSlot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                used[slot] = true;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Return the hash of a key. The slot a key is probed from is the hash masked to the table size.
+     */
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int size = MIN_CAPACITY;
+        while (size < capacity) {
+            size <<= 1;
+        }
+
+        return size;
+    }
+}
@@ -1,25 +1,52 @@
 package com.stemcraft.feature;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
+import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.PlayerInventory;
 import org.bukkit.inventory.meta.BookMeta;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.stemcraft.STEMCraft;
 import com.stemcraft.core.SMCommon;
 import com.stemcraft.core.SMDatabase;
 import com.stemcraft.core.SMFeature;
 import com.stemcraft.core.SMLocale;
 import com.stemcraft.core.SMMessenger;
+import com.stemcraft.core.SMPaginate;
 import com.stemcraft.core.command.SMCommand;
 import com.stemcraft.core.tabcomplete.SMTabComplete;
+import com.stemcraft.core.util.SMCache;
+import net.md_5.bungee.api.chat.BaseComponent;
+import net.md_5.bungee.api.chat.ClickEvent;
+import net.md_5.bungee.api.chat.HoverEvent;
+import net.md_5.bungee.api.chat.TextComponent;
+import net.md_5.bungee.api.chat.hover.content.Text;
 
 /**
  * Allows the creation of custom books that can be saved and shown to the player using a command
@@ -27,6 +54,21 @@ import com.stemcraft.core.tabcomplete.SMTabComplete;
 public class SMBooks extends SMFeature {
     private List<String> cacheList = new ArrayList<>();
 
+    /**
+     * Built books by name, or a negative entry for names known not to exist. Cached books are templates and are
+     * cloned before being handed out.
+     */
+    private final SMCache<String, ItemStack> bookCache = new SMCache<>(512, 30 * 60 * 1000L, 60 * 1000L);
+
+    /**
+     * The file used by export and import when no file is given.
+     */
+    private static final String DEFAULT_EXPORT_FILE = "books-export.json";
+
+    public SMBooks() {
+        lazyCommands.add("book");
+    }
+
     /**
      * When feature is enabled
      */
@@ -54,6 +96,39 @@ public class SMBooks extends SMFeature {
                 .executeUpdate();
         });
 
+        SMDatabase.runMigration("240116150000_CompressBookContent", () -> {
+            SMDatabase.prepareStatement(
+                "ALTER TABLE books " +
+                    "ADD COLUMN content_z BLOB")
+                .executeUpdate();
+
+            SMDatabase.write(connection -> {
+                SMDatabase.transaction(connection, transaction -> {
+                    List<Object[]> rows = new ArrayList<>();
+
+                    try (PreparedStatement statement = transaction.prepareStatement("SELECT id, content FROM books");
+                        ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            rows.add(new Object[] {resultSet.getLong("id"), resultSet.getString("content")});
+                        }
+                    }
+
+                    try (PreparedStatement statement = transaction.prepareStatement(
+                        "UPDATE books SET content = '', content_z = ? WHERE id = ?")) {
+                        for (Object[] row : rows) {
+                            statement.setBytes(1, compress((String) row[1]));
+                            statement.setLong(2, (Long) row[0]);
+                            statement.addBatch();
+                        }
+
+                        statement.executeBatch();
+                    }
+                });
+
+                return null;
+            });
+        });
+
         this.buildCacheList();
 
         SMTabComplete.register("book", () -> {
@@ -67,6 +142,9 @@ public class SMBooks extends SMFeature {
             .tabComplete("show", "{book}", "{player}")
             .tabComplete("del", "{book}")
             .tabComplete("unlock")
+            .tabComplete("list")
+            .tabComplete("export")
+            .tabComplete("import")
             .permission("stemcraft.book")
             .action(ctx -> {
                 // Check there are args
@@ -130,66 +208,79 @@ public class SMBooks extends SMFeature {
                     ctx.player.getInventory().setItemInMainHand(book);
                     String content = String.join("<n>", newPages);
 
-                    try {
-                        PreparedStatement selectStatement = SMDatabase.prepareStatement(
-                            "SELECT COUNT(*) FROM books WHERE name = ?");
-                        selectStatement.setString(1, name);
-                        ResultSet selectResult = selectStatement.executeQuery();
-                        selectResult.next();
+                    CommandSender sender = ctx.sender;
 
-                        int rowCount = selectResult.getInt(1);
+                    SMDatabase.sync(SMDatabase.updateAsync(connection -> {
+                        int rowCount = 0;
+
+                        try (PreparedStatement selectStatement = connection.prepareStatement(
+                            "SELECT COUNT(*) FROM books WHERE name = ?")) {
+                            selectStatement.setString(1, name);
+                            try (ResultSet selectResult = selectStatement.executeQuery()) {
+                                selectResult.next();
+                                rowCount = selectResult.getInt(1);
+                            }
+                        }
 
                         PreparedStatement statement;
                         if (rowCount > 0) {
                             // Update existing row
-                            statement = SMDatabase.prepareStatement(
-                                "UPDATE books SET author = ?, title = ?, content = ? WHERE name = ?");
+                            statement = connection.prepareStatement(
+                                "UPDATE books SET author = ?, title = ?, content = '', content_z = ? WHERE name = ?");
 
                             statement.setString(1, author);
                             statement.setString(2, title);
-                            statement.setString(3, content);
+                            statement.setBytes(3, compress(content));
                             statement.setString(4, name);
                         } else {
                             // Insert new row
-                            statement = SMDatabase.prepareStatement(
-                                "INSERT INTO books (name, author, title, content) VALUES (?, ?, ?, ?)");
+                            statement = connection.prepareStatement(
+                                "INSERT INTO books (name, author, title, content, content_z) VALUES (?, ?, ?, '', ?)");
                             statement.setString(1, name);
                             statement.setString(2, author);
                             statement.setString(3, title);
-                            statement.setString(4, content);
+                            statement.setBytes(4, compress(content));
                         }
 
-                        int rowsAffected = statement.executeUpdate();
+                        try (statement) {
+                            int rowsAffected = statement.executeUpdate();
 
-                        if (rowsAffected > 0) {
-                            if (rowCount > 0) {
-                                SMMessenger.successLocale(ctx.sender, "BOOK_SAVE_UPDATED", "name", name);
-                            } else {
-                                SMMessenger.successLocale(ctx.sender, "BOOK_SAVE_NEW", "name", name);
+                            if (rowsAffected > 0) {
+                                return rowCount > 0 ? "BOOK_SAVE_UPDATED" : "BOOK_SAVE_NEW";
                             }
+                        }
+
+                        return "BOOK_SAVE_FAILED";
+                    }), localeId -> {
+                        if (localeId.equals("BOOK_SAVE_FAILED")) {
+                            SMMessenger.errorLocale(sender, localeId, "name", name);
                         } else {
-                            SMMessenger.errorLocale(ctx.sender, "BOOK_SAVE_FAILED", "name", name);
+                            SMMessenger.successLocale(sender, localeId, "name", name);
+                            this.bookCache.put(name, buildBook(author, title, newPages));
+                            SMPaginate.invalidateCount("books");
+                            this.addCacheName(name);
                         }
-                    } catch (SQLException e) {
-                        e.printStackTrace();
-                    }
+                    });
 
                     // Sub command - get
                 } else if ("get".equals(sub)) {
                     ctx.checkNotConsole();
                     ctx.checkArgsLocale(2, "BOOK_USAGE_GET");
 
-                    ItemStack book = this.getBook(ctx.args.get(1));
-                    if (book != null) {
-                        Map<Integer, ItemStack> result = ctx.player.getInventory().addItem(book);
-                        if (!result.isEmpty()) {
-                            ctx.returnErrorLocale("BOOK_INVENTORY_FULL");
+                    Player player = ctx.player;
+
+                    this.getBook(ctx.args.get(1), book -> {
+                        if (book != null) {
+                            Map<Integer, ItemStack> result = player.getInventory().addItem(book);
+                            if (!result.isEmpty()) {
+                                SMMessenger.errorLocale(player, "BOOK_INVENTORY_FULL");
+                            } else {
+                                SMMessenger.successLocale(player, "BOOK_GIVEN");
+                            }
                         } else {
-                            ctx.returnSuccessLocale("BOOK_GIVEN");
+                            SMMessenger.errorLocale(player, "BOOK_NOT_FOUND");
                         }
-                    } else {
-                        ctx.returnErrorLocale("BOOK_NOT_FOUND");
-                    }
+                    });
 
                     // Sub command - show
                 } else if ("show".equals(sub)) {
@@ -199,52 +290,40 @@ public class SMBooks extends SMFeature {
                     Player targetPlayer = ctx.getArgAsPlayer(3, ctx.player);
                     ctx.checkNotNullLocale(targetPlayer, "CMD_PLAYER_NOT_FOUND");
 
-                    ItemStack book = this.getBook(ctx.args.get(1));
-                    if (book != null) {
-                        if (STEMCraft.featureEnabled("SMGeyser") && SMGeyser.isBedrockPlayer(targetPlayer)) {
-                            if (STEMCraft.featureEnabled("SMItemAttribs")) {
-                                SMItemAttribs.addAttrib(book, "destroy-on-drop", 1);
-                            }
+                    CommandSender sender = ctx.sender;
 
-                            SMCommon.givePlayerItem(targetPlayer, book);
-
-                            String title = getBookTitle(book);
-                            SMMessenger.infoLocale(targetPlayer, "BOOK_GIVEN_WITH_TITLE", "title", title);
+                    this.getBook(ctx.args.get(1), book -> {
+                        if (book != null) {
+                            this.presentBook(targetPlayer, book);
                         } else {
-                            targetPlayer.openBook(book);
+                            SMMessenger.errorLocale(sender, "BOOK_NOT_FOUND");
                         }
-                    } else {
-                        ctx.returnErrorLocale("BOOK_NOT_FOUND");
-                    }
+                    });
 
                     // Sub command - del
                 } else if ("del".equals(sub)) {
                     ctx.checkPermission("stemcraft.book.edit");
                     ctx.checkArgsLocale(2, "BOOK_USAGE_DEL");
 
-                    try {
-                        PreparedStatement selectStatement = SMDatabase.prepareStatement(
-                            "SELECT COUNT(*) FROM books WHERE name = ?");
-                        selectStatement.setString(1, ctx.args.get(1));
-                        ResultSet selectResult = selectStatement.executeQuery();
-                        selectResult.next();
-
-                        int rowCount = selectResult.getInt(1);
-
-                        PreparedStatement statement;
-                        if (rowCount > 0) {
-                            statement = SMDatabase.prepareStatement(
-                                "DELETE FROM books WHERE name = ?");
+                    CommandSender sender = ctx.sender;
+                    String name = ctx.args.get(1);
 
-                            statement.setString(1, ctx.args.get(1));
-                            statement.executeUpdate();
-                            ctx.returnSuccessLocale("BOOK_DELETE_SUCCESSFUL");
+                    SMDatabase.sync(SMDatabase.updateAsync(connection -> {
+                        try (PreparedStatement statement = connection.prepareStatement(
+                            "DELETE FROM books WHERE name = ?")) {
+                            statement.setString(1, name);
+                            return statement.executeUpdate();
+                        }
+                    }), rowsAffected -> {
+                        if (rowsAffected > 0) {
+                            SMMessenger.successLocale(sender, "BOOK_DELETE_SUCCESSFUL");
+                            this.bookCache.putAbsent(name);
+                            SMPaginate.invalidateCount("books");
+                            this.cacheList.remove(name);
                         } else {
-                            ctx.returnErrorLocale("BOOK_NOT_FOUND");
+                            SMMessenger.errorLocale(sender, "BOOK_NOT_FOUND");
                         }
-                    } catch (SQLException e) {
-                        e.printStackTrace();
-                    }
+                    });
 
                     // Sub command - unlock
                 } else if ("unlock".equals(sub)) {
@@ -278,11 +357,46 @@ public class SMBooks extends SMFeature {
                     } else {
                         ctx.returnErrorLocale("BOOK_UNLOCK_NOT_BOOK");
                     }
+                    // Sub command - list
+                } else if ("list".equals(sub)) {
+                    SMPaginate.Keyset<String[]> listing = SMPaginate
+                        .keyset("books", resultSet -> new String[] {resultSet.getString("name"),
+                                resultSet.getString("title")}, "name")
+                        .columns("title");
+
+                    new SMPaginate(ctx.sender, ctx.getArg(2, "1"))
+                        .command("/book list")
+                        .title("Books")
+                        .none(SMLocale.get(ctx.sender, "BOOK_LIST_EMPTY"))
+                        .showKeyset(listing, row -> {
+                            TextComponent name = new TextComponent(ChatColor.GOLD + row[0] + " " + ChatColor.GRAY
+                                + SMCommon.format(row[1]));
+                            name.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, "/book show " + row[0]));
+                            name.setHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, new Text("Show book")));
+
+                            return new BaseComponent[] {name};
+                        });
+
+                    // Sub command - export
+                } else if ("export".equals(sub)) {
+                    ctx.checkPermission("stemcraft.book.edit");
+
+                    File file = getExportFile(ctx.args.size() > 1 ? ctx.args.get(1) : DEFAULT_EXPORT_FILE);
+                    ctx.checkNotNullLocale(file, "BOOK_INVALID_FILE");
+
+                    this.exportBooks(ctx.sender, file);
+
+                    // Sub command - import
+                } else if ("import".equals(sub)) {
+                    ctx.checkPermission("stemcraft.book.edit");
+
+                    File file = getExportFile(ctx.args.size() > 1 ? ctx.args.get(1) : DEFAULT_EXPORT_FILE);
+                    ctx.checkNotNullLocale(file, "BOOK_INVALID_FILE");
+
+                    this.importBooks(ctx.sender, file);
                 } else {
                     ctx.returnErrorLocale("BOOK_UNKNOWN_OPTION");
                 }
-
-                this.buildCacheList();
             })
             .register();
 
@@ -290,39 +404,286 @@ public class SMBooks extends SMFeature {
     }
 
     /**
-     * Get Book item from database.
+     * Get a Book item, from the book cache or the database. The callback is run on the main thread with a copy of the
+     * book, or null if not found.
      * 
      * @param name
-     * @return
+     * @param callback
      */
-    private ItemStack getBook(String name) {
-        try {
-            PreparedStatement statement = SMDatabase.prepareStatement(
-                "SELECT * FROM books WHERE name = ? LIMIT 1");
+    private void getBook(String name, Consumer<ItemStack> callback) {
+        Optional<ItemStack> cached = this.bookCache.get(name);
+        if (cached != null) {
+            callback.accept(cached.map(ItemStack::clone).orElse(null));
+            return;
+        }
+
+        SMDatabase.sync(SMDatabase.queryAsync(connection -> {
+            PreparedStatement statement = SMDatabase.prepareCached(connection,
+                "SELECT author, title, content, content_z FROM books WHERE name = ? LIMIT 1");
             statement.setString(1, name);
 
-            ResultSet resultSet = statement.executeQuery();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    return new BookRow(name, resultSet.getString("author"), resultSet.getString("title"),
+                        readPages(resultSet));
+                }
+            }
 
-            if (resultSet.next()) {
-                String author = resultSet.getString("author");
-                String title = resultSet.getString("title");
-                String content = resultSet.getString("content");
+            return null;
+        }), row -> {
+            if (row == null) {
+                this.bookCache.putIfAbsent(name, null);
+                callback.accept(null);
+                return;
+            }
 
-                ItemStack book = new ItemStack(Material.WRITTEN_BOOK);
-                BookMeta meta = (BookMeta) book.getItemMeta();
+            // A book saved or deleted while loading is already cached and takes precedence
+            this.bookCache.putIfAbsent(name, buildBook(row.author, row.title, row.pages));
+            Optional<ItemStack> book = this.bookCache.get(name);
+            callback.accept(book != null ? book.map(ItemStack::clone).orElse(null) : null);
+        });
+    }
 
-                meta.setAuthor(author);
-                meta.setTitle(title);
-                meta.setPages(content.split("<n>"));
-                book.setItemMeta(meta);
+    /**
+     * Build a written book.
+     * 
+     * @param author The book author.
+     * @param title The book title.
+     * @param pages The book pages.
+     * @return The book.
+     */
+    private static ItemStack buildBook(String author, String title, List<String> pages) {
+        ItemStack book = new ItemStack(Material.WRITTEN_BOOK);
+        BookMeta meta = (BookMeta) book.getItemMeta();
+
+        meta.setAuthor(author);
+        meta.setTitle(title);
+        meta.setPages(pages);
+        book.setItemMeta(meta);
+
+        return book;
+    }
 
-                return book;
+    /**
+     * Read the pages of a book row, from the compressed content if present.
+     * 
+     * @param resultSet The result set positioned on the row.
+     * @return The pages.
+     * @throws SQLException
+     */
+    private static List<String> readPages(ResultSet resultSet) throws SQLException {
+        byte[] compressed = resultSet.getBytes("content_z");
+        String content = compressed != null ? decompress(compressed) : resultSet.getString("content");
+
+        return Arrays.asList(content.split("<n>"));
+    }
+
+    /**
+     * Compress book content.
+     * 
+     * @param content The content.
+     * @return The compressed content.
+     */
+    private static byte[] compress(String content) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        try (DeflaterOutputStream stream = new DeflaterOutputStream(output, deflater)) {
+            stream.write(content.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Decompress book content.
+     * 
+     * @param data The compressed content.
+     * @return The content.
+     */
+    private static String decompress(byte[] data) {
+        try (InflaterInputStream stream = new InflaterInputStream(new ByteArrayInputStream(data))) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Return the export file in the plugin folder for a file name, or null if the name is not a plain file name.
+     * 
+     * @param name The file name.
+     * @return The file.
+     */
+    private static File getExportFile(String name) {
+        if (!name.matches("[a-zA-Z0-9_.-]+") || name.startsWith(".")) {
+            return null;
+        }
+
+        if (!name.toLowerCase().endsWith(".json")) {
+            name += ".json";
+        }
+
+        return new File(STEMCraft.getPlugin().getDataFolder(), name);
+    }
+
+    /**
+     * Export all books to a JSON file as an array of objects with a name, author, title and list of pages.
+     * 
+     * @param sender The sender to report to.
+     * @param file The file to write.
+     */
+    private void exportBooks(CommandSender sender, File file) {
+        CompletableFuture<Integer> future = SMDatabase.queryAsync(connection -> {
+            int count = 0;
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT name, author, title, content, content_z FROM books ORDER BY name");
+                ResultSet resultSet = statement.executeQuery();
+                JsonWriter writer = new JsonWriter(new OutputStreamWriter(new FileOutputStream(file),
+                    StandardCharsets.UTF_8))) {
+                writer.setIndent("  ");
+                writer.beginArray();
+
+                while (resultSet.next()) {
+                    writer.beginObject();
+                    writer.name("name").value(resultSet.getString("name"));
+                    writer.name("author").value(resultSet.getString("author"));
+                    writer.name("title").value(resultSet.getString("title"));
+                    writer.name("pages").beginArray();
+                    for (String page : readPages(resultSet)) {
+                        writer.value(page);
+                    }
+                    writer.endArray();
+                    writer.endObject();
+                    count++;
+                }
+
+                writer.endArray();
+            } catch (IOException e) {
+                throw new SQLException(e);
+            }
+
+            return count;
+        });
+
+        SMDatabase.sync(future, count -> SMMessenger.successLocale(sender, "BOOK_EXPORTED", "count",
+            String.valueOf(count), "file", file.getName()));
+
+        future.exceptionally(e -> {
+            SMDatabase.runSync(() -> SMMessenger.errorLocale(sender, "BOOK_EXPORT_FAILED", "file", file.getName()));
+            return null;
+        });
+    }
+
+    /**
+     * Import books from a JSON file written by export. Books with the same name are replaced. All books are written
+     * in a single transaction.
+     * 
+     * @param sender The sender to report to.
+     * @param file The file to read.
+     */
+    private void importBooks(CommandSender sender, File file) {
+        CompletableFuture<List<String>> future = SMDatabase.updateAsync(connection -> {
+            List<BookRow> books = new ArrayList<>();
+
+            try (JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8))) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    books.add(readBook(reader));
+                }
+                reader.endArray();
+            } catch (IOException | IllegalStateException e) {
+                throw new SQLException(e);
+            }
+
+            SMDatabase.transaction(connection, transaction -> {
+                PreparedStatement statement = SMDatabase.prepareCached(transaction,
+                    "INSERT INTO books (name, author, title, content, content_z) VALUES (?, ?, ?, '', ?) " +
+                        "ON CONFLICT (name) DO UPDATE SET author = excluded.author, title = excluded.title, " +
+                        "content = '', content_z = excluded.content_z");
+
+                for (BookRow book : books) {
+                    statement.setString(1, book.name);
+                    statement.setString(2, book.author);
+                    statement.setString(3, book.title);
+                    statement.setBytes(4, compress(String.join("<n>", book.pages)));
+                    statement.addBatch();
+                }
+
+                statement.executeBatch();
+            });
+
+            List<String> names = new ArrayList<>();
+            books.forEach(book -> names.add(book.name));
+            return names;
+        });
+
+        SMDatabase.sync(future, names -> {
+            names.forEach(name -> {
+                this.bookCache.invalidate(name);
+                this.addCacheName(name);
+            });
+
+            SMPaginate.invalidateCount("books");
+            SMMessenger.successLocale(sender, "BOOK_IMPORTED", "count", String.valueOf(names.size()), "file",
+                file.getName());
+        });
+
+        future.exceptionally(e -> {
+            SMDatabase.runSync(() -> SMMessenger.errorLocale(sender, "BOOK_IMPORT_FAILED", "file", file.getName()));
+            return null;
+        });
+    }
+
+    /**
+     * Read a book object from an export file.
+     * 
+     * @param reader The reader positioned at the object.
+     * @return The book.
+     * @throws IOException
+     */
+    private static BookRow readBook(JsonReader reader) throws IOException {
+        String name = null;
+        String author = "";
+        String title = "";
+        List<String> pages = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "name":
+                    name = reader.nextString();
+                    break;
+                case "author":
+                    author = reader.nextString();
+                    break;
+                case "title":
+                    title = reader.nextString();
+                    break;
+                case "pages":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        pages.add(reader.nextString());
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
+        reader.endObject();
 
-        return null;
+        if (name == null || name.isEmpty()) {
+            throw new IOException("Book without a name at " + reader.getPath());
+        }
+
+        return new BookRow(name, author, title, pages);
     }
 
     private String generateName(String title) {
@@ -342,18 +703,31 @@ public class SMBooks extends SMFeature {
      * Build a book name cache list.
      */
     private void buildCacheList() {
-        try {
-            PreparedStatement statement = SMDatabase.prepareStatement(
-                "SELECT name FROM books");
-            ResultSet resultSet = statement.executeQuery();
+        SMDatabase.sync(SMDatabase.queryAsync(connection -> {
+            List<String> names = new ArrayList<>();
 
-            this.cacheList.clear();
-            while (resultSet.next()) {
-                String name = resultSet.getString("name");
-                this.cacheList.add(name);
+            try (PreparedStatement statement = connection.prepareStatement("SELECT name FROM books");
+                ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    names.add(resultSet.getString("name"));
+                }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+
+            return names;
+        }), names -> {
+            this.cacheList.clear();
+            this.cacheList.addAll(names);
+        });
+    }
+
+    /**
+     * Add a name to the book name cache list if not already present.
+     * 
+     * @param name
+     */
+    private void addCacheName(String name) {
+        if (!this.cacheList.contains(name)) {
+            this.cacheList.add(name);
         }
     }
 
@@ -374,22 +748,37 @@ public class SMBooks extends SMFeature {
      * @param name
      */
     public void showBook(Player player, String name) {
-        ItemStack book = this.getBook(name);
-        if (book != null) {
-            if (STEMCraft.featureEnabled("SMGeyser") && SMGeyser.isBedrockPlayer(player)) {
-                if (STEMCraft.featureEnabled("SMItemAttribs")) {
-                    SMItemAttribs.addAttrib(book, "destroy-on-drop", 1);
-                }
-
-                if (SMCommon.givePlayerItem(player, book)) {
-                    String title = getBookTitle(book);
-                    SMMessenger.infoLocale(player, "BOOK_GIVEN_WITH_TITLE", "title", title);
-                }
+        this.getBook(name, book -> {
+            if (book != null) {
+                this.presentBook(player, book);
             } else {
-                player.openBook(book);
+                SMMessenger.errorLocale(player, "BOOK_NOT_FOUND");
+            }
+        });
+    }
+
+    /**
+     * Open a book for a player, or give it to them if they are a bedrock player.
+     * 
+     * @param player
+     * @param book
+     */
+    private void presentBook(Player player, ItemStack book) {
+        if (!player.isOnline()) {
+            return;
+        }
+
+        if (STEMCraft.featureEnabled("SMGeyser") && SMGeyser.isBedrockPlayer(player)) {
+            if (STEMCraft.featureEnabled("SMItemAttribs")) {
+                SMItemAttribs.addAttrib(book, "destroy-on-drop", 1);
+            }
+
+            if (SMCommon.givePlayerItem(player, book)) {
+                String title = getBookTitle(book);
+                SMMessenger.infoLocale(player, "BOOK_GIVEN_WITH_TITLE", "title", title);
             }
         } else {
-            SMMessenger.errorLocale(player, "BOOK_NOT_FOUND");
+            player.openBook(book);
         }
     }
 
@@ -400,21 +789,7 @@ public class SMBooks extends SMFeature {
      * @return
      */
     public Boolean bookExists(String name) {
-        try {
-            PreparedStatement statement = SMDatabase.prepareStatement(
-                "SELECT * FROM books WHERE name = ? LIMIT 1");
-            statement.setString(1, name);
-
-            ResultSet resultSet = statement.executeQuery();
-
-            if (resultSet.next()) {
-                return true;
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        return false;
+        return this.cacheList.contains(name);
     }
 
     /**
@@ -434,4 +809,21 @@ public class SMBooks extends SMFeature {
 
         return SMLocale.get("BOOK_NO_TITLE");
     }
+
+    /**
+     * A book as stored in the database.
+     */
+    private static class BookRow {
+        final String name;
+        final String author;
+        final String title;
+        final List<String> pages;
+
+        BookRow(String name, String author, String title, List<String> pages) {
+            this.name = name;
+            this.author = author;
+            this.title = title;
+            this.pages = pages;
+        }
+    }
 }
@@ -188,6 +188,9 @@ public class SMChat extends SMFeature {
             }
         }
 
+        // Load player mute states in one query so chat events do not hit the database
+        SMPersistent.preload(this);
+
         SMBridge.registerParserProvider("smchat", (id, string, player) -> {
             return updateBindings(string);
         });
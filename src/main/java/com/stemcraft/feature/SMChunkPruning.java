@@ -1,12 +1,16 @@
 package com.stemcraft.feature;
 
 import org.bukkit.Chunk;
+import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.block.Block;
+import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.server.ServerCommandEvent;
 import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.WorldEdit;
 import com.sk89q.worldedit.bukkit.BukkitAdapter;
@@ -15,28 +19,90 @@ import com.sk89q.worldedit.regions.CuboidRegion;
 import com.sk89q.worldedit.world.RegenOptions;
 import com.sk89q.worldguard.WorldGuard;
 import com.sk89q.worldguard.protection.managers.RegionManager;
-import com.sk89q.worldguard.protection.regions.ProtectedCuboidRegion;
 import com.sk89q.worldguard.protection.regions.ProtectedRegion;
 import com.sk89q.worldguard.protection.regions.RegionContainer;
+import com.sk89q.worldguard.protection.regions.RegionType;
 import com.stemcraft.STEMCraft;
 import com.stemcraft.core.SMDatabase;
 import com.stemcraft.core.SMFeature;
+import com.stemcraft.core.SMMessenger;
 import com.stemcraft.core.SMTask;
+import com.stemcraft.core.command.SMCommand;
 import com.stemcraft.core.config.SMConfig;
 import com.stemcraft.core.event.SMEvent;
+import com.stemcraft.core.util.SMLongLongHashMap;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class SMChunkPruning extends SMFeature {
     private SMTask pruneTask = null;
-    private Map<Chunk, Long> chunkCache = new HashMap<>();
+    private SMTask flushTask = null;
+
+    /**
+     * Chunk visits not yet written to the database, by world name. Each map is keyed by the packed chunk coordinates
+     * and holds the visit time in milliseconds.
+     */
+    private Map<String, SMLongLongHashMap> chunkVisits = new HashMap<>();
 
     private static final int CHECK_INTERVAL_MINS = 5;
+    private static final int FLUSH_INTERVAL_TICKS = 20 * 60;
+    private static final int PRUNE_BATCH_SIZE = 100;
+
+    /**
+     * Regions covering more chunks than this are checked by their bounds instead of being added to the chunk set.
+     */
+    private static final int LARGE_REGION_CHUNKS = 4096;
+
+    /**
+     * Indexes of the chunks covered by WorldGuard regions, by world name.
+     */
+    private final Map<String, ProtectedChunkIndex> protectedChunks = new HashMap<>();
+
+    /**
+     * Chunks loaded from the database waiting to be regenerated, and the last one loaded.
+     */
+    private final Deque<ChunkJob> regenQueue = new ArrayDeque<>();
+    private ChunkJob regenCursor = null;
+    private boolean regenLoading = false;
+    private long regenIdleUntil = 0;
+
+    /**
+     * Chunk visits flushed while a batch is loading, by world name. The batch may have been read before they were
+     * written, so its jobs for these chunks are dropped when it arrives.
+     */
+    private Map<String, SMLongLongHashMap> regenLoadingVisits = null;
+
+    /**
+     * Regenerated chunks waiting to be removed from the database.
+     */
+    private final List<ChunkJob> regenCompleted = new ArrayList<>();
+
+    private int regenBudgetMs = 5;
+    private int regenInterval = 20;
+    private int regenPlayerDistance = 8;
+    private boolean regenWhileOnline = false;
+
+    /**
+     * Regeneration runs left to skip to pay back the time an earlier run spent over the budget.
+     */
+    private long regenSkipRuns = 0;
+
+    /**
+     * Regeneration metrics since the feature was enabled.
+     */
+    private long regenStarted = 0;
+    private long regenCount = 0;
+    private long regenSkipped = 0;
+    private long regenFailed = 0;
+    private long regenNanos = 0;
 
     @Override
     protected Boolean onEnable() {
@@ -45,6 +111,11 @@ public class SMChunkPruning extends SMFeature {
             pruneTask = null;
         }
 
+        if(flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+
         SMDatabase.runMigration("230805165900_CreateChunkPruneTable", () -> {
             SMDatabase.prepareStatement(
             "CREATE TABLE IF NOT EXISTS chunk_prune (" +
@@ -52,7 +123,70 @@ public class SMChunkPruning extends SMFeature {
                 "last_visited INTEGER NOT NULL)").executeUpdate();
         });
 
-        // this.pruneChunks();
+        SMDatabase.runMigration("240116130000_ChunkPruneCoordinates", () -> {
+            SMDatabase.prepareStatement(
+            "CREATE TABLE IF NOT EXISTS chunk_prune_coords (" +
+                "world TEXT NOT NULL," +
+                "x INTEGER NOT NULL," +
+                "z INTEGER NOT NULL," +
+                "last_visited INTEGER NOT NULL," +
+                "PRIMARY KEY (world, x, z)) WITHOUT ROWID").executeUpdate();
+
+            // Split the old "x;z;world" keys into columns
+            SMDatabase.prepareStatement(
+            "INSERT OR REPLACE INTO chunk_prune_coords (world, x, z, last_visited) " +
+                "SELECT substr(rest, instr(rest, ';') + 1), CAST(x AS INTEGER), " +
+                "CAST(substr(rest, 1, instr(rest, ';') - 1) AS INTEGER), last_visited FROM (" +
+                "SELECT substr(chunk, 1, instr(chunk, ';') - 1) AS x, substr(chunk, instr(chunk, ';') + 1) AS rest, " +
+                "last_visited FROM chunk_prune WHERE chunk LIKE '%;%;%')").executeUpdate();
+
+            SMDatabase.prepareStatement("DROP TABLE chunk_prune").executeUpdate();
+            SMDatabase.prepareStatement("ALTER TABLE chunk_prune_coords RENAME TO chunk_prune").executeUpdate();
+            SMDatabase.prepareStatement(
+            "CREATE INDEX IF NOT EXISTS idx_chunk_prune_last_visited ON chunk_prune (last_visited)").executeUpdate();
+        });
+
+        SMDatabase.runMigration("240116140000_ChunkPruneQueueIndex", () -> {
+            SMDatabase.prepareStatement("DROP INDEX IF EXISTS idx_chunk_prune_last_visited").executeUpdate();
+            SMDatabase.prepareStatement(
+            "CREATE INDEX IF NOT EXISTS idx_chunk_prune_queue ON chunk_prune (last_visited, world, x, z)")
+                .executeUpdate();
+        });
+
+        regenBudgetMs = SMConfig.main().getInt("chunk-regenerate-budget-ms", 5);
+        regenInterval = Math.max(SMConfig.main().getInt("chunk-regenerate-interval", 20), 1);
+        regenPlayerDistance = SMConfig.main().getInt("chunk-regenerate-player-distance", 8);
+        regenWhileOnline = SMConfig.main().getBoolean("chunk-regenerate-while-online", false);
+        regenSkipRuns = 0;
+        regenStarted = System.currentTimeMillis();
+
+        flushTask = STEMCraft.runTimer(FLUSH_INTERVAL_TICKS, FLUSH_INTERVAL_TICKS, this::flushVisits);
+        pruneTask = STEMCraft.runTimer(20 * 60 * CHECK_INTERVAL_MINS, regenInterval, this::regenerateChunks);
+
+        new SMCommand("chunkprune")
+            .permission("stemcraft.command.chunkprune")
+            .tabComplete("status")
+            .action(ctx -> {
+                if(ctx.args.size() == 0 || !"status".equalsIgnoreCase(ctx.args.get(0))) {
+                    ctx.returnInvalidArgs();
+                }
+
+                sendStatus(ctx.sender);
+            })
+            .register();
+
+        // Region changes made by command do not always change the region count, so rebuild after any region command
+        SMEvent.register(PlayerCommandPreprocessEvent.class, ctx -> {
+            if(isRegionCommand(ctx.event.getMessage())) {
+                STEMCraft.runLater(1, this.protectedChunks::clear);
+            }
+        });
+
+        SMEvent.register(ServerCommandEvent.class, ctx -> {
+            if(isRegionCommand(ctx.event.getCommand())) {
+                STEMCraft.runLater(1, this.protectedChunks::clear);
+            }
+        });
 
         SMEvent.register(BlockBreakEvent.class, ctx -> {
             Player player = ctx.event.getPlayer();
@@ -84,127 +218,367 @@ public class SMChunkPruning extends SMFeature {
             pruneTask.cancel();
             pruneTask = null;
         }
+
+        if(flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+
+        flushVisits();
+        flushRegenerated();
+        regenQueue.clear();
+        regenCursor = null;
+        regenLoading = false;
+        regenLoadingVisits = null;
     }
 
+    /**
+     * Return if a chunk overlaps a WorldGuard region.
+     */
     public boolean isRegionInChunk(Chunk chunk)
+    {
+        return isRegionInChunk(chunk.getWorld(), chunk.getX(), chunk.getZ());
+    }
+
+    /**
+     * Return if a chunk overlaps a WorldGuard region. Answered from a per world index of protected chunks, which is
+     * rebuilt when the number of regions in the world changes or a region command is used.
+     */
+    public boolean isRegionInChunk(World world, int chunkX, int chunkZ)
     {
         RegionContainer container = WorldGuard.getInstance().getPlatform().getRegionContainer();
-        RegionManager regions = container.get(BukkitAdapter.adapt(chunk.getWorld()));
-        
-        final double maxX = chunk.getX() * 16d;
-        final double minX = maxX + 15d;
-        
-        final double maxZ = chunk.getZ() * 16d;
-        final double minZ = maxZ + 15d;
-        
-        final BlockVector3 max = BlockVector3.at(maxX, 256, maxZ);
-        final BlockVector3 min = BlockVector3.at(minX, 0, minZ);
-        
-        ProtectedRegion chunkRegion = new ProtectedCuboidRegion("chunkRegion", min, max);
-        if(regions != null) {
-            return chunkRegion.getIntersectingRegions(regions.getRegions().values()).isEmpty();
+        RegionManager regions = container.get(BukkitAdapter.adapt(world));
+
+        if(regions == null) {
+            return false;
         }
 
-        return true;
+        ProtectedChunkIndex index = this.protectedChunks.get(world.getName());
+        if(index == null || index.regionCount != regions.size()) {
+            index = new ProtectedChunkIndex(regions);
+            this.protectedChunks.put(world.getName(), index);
+        }
+
+        return index.contains(chunkX, chunkZ);
+    }
+
+    /**
+     * Return if a command may change WorldGuard regions.
+     */
+    private static boolean isRegionCommand(String command) {
+        String name = command.split(" ", 2)[0].toLowerCase();
+        if(name.startsWith("/")) {
+            name = name.substring(1);
+        }
+
+        int namespace = name.indexOf(':');
+        if(namespace != -1) {
+            name = name.substring(namespace + 1);
+        }
+
+        return name.equals("rg") || name.equals("region") || name.equals("regions");
     }
 
     private void queueChunk(Chunk chunk) {
-        if(!this.chunkCache.containsKey(chunk)) {
-            if(!isRegionInChunk(chunk)) {
-                this.chunkCache.put(chunk, System.currentTimeMillis());
+        String worldName = chunk.getWorld().getName();
+        long key = SMLongLongHashMap.pack(chunk.getX(), chunk.getZ());
+        SMLongLongHashMap visits = this.chunkVisits.get(worldName);
+
+        if(visits != null && visits.containsKey(key)) {
+            visits.put(key, System.currentTimeMillis());
+            return;
+        }
+
+        // Chunks inside a protected region are never pruned, so their visits are not recorded
+        if(!isRegionInChunk(chunk)) {
+            this.chunkVisits.computeIfAbsent(worldName, name -> new SMLongLongHashMap())
+                .put(key, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Write the queued chunk visits to the database in a single transaction.
+     */
+    private void flushVisits() {
+        if(this.chunkVisits.isEmpty()) {
+            return;
+        }
+
+        Map<String, SMLongLongHashMap> visits = this.chunkVisits;
+        this.chunkVisits = new HashMap<>();
+        dropVisitedJobs(visits);
+
+        SMDatabase.executeAsync(connection -> SMDatabase.transaction(connection, transaction -> {
+            PreparedStatement statement = SMDatabase.prepareCached(transaction,
+                "INSERT INTO chunk_prune (world, x, z, last_visited) VALUES (?, ?, ?, ?) " +
+                    "ON CONFLICT (world, x, z) DO UPDATE SET last_visited = MAX(last_visited, excluded.last_visited)");
+            SQLException[] error = new SQLException[1];
+
+            visits.forEach((world, chunks) -> chunks.forEach((key, millis) -> {
+                if(error[0] != null) {
+                    return;
+                }
+
+                try {
+                    statement.setString(1, world);
+                    statement.setInt(2, SMLongLongHashMap.unpackHigh(key));
+                    statement.setInt(3, SMLongLongHashMap.unpackLow(key));
+                    statement.setLong(4, millis);
+                    statement.addBatch();
+                } catch(SQLException e) {
+                    error[0] = e;
+                }
+            }));
+
+            if(error[0] != null) {
+                throw error[0];
             }
+
+            statement.executeBatch();
+        }));
+    }
+
+    /**
+     * Drop the queued jobs for chunks that have been visited, as they are no longer due. The queued jobs hold the
+     * visit time from when their batch was loaded, and once a visit is flushed it is no longer found as queued.
+     */
+    private void dropVisitedJobs(Map<String, SMLongLongHashMap> visits) {
+        int queued = this.regenQueue.size();
+        this.regenQueue.removeIf(job -> isVisited(visits, job));
+        this.regenSkipped += queued - this.regenQueue.size();
+
+        if(this.regenLoadingVisits != null) {
+            visits.forEach((world, chunks) -> {
+                SMLongLongHashMap loadingChunks = this.regenLoadingVisits.computeIfAbsent(world,
+                    name -> new SMLongLongHashMap());
+                chunks.forEach(loadingChunks::put);
+            });
         }
     }
 
-    private void pruneChunks() {
-        // Save cache to DB
-        Map<Chunk, Long> cache = new HashMap<>(this.chunkCache);
-        this.chunkCache.clear();
+    /**
+     * Return if a set of visits includes the chunk of a job.
+     */
+    private static boolean isVisited(Map<String, SMLongLongHashMap> visits, ChunkJob job) {
+        SMLongLongHashMap chunks = visits.get(job.world);
+        return chunks != null && chunks.containsKey(SMLongLongHashMap.pack(job.x, job.z));
+    }
+
+    /**
+     * Return if a chunk has a visit that has not yet been written to the database.
+     */
+    private boolean hasQueuedVisit(String worldName, int chunkX, int chunkZ) {
+        SMLongLongHashMap visits = this.chunkVisits.get(worldName);
+        return visits != null && visits.containsKey(SMLongLongHashMap.pack(chunkX, chunkZ));
+    }
+
+    /**
+     * Regenerate queued chunks until the run budget is used. Chunks are taken from the chunk_prune table oldest
+     * visit first, a batch at a time. A chunk is only removed from the table once it has been regenerated, so the
+     * queue resumes where it left off after a restart.
+     *
+     * The budget is a soft limit averaged over runs. It is only checked between chunks, and a single regeneration
+     * loads the chunk and has WorldEdit build a temporary world, which takes far longer than a few milliseconds. A run
+     * that goes over the budget pushes the following runs back by the number of budgets it used, so the average time
+     * spent per run stays within the budget.
+     */
+    private void regenerateChunks() {
+        if(this.regenSkipRuns > 0) {
+            this.regenSkipRuns--;
+            return;
+        }
+
+        if(!this.regenWhileOnline && STEMCraft.getPlugin().getServer().getOnlinePlayers().size() > 0) {
+            return;
+        }
 
-        cache.forEach((chunk, millis) -> {
-            try {
-                String id = chunk.getX() + ";" + chunk.getZ() + ";" + chunk.getWorld().getName();
+        if(this.regenQueue.isEmpty()) {
+            loadRegenQueue();
+            return;
+        }
 
-                PreparedStatement statement = SMDatabase.prepareStatement(
-                        "INSERT OR REPLACE INTO chunk_prune (chunk, last_visited) VALUES (?, ?)"
-                );
-                statement.setString(1, id);
-                statement.setLong(2, millis);
-                statement.executeUpdate();
-                statement.close();
-            } catch(Exception e) {
-                e.printStackTrace();
+        long start = System.nanoTime();
+        long budget = this.regenBudgetMs * 1000000L;
+
+        while(!this.regenQueue.isEmpty() && System.nanoTime() - start < budget) {
+            regenerateJob(this.regenQueue.pollFirst());
+        }
+
+        if(budget > 0) {
+            this.regenSkipRuns = (System.nanoTime() - start) / budget;
+        }
+
+        flushRegenerated();
+    }
+
+    /**
+     * Regenerate a queued chunk if it is still due.
+     */
+    private void regenerateJob(ChunkJob job) {
+        World world = STEMCraft.getPlugin().getServer().getWorld(job.world);
+        if(world == null || world.isChunkLoaded(job.x, job.z) || hasQueuedVisit(job.world, job.x, job.z)
+            || isNearPlayer(world, job.x, job.z)) {
+            this.regenSkipped++;
+            return;
+        }
+
+        // Chunks that were never generated or are now protected only need removing from the queue
+        if(!world.isChunkGenerated(job.x, job.z) || isRegionInChunk(world, job.x, job.z)) {
+            this.regenCompleted.add(job);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            this.regenerateChunk(world.getChunkAt(job.x, job.z));
+            this.regenCompleted.add(job);
+            this.regenCount++;
+        } catch(Exception e) {
+            e.printStackTrace();
+            this.regenFailed++;
+        }
+
+        this.regenNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Return if a chunk is within the configured distance of a player.
+     */
+    private boolean isNearPlayer(World world, int chunkX, int chunkZ) {
+        for(Player player : world.getPlayers()) {
+            Location location = player.getLocation();
+
+            if(Math.abs((location.getBlockX() >> 4) - chunkX) <= this.regenPlayerDistance
+                && Math.abs((location.getBlockZ() >> 4) - chunkZ) <= this.regenPlayerDistance) {
+                return true;
             }
-        });
-        
-        Boolean regeneratedChunk = false;
-
-        // Destroy chunks if no players online
-        if(STEMCraft.getPlugin().getServer().getOnlinePlayers().size() == 0) {
-            List<String> chunksToPrune = new ArrayList<>();
-            long aged = System.currentTimeMillis() - (86400000 * SMConfig.main().getInt("regenerate-chunk-delay"));
-
-            try {
-                PreparedStatement statement = SMDatabase.prepareStatement(
-                    "SELECT chunk FROM chunk_prune WHERE last_visited < ?;"
-                );
-                statement.setLong(1, aged);
-
-                ResultSet resultSet = statement.executeQuery();
-                while(resultSet.next()) {
-                    chunksToPrune.add(resultSet.getString("chunk"));
+        }
+
+        return false;
+    }
+
+    /**
+     * Load the next batch of chunks due for regeneration, continuing from the last chunk loaded. Once the end of the
+     * table is reached the queue waits for the check interval before starting again from the oldest visit.
+     */
+    private void loadRegenQueue() {
+        if(this.regenLoading || System.currentTimeMillis() < this.regenIdleUntil) {
+            return;
+        }
+
+        // Regions may have been changed through the API, so check against fresh indexes for each batch
+        this.protectedChunks.clear();
+        this.regenLoading = true;
+        this.regenLoadingVisits = new HashMap<>();
+
+        long aged = getRegenerateBefore();
+        ChunkJob cursor = this.regenCursor != null ? this.regenCursor : new ChunkJob("", 0, 0, -1);
+
+        // Read on the writer so that the batch includes every visit flushed before it was requested
+        CompletableFuture<List<ChunkJob>> future = SMDatabase.updateAsync(connection -> {
+            List<ChunkJob> jobs = new ArrayList<>();
+            PreparedStatement statement = SMDatabase.prepareCached(connection,
+                "SELECT world, x, z, last_visited FROM chunk_prune WHERE last_visited < ? " +
+                    "AND (last_visited, world, x, z) > (?, ?, ?, ?) ORDER BY last_visited, world, x, z LIMIT ?");
+            statement.setLong(1, aged);
+            statement.setLong(2, cursor.lastVisited);
+            statement.setString(3, cursor.world);
+            statement.setInt(4, cursor.x);
+            statement.setInt(5, cursor.z);
+            statement.setInt(6, PRUNE_BATCH_SIZE);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    jobs.add(new ChunkJob(resultSet.getString("world"), resultSet.getInt("x"), resultSet.getInt("z"),
+                        resultSet.getLong("last_visited")));
                 }
+            }
+
+            return jobs;
+        });
+
+        SMDatabase.sync(future.exceptionally(e -> new ArrayList<>()), jobs -> {
+            Map<String, SMLongLongHashMap> loadingVisits = this.regenLoadingVisits;
+            this.regenLoading = false;
+            this.regenLoadingVisits = null;
 
-                resultSet.close();
-                statement.close();
-            } catch(Exception e) {
-                e.printStackTrace();
+            if(jobs.isEmpty()) {
+                this.regenCursor = null;
+                this.regenIdleUntil = System.currentTimeMillis() + CHECK_INTERVAL_MINS * 60000L;
+                return;
             }
 
-            while(STEMCraft.getPlugin().getServer().getOnlinePlayers().size() == 0 && !chunksToPrune.isEmpty()) {
-                String chunkStr = chunksToPrune.get(0);
-                chunksToPrune.remove(0);
-
-                String[] chunkData = chunkStr.split(";", 3);
-                if(chunkData.length == 3) {
-                    World world = STEMCraft.getPlugin().getServer().getWorld(chunkData[2]);
-                    if(world != null) {
-                        int chunkX = Integer.parseInt(chunkData[0]);
-                        int chunkZ = Integer.parseInt(chunkData[1]);
-                        if(world.isChunkLoaded(chunkX, chunkZ)) {
-                            continue;
-                        }
-
-                        try {
-                            PreparedStatement statement = SMDatabase.prepareStatement(
-                                "DELETE FROM chunk_prune WHERE chunk = ?");
-                            statement.setString(1, chunkStr);
-                            statement.executeUpdate();
-
-                            statement.close();
-                        } catch (SQLException e) {
-                            e.printStackTrace();
-                        }
-
-                        if(world.isChunkGenerated(chunkX, chunkZ)) {
-                            Chunk chunk = world.getChunkAt(chunkX, chunkZ);
-
-                            if(chunk != null) {
-                                this.regenerateChunk(chunk);
-                                regeneratedChunk = true;
-                                break;
-                            }
-                        }
-                    }
+            this.regenCursor = jobs.get(jobs.size() - 1);
+            for(ChunkJob job : jobs) {
+                if(loadingVisits != null && isVisited(loadingVisits, job)) {
+                    this.regenSkipped++;
+                } else {
+                    this.regenQueue.add(job);
                 }
             }
+        });
+    }
+
+    /**
+     * Remove regenerated chunks from the chunk_prune table in a single transaction. A chunk visited again since it
+     * was queued keeps its row.
+     */
+    private void flushRegenerated() {
+        if(this.regenCompleted.isEmpty()) {
+            return;
         }
-        
-        int reschedule = (regeneratedChunk ? 5 : 60 * CHECK_INTERVAL_MINS);
 
-        pruneTask = STEMCraft.runLater(reschedule, () -> {
-            pruneChunks();
+        List<ChunkJob> completed = new ArrayList<>(this.regenCompleted);
+        this.regenCompleted.clear();
+
+        SMDatabase.executeAsync(connection -> SMDatabase.transaction(connection, transaction -> {
+            PreparedStatement statement = SMDatabase.prepareCached(transaction,
+                "DELETE FROM chunk_prune WHERE world = ? AND x = ? AND z = ? AND last_visited <= ?");
+            for(ChunkJob job : completed) {
+                statement.setString(1, job.world);
+                statement.setInt(2, job.x);
+                statement.setInt(3, job.z);
+                statement.setLong(4, job.lastVisited);
+                statement.addBatch();
+            }
+
+            statement.executeBatch();
+        }));
+    }
+
+    /**
+     * Return the visit time before which chunks are due for regeneration.
+     */
+    private static long getRegenerateBefore() {
+        return System.currentTimeMillis() - (86400000L * SMConfig.main().getInt("chunk-regenerate-delay", 56));
+    }
+
+    /**
+     * Send the regeneration progress to a command sender.
+     */
+    private void sendStatus(CommandSender sender) {
+        long elapsedMillis = Math.max(System.currentTimeMillis() - this.regenStarted, 1);
+        double averageMillis = this.regenCount > 0 ? this.regenNanos / 1000000d / this.regenCount : 0;
+        long perHour = this.regenCount * 3600000L / elapsedMillis;
+
+        SMMessenger.info(sender, "Chunk regeneration: " + this.regenCount + " regenerated, " + this.regenSkipped
+            + " skipped, " + this.regenFailed + " failed, " + String.format("%.1f", averageMillis) + "ms average, "
+            + perHour + " per hour");
+
+        long aged = getRegenerateBefore();
+        CompletableFuture<Integer> pending = SMDatabase.queryAsync(connection -> {
+            PreparedStatement statement = SMDatabase.prepareCached(connection,
+                "SELECT COUNT(*) FROM chunk_prune WHERE last_visited < ?");
+            statement.setLong(1, aged);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : 0;
+            }
         });
+
+        int queued = this.regenQueue.size();
+        SMDatabase.sync(pending, count -> SMMessenger.info(sender, "Chunk regeneration queue: " + count
+            + " chunks due, " + queued + " loaded" + (this.regenLoading ? ", loading" : "")));
     }
 
     private void regenerateChunk(Chunk chunk) {
@@ -231,4 +605,71 @@ public class SMChunkPruning extends SMFeature {
 
         STEMCraft.info("Chunk at X:" + chunkX + ", Z:" + chunkZ + " in world " + world.getName() + " has been regenerated.");
     }
-}
\ No newline at end of file
+
+    /**
+     * A chunk due for regeneration, as loaded from the chunk_prune table.
+     */
+    private static class ChunkJob {
+        final String world;
+        final int x;
+        final int z;
+        final long lastVisited;
+
+        ChunkJob(String world, int x, int z, long lastVisited) {
+            this.world = world;
+            this.x = x;
+            this.z = z;
+            this.lastVisited = lastVisited;
+        }
+    }
+
+    /**
+     * The chunks covered by the regions of a world. Regions are indexed by their bounding box, so chunks near the
+     * edge of a polygon region are treated as protected.
+     */
+    private static class ProtectedChunkIndex {
+        final int regionCount;
+        final SMLongLongHashMap chunks = new SMLongLongHashMap();
+        final List<int[]> largeRegions = new ArrayList<>();
+
+        ProtectedChunkIndex(RegionManager regions) {
+            this.regionCount = regions.size();
+
+            for(ProtectedRegion region : regions.getRegions().values()) {
+                if(region.getType() == RegionType.GLOBAL) {
+                    continue;
+                }
+
+                int minX = region.getMinimumPoint().getBlockX() >> 4;
+                int minZ = region.getMinimumPoint().getBlockZ() >> 4;
+                int maxX = region.getMaximumPoint().getBlockX() >> 4;
+                int maxZ = region.getMaximumPoint().getBlockZ() >> 4;
+
+                if((long) (maxX - minX + 1) * (maxZ - minZ + 1) > LARGE_REGION_CHUNKS) {
+                    largeRegions.add(new int[] {minX, minZ, maxX, maxZ});
+                    continue;
+                }
+
+                for(int x = minX; x <= maxX; x++) {
+                    for(int z = minZ; z <= maxZ; z++) {
+                        chunks.put(SMLongLongHashMap.pack(x, z), 1);
+                    }
+                }
+            }
+        }
+
+        boolean contains(int chunkX, int chunkZ) {
+            if(chunks.containsKey(SMLongLongHashMap.pack(chunkX, chunkZ))) {
+                return true;
+            }
+
+            for(int[] bounds : largeRegions) {
+                if(chunkX >= bounds[0] && chunkZ >= bounds[1] && chunkX <= bounds[2] && chunkZ <= bounds[3]) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
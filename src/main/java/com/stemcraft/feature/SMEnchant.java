@@ -18,6 +18,10 @@ import com.stemcraft.core.tabcomplete.SMTabComplete;
  */
 public class SMEnchant extends SMFeature {
 
+    public SMEnchant() {
+        lazyCommands.add("enchant");
+    }
+
     /**
      * Called when the feature is requested to be enabled.
      * 
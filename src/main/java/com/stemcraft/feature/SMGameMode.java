@@ -1,5 +1,6 @@
 package com.stemcraft.feature;
 
+import java.util.Arrays;
 import org.bukkit.GameMode;
 import org.bukkit.entity.Player;
 import com.stemcraft.core.SMCommon;
@@ -8,6 +9,10 @@ import com.stemcraft.core.SMMessenger;
 import com.stemcraft.core.command.SMCommand;
 
 public class SMGameMode extends SMFeature {
+    public SMGameMode() {
+        lazyCommands.addAll(Arrays.asList("gm", "gma", "gmc", "gms", "gmsp"));
+    }
+
     @Override
     protected Boolean onEnable() {
         new SMCommand("gm")
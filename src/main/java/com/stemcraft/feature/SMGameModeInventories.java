@@ -1,26 +1,117 @@
 package com.stemcraft.feature;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import org.bukkit.GameMode;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.bukkit.Location;
 import org.bukkit.entity.Player;
+import org.bukkit.event.entity.EntityPickupItemEvent;
 import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.player.PlayerDropItemEvent;
 import org.bukkit.event.player.PlayerGameModeChangeEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.player.PlayerTeleportEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.PlayerInventory;
+import com.stemcraft.STEMCraft;
 import com.stemcraft.core.SMDatabase;
 import com.stemcraft.core.SMFeature;
 import com.stemcraft.core.SMJson;
 import com.stemcraft.core.SMMessenger;
 import com.stemcraft.core.config.SMConfig;
 import com.stemcraft.core.event.SMEvent;
+import com.stemcraft.core.event.SMPlayerPrepareTeleportEvent;
+import com.stemcraft.core.util.SMItemCodec;
 import com.stemcraft.core.util.SMXPCalculator;
 import de.tr7zw.nbtapi.NBT;
 import de.tr7zw.nbtapi.iface.ReadWriteNBT;
 
 public class SMGameModeInventories extends SMFeature {
+    /**
+     * How long a prefetched inventory is kept waiting for its teleport.
+     */
+    private static final long PREFETCH_EXPIRY_MS = 5000;
+
+    /**
+     * How long a player quitting waits for their swaps in progress to be applied.
+     */
+    private static final long QUIT_SWAP_TIMEOUT_MS = 5000;
+
+    /**
+     * The number of rows converted at a time by the binary format migration.
+     */
+    private static final int MIGRATION_BATCH_SIZE = 500;
+
+    /**
+     * The item columns stored in the blob table.
+     */
+    private static final String[] BLOB_COLUMNS = {"inventory", "armour", "enderchest"};
+
+    /**
+     * Load the latest inventory for a player, game mode, world and death flag. Rows not yet moved to the blob table
+     * by the background migration are read from their own columns.
+     */
+    private static final String LOAD_QUERY =
+        "SELECT g.xp, g.food, g.health, g.saturation, COALESCE(i.data, g.inventory) AS inventory, " +
+            "COALESCE(a.data, g.armour) AS armour, COALESCE(e.data, g.enderchest) AS enderchest " +
+            "FROM gamemode_inventories g " +
+            "LEFT JOIN gamemode_inventory_blobs i ON i.hash = g.inventory_hash " +
+            "LEFT JOIN gamemode_inventory_blobs a ON a.hash = g.armour_hash " +
+            "LEFT JOIN gamemode_inventory_blobs e ON e.hash = g.enderchest_hash " +
+            "WHERE g.uuid = ? AND g.gamemode = ? AND g.world = ? AND g.death = ? ORDER BY g.id DESC LIMIT 1";
+
+    /**
+     * Find the id of the oldest inventory to keep for a player, game mode and world.
+     */
+    private static final String RETENTION_CUTOFF_QUERY =
+        "SELECT id FROM gamemode_inventories WHERE uuid = ? AND gamemode = ? AND world = ? " +
+            "ORDER BY id DESC LIMIT 1 OFFSET ?";
+
+    /**
+     * Select the blobs used by the inventories older than the retention cutoff.
+     */
+    private static final String RETENTION_SELECT_QUERY =
+        "SELECT inventory_hash, armour_hash, enderchest_hash FROM gamemode_inventories " +
+            "WHERE uuid = ? AND gamemode = ? AND world = ? AND id < ?";
+
+    /**
+     * Inventories loaded ahead of a teleport, by player. Only used on the main thread.
+     */
+    private final Map<UUID, Prefetch> prefetches = new HashMap<>();
+
+    /**
+     * Swaps waiting for the swap in progress to be applied, by player. A player has an entry while a swap is in
+     * progress. Only used on the main thread.
+     */
+    private final Map<UUID, Deque<Runnable>> swapQueues = new HashMap<>();
+
+    /**
+     * The swap in progress waiting for its inventory to load, by player. Only used on the main thread.
+     */
+    private final Map<UUID, Swap> activeSwaps = new HashMap<>();
+
+    /**
+     * The game mode and inventory world to load when a player who quit before their swap was applied joins again, by
+     * player. Only used on the main thread.
+     */
+    private final Map<UUID, String[]> pendingLoads = new HashMap<>();
+
     @Override
     protected Boolean onEnable() {
         SMDatabase.runMigration("230805142700_CreateGameModeInventoriesTable", () -> {
@@ -127,19 +218,111 @@ public class SMGameModeInventories extends SMFeature {
                 "UPDATE gamemode_inventories SET health = 20, saturation = 0 WHERE 1").executeUpdate();
         });
 
+        long[] lastConvertedId = {0};
+        CompletableFuture<Void> binaryMigration = SMDatabase.runBatchedMigration(
+            "240116100000_ConvertInventoriesToBinary", connection -> {
+                PreparedStatement selectStatement = SMDatabase.prepareCached(connection,
+                    "SELECT id, inventory, armour, enderchest FROM gamemode_inventories " +
+                        "WHERE id > ? AND inventory != '' ORDER BY id LIMIT ?");
+                PreparedStatement updateStatement = SMDatabase.prepareCached(connection,
+                    "UPDATE gamemode_inventories SET inventory = ?, armour = ?, enderchest = ? WHERE id = ?");
+                int batchSize = 0;
+
+                // Convert in batches by id so that only one batch of rows is held in memory
+                selectStatement.setLong(1, lastConvertedId[0]);
+                selectStatement.setInt(2, MIGRATION_BATCH_SIZE);
+                try (ResultSet resultSet = selectStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        long id = resultSet.getLong("id");
+                        lastConvertedId[0] = id;
+                        batchSize++;
+
+                        byte[] inventory = resultSet.getBytes("inventory");
+                        if (SMItemCodec.isEncoded(inventory)) {
+                            continue;
+                        }
+
+                        try {
+                            updateStatement.setBytes(1, convertItems(inventory));
+                            updateStatement.setBytes(2, convertItems(resultSet.getBytes("armour")));
+                            updateStatement.setBytes(3, convertItems(resultSet.getBytes("enderchest")));
+                            updateStatement.setLong(4, id);
+                            updateStatement.addBatch();
+                        } catch (Exception e) {
+                            STEMCraft.warning("Could not convert gamemode inventory " + id + ": " + e.getMessage());
+                        }
+                    }
+                }
+
+                updateStatement.executeBatch();
+                return batchSize == MIGRATION_BATCH_SIZE;
+            });
+
+        SMDatabase.runMigration("240116110000_AddGameModeInventoryBlobs", () -> {
+            SMDatabase.prepareStatement(
+                "CREATE TABLE IF NOT EXISTS gamemode_inventory_blobs (" +
+                    "hash BLOB PRIMARY KEY," +
+                    "data BLOB NOT NULL," +
+                    "refs INTEGER NOT NULL DEFAULT 0) WITHOUT ROWID")
+                .executeUpdate();
+
+            for (String column : BLOB_COLUMNS) {
+                SMDatabase.prepareStatement(
+                    "ALTER TABLE gamemode_inventories ADD COLUMN " + column + "_hash BLOB")
+                    .executeUpdate();
+            }
+        });
+
+        // Items are moved to the blob table once they are in the binary format
+        binaryMigration.thenRun(() -> SMDatabase.runBatchedMigration(
+            "240116110100_MoveGameModeInventoriesToBlobs", connection -> {
+                PreparedStatement selectStatement = SMDatabase.prepareCached(connection,
+                    "SELECT id, inventory, armour, enderchest FROM gamemode_inventories " +
+                        "WHERE inventory_hash IS NULL ORDER BY id LIMIT ?");
+                PreparedStatement updateStatement = SMDatabase.prepareCached(connection,
+                    "UPDATE gamemode_inventories SET inventory = '', armour = '', enderchest = '', " +
+                        "inventory_hash = ?, armour_hash = ?, enderchest_hash = ? WHERE id = ?");
+                List<Object[]> rows = new ArrayList<>();
+
+                selectStatement.setInt(1, MIGRATION_BATCH_SIZE);
+                try (ResultSet resultSet = selectStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        rows.add(new Object[] {resultSet.getLong("id"), resultSet.getBytes("inventory"),
+                            resultSet.getBytes("armour"), resultSet.getBytes("enderchest")});
+                    }
+                }
+
+                for (Object[] row : rows) {
+                    updateStatement.setBytes(1, storeBlob(connection, (byte[]) row[1]));
+                    updateStatement.setBytes(2, storeBlob(connection, (byte[]) row[2]));
+                    updateStatement.setBytes(3, storeBlob(connection, (byte[]) row[3]));
+                    updateStatement.setLong(4, (Long) row[0]);
+                    updateStatement.addBatch();
+                }
+
+                updateStatement.executeBatch();
+                return rows.size() == MIGRATION_BATCH_SIZE;
+            }));
+
+        SMDatabase.runMigration("240116120000_AddGameModeInventoriesIndex", () -> {
+            SMDatabase.prepareStatement(
+                "CREATE INDEX IF NOT EXISTS idx_gamemode_inventories_owner " +
+                    "ON gamemode_inventories (uuid, gamemode, world, id, death)")
+                .executeUpdate();
+        });
+
+        SMDatabase.checkQueryPlan(LOAD_QUERY);
+        SMDatabase.checkQueryPlan(RETENTION_CUTOFF_QUERY);
+        SMDatabase.checkQueryPlan(RETENTION_SELECT_QUERY);
+
         SMEvent.register(PlayerGameModeChangeEvent.class, ctx -> {
             Player player = ctx.event.getPlayer();
+            String world = player.getLocation().getWorld().getName();
+            String oldGameMode = player.getGameMode().toString();
             String newGameMode = ctx.event.getNewGameMode().toString();
 
-            if (!this.SaveInventory(player, false, "Gamemode changed to " + newGameMode)) {
-                SMMessenger.errorLocale(player, "GMI_FAILED");
-                return;
-            }
-
-            if (!this.LoadLastInventory(player, newGameMode, player.getLocation().getWorld().getName())) {
-                SMMessenger.errorLocale(player, "GMI_FAILED");
-                return;
-            }
+            this.SwapInventory(player, world, oldGameMode, world, newGameMode,
+                "Gamemode changed to " + newGameMode);
         });
 
         SMEvent.register(PlayerDeathEvent.class, ctx -> {
@@ -151,67 +334,291 @@ public class SMGameModeInventories extends SMFeature {
 
         SMEvent.register(PlayerTeleportEvent.class, ctx -> {
             Player player = ctx.event.getPlayer();
+            String fromWorld = ctx.event.getFrom().getWorld().getName();
+            String toWorld = ctx.event.getTo().getWorld().getName();
+
+            // Worlds sharing an inventory do not need a swap
+            if (getInventoryWorld(fromWorld).equals(getInventoryWorld(toWorld))) {
+                return;
+            }
+
+            String gameMode = player.getGameMode().toString();
+            this.SwapInventory(player, fromWorld, gameMode, toWorld, gameMode, "Player Teleport");
+        });
+
+        SMEvent.register(SMPlayerPrepareTeleportEvent.class, ctx -> {
+            this.PrefetchInventory(ctx.event.getPlayer(), ctx.event.getTo());
+        });
+
+        // Items cannot be moved while a swap is in progress, as the inventory is replaced once it has loaded
+        SMEvent.register(EntityPickupItemEvent.class, ctx -> {
+            if (activeSwaps.containsKey(ctx.event.getEntity().getUniqueId())) {
+                ctx.event.setCancelled(true);
+            }
+        });
+
+        SMEvent.register(PlayerDropItemEvent.class, ctx -> {
+            if (activeSwaps.containsKey(ctx.event.getPlayer().getUniqueId())) {
+                ctx.event.setCancelled(true);
+            }
+        });
+
+        SMEvent.register(InventoryClickEvent.class, ctx -> {
+            if (activeSwaps.containsKey(ctx.event.getWhoClicked().getUniqueId())) {
+                ctx.event.setCancelled(true);
+            }
+        });
+
+        SMEvent.register(PlayerQuitEvent.class, ctx -> {
+            Player player = ctx.event.getPlayer();
+
+            prefetches.remove(player.getUniqueId());
+
+            // The server saves the player once they have quit, so their swaps are applied first
+            completeSwaps(player);
+        });
+
+        SMEvent.register(PlayerJoinEvent.class, ctx -> {
+            Player player = ctx.event.getPlayer();
+            String[] pending = pendingLoads.remove(player.getUniqueId());
 
-            this.SaveInventory(player, ctx.event.getFrom().getWorld().getName(), false, "Player Teleport");
-            this.LoadLastInventory(player, player.getGameMode().toString(), ctx.event.getTo().getWorld().getName());
+            if (pending != null && pending[0].equals(player.getGameMode().toString())
+                && pending[1].equals(getInventoryWorld(player.getLocation().getWorld().getName()))) {
+                LoadLastInventory(player, pending[0], pending[1]);
+            }
         });
 
         return true;
     }
 
-    public Boolean LoadLastInventory(Player player) {
+    /**
+     * Start loading the inventory a player will need at a location before they are teleported there, so that the
+     * swap can be applied in the same tick as the teleport.
+     * 
+     * @param player The player about to be teleported.
+     * @param location The destination.
+     */
+    public void PrefetchInventory(Player player, Location location) {
+        if (location.getWorld() == null) {
+            return;
+        }
+
+        String inventoryWorld = getInventoryWorld(location.getWorld().getName());
+        if (inventoryWorld.equals(getInventoryWorld(player.getLocation().getWorld().getName()))) {
+            return;
+        }
+
+        String gameMode = player.getGameMode().toString();
+        Prefetch prefetch = prefetches.get(player.getUniqueId());
+        if (prefetch != null && prefetch.matches(gameMode, inventoryWorld)) {
+            return;
+        }
+
+        prefetches.put(player.getUniqueId(), new Prefetch(gameMode, inventoryWorld,
+            loadSnapshot(player.getUniqueId().toString(), gameMode, inventoryWorld, false)));
+    }
+
+    public CompletableFuture<Void> LoadLastInventory(Player player) {
         String gameMode = player.getGameMode().toString();
         String world = player.getLocation().getWorld().getName();
 
         return this.LoadLastInventory(player, gameMode, world, false);
     }
 
-    public Boolean LoadLastInventory(Player player, String gameMode, String world) {
+    public CompletableFuture<Void> LoadLastInventory(Player player, String gameMode, String world) {
         return this.LoadLastInventory(player, gameMode, world, false);
     }
 
-    public Boolean LoadLastInventory(Player player, String gameMode, String world, Boolean death) {
-        Boolean success = true;
-        Boolean foundInventory = false;
-        SMXPCalculator xpc = new SMXPCalculator(player);
-        int xp = 0;
-        String uuid = player.getUniqueId().toString();
-        String inventoryContents = "";
-        String armourContents = "";
-        String enderChestContents = "";
-        int food = 20;
-        double health = 20.0d;
-        float saturation = 0.0f;
+    /**
+     * Load the latest inventory saved for a player and apply it.
+     * 
+     * @param player The player.
+     * @param gameMode The game mode of the inventory.
+     * @param world The world of the inventory.
+     * @param death If the inventory saved on death is loaded.
+     * @return A future completed once the inventory has been applied.
+     */
+    public CompletableFuture<Void> LoadLastInventory(Player player, String gameMode, String world, Boolean death) {
+        CompletableFuture<InventorySnapshot> future = loadSnapshot(player.getUniqueId().toString(), gameMode,
+            getInventoryWorld(world), death);
 
-        world = getInventoryWorld(world);
+        future.exceptionally(e -> {
+            SMDatabase.runSync(() -> SMMessenger.errorLocale(player, "GMI_FAILED"));
+            return null;
+        });
 
-        // Load player state
-        try {
-            PreparedStatement statement = SMDatabase.prepareStatement(
-                "SELECT * FROM gamemode_inventories WHERE uuid = ? AND death = ? AND gamemode = ? AND world = ? ORDER BY created DESC");
-            statement.setString(1, uuid);
-            statement.setInt(2, 0);
-            statement.setString(3, gameMode);
-            statement.setString(4, world);
+        return SMDatabase.sync(future, snapshot -> {
+            if (player.isOnline()) {
+                applyInventory(player, snapshot);
+            }
+        });
+    }
 
-            ResultSet resultSet = statement.executeQuery();
+    /**
+     * Save the inventory a player has in one world and game mode, then load the inventory for another. Swaps for a
+     * player run one at a time, so a swap requested while another is loading waits for it to be applied before
+     * capturing the player state.
+     * 
+     * @param player The player.
+     * @param fromWorld The world the current inventory belongs to.
+     * @param fromGameMode The game mode the current inventory belongs to.
+     * @param toWorld The world to load the inventory for.
+     * @param toGameMode The game mode to load the inventory for.
+     * @param reason The reason recorded with the saved inventory.
+     */
+    private void SwapInventory(Player player, String fromWorld, String fromGameMode, String toWorld,
+        String toGameMode, String reason) {
+        UUID uuid = player.getUniqueId();
+        Deque<Runnable> queue = swapQueues.get(uuid);
 
-            if (resultSet.next()) {
-                xp = resultSet.getInt("xp");
-                inventoryContents = resultSet.getString("inventory");
-                armourContents = resultSet.getString("armour");
-                enderChestContents = resultSet.getString("enderchest");
-                food = resultSet.getInt("food");
-                health = resultSet.getDouble("health");
-                saturation = resultSet.getFloat("saturation");
+        Runnable swap = () -> {
+            if (!player.isOnline()) {
+                swapQueues.remove(uuid);
+                return;
+            }
 
-                foundInventory = true;
+            InventorySnapshot saved = captureInventory(player);
+            if (saved == null) {
+                finishSwap(uuid);
+                return;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            SMMessenger.errorLocale(player, "GMI_FAILED");
-            success = false;
+
+            CompletableFuture<Void> save = SaveInventory(player, saved, fromWorld, fromGameMode, false, reason);
+
+            // The saved items are removed straight away so they cannot be used until the new inventory is applied
+            clearInventory(player);
+
+            String inventoryWorld = getInventoryWorld(toWorld);
+            CompletableFuture<InventorySnapshot> load;
+
+            Prefetch prefetch = prefetches.remove(uuid);
+            if (prefetch != null && prefetch.matches(toGameMode, inventoryWorld) && !prefetch.isExpired()) {
+                load = prefetch.future;
+            } else {
+                load = loadSnapshot(player.getUniqueId().toString(), toGameMode, inventoryWorld, false);
+            }
+
+            Swap pending = new Swap(player, toGameMode, inventoryWorld, saved, save, load);
+            activeSwaps.put(uuid, pending);
+
+            // A prefetched inventory that has already loaded is applied straight away
+            if (pending.completion.isDone()) {
+                pending.finish();
+                return;
+            }
+
+            pending.completion.whenComplete((result, e) -> SMDatabase.runSync(pending::finish));
+        };
+
+        if (queue != null) {
+            queue.addLast(swap);
+            return;
+        }
+
+        swapQueues.put(uuid, new ArrayDeque<>());
+        swap.run();
+    }
+
+    /**
+     * Apply the swaps in progress for a player who is quitting, waiting for their inventories to load. If they do not
+     * load in time, the inventory is loaded when the player next joins instead.
+     * 
+     * @param player The player.
+     */
+    private void completeSwaps(Player player) {
+        UUID uuid = player.getUniqueId();
+        long deadline = System.currentTimeMillis() + QUIT_SWAP_TIMEOUT_MS;
+        Swap swap;
+
+        while ((swap = activeSwaps.get(uuid)) != null) {
+            try {
+                swap.completion.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                // Failures are handled when the swap finishes
+            } catch (TimeoutException | InterruptedException e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+
+                STEMCraft.warning("The inventory of " + player.getName() + " did not load before they quit, it will "
+                    + "be loaded when they next join");
+                pendingLoads.put(uuid, new String[] {swap.gameMode, swap.inventoryWorld});
+                activeSwaps.remove(uuid);
+                swapQueues.remove(uuid);
+                return;
+            }
+
+            swap.finish();
         }
+    }
+
+    /**
+     * Start the next swap queued for a player, if any.
+     * 
+     * @param uuid The player UUID.
+     */
+    private void finishSwap(UUID uuid) {
+        Deque<Runnable> queue = swapQueues.get(uuid);
+        if (queue == null) {
+            return;
+        }
+
+        Runnable next = queue.pollFirst();
+        if (next == null) {
+            swapQueues.remove(uuid);
+            return;
+        }
+
+        next.run();
+    }
+
+    /**
+     * Load and decode the latest inventory snapshot. This is queued on the writer so that it is always read after
+     * any pending saves.
+     * 
+     * @param uuid The player UUID.
+     * @param gameMode The game mode.
+     * @param inventoryWorld The inventory world.
+     * @param death If the inventory saved on death is loaded.
+     * @return A future completed with the snapshot, or null if there is no saved inventory.
+     */
+    private static CompletableFuture<InventorySnapshot> loadSnapshot(String uuid, String gameMode,
+        String inventoryWorld, Boolean death) {
+        return SMDatabase.updateAsync(connection -> {
+            PreparedStatement statement = SMDatabase.prepareCached(connection, LOAD_QUERY);
+            statement.setString(1, uuid);
+            statement.setString(2, gameMode);
+            statement.setString(3, inventoryWorld);
+            statement.setInt(4, death == true ? 1 : 0);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    InventorySnapshot snapshot = new InventorySnapshot();
+
+                    snapshot.xp = resultSet.getInt("xp");
+                    snapshot.inventory = SMItemCodec.decode(resultSet.getBytes("inventory"));
+                    snapshot.armour = SMItemCodec.decode(resultSet.getBytes("armour"));
+                    snapshot.enderChest = SMItemCodec.decode(resultSet.getBytes("enderchest"));
+                    snapshot.food = resultSet.getInt("food");
+                    snapshot.health = resultSet.getDouble("health");
+                    snapshot.saturation = resultSet.getFloat("saturation");
+
+                    return snapshot;
+                }
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Apply a loaded inventory snapshot to a player, or reset the player if there is no snapshot.
+     *
+     * @param player
+     * @param snapshot
+     */
+    private void applyInventory(Player player, InventorySnapshot snapshot) {
+        SMXPCalculator xpc = new SMXPCalculator(player);
 
         // Clear current potions
         player.getActivePotionEffects().forEach((effect) -> {
@@ -219,28 +626,37 @@ public class SMGameModeInventories extends SMFeature {
         });
 
         PlayerInventory playerInventory = player.getInventory();
-        if (foundInventory) {
-            playerInventory.setContents(SMJson.fromJson(ItemStack[].class, inventoryContents));
-            playerInventory.setArmorContents(SMJson.fromJson(ItemStack[].class, armourContents));
-            player.getEnderChest().setContents(SMJson.fromJson(ItemStack[].class, enderChestContents));
-            xpc.setExp(xp);
-            player.setFoodLevel(food);
-            player.setHealth(health);
-            player.setSaturation(saturation);
+        if (snapshot != null) {
+            playerInventory.setContents(snapshot.inventory);
+            playerInventory.setArmorContents(snapshot.armour);
+            player.getEnderChest().setContents(snapshot.enderChest);
+            xpc.setExp(snapshot.xp);
+            player.setFoodLevel(snapshot.food);
+            player.setHealth(snapshot.health);
+            player.setSaturation(snapshot.saturation);
         } else {
-            playerInventory.clear();
-            playerInventory.setBoots(null);
-            playerInventory.setChestplate(null);
-            playerInventory.setLeggings(null);
-            playerInventory.setHelmet(null);
-            player.getEnderChest().clear();
+            clearInventory(player);
             xpc.setExp(0);
             player.setFoodLevel(20);
             player.setHealth(20.0d);
             player.setSaturation(0.0f);
         }
+    }
+
+    /**
+     * Remove the items, armour and ender chest items of a player.
+     *
+     * @param player
+     */
+    private static void clearInventory(Player player) {
+        PlayerInventory playerInventory = player.getInventory();
 
-        return success;
+        playerInventory.clear();
+        playerInventory.setBoots(null);
+        playerInventory.setChestplate(null);
+        playerInventory.setLeggings(null);
+        playerInventory.setHelmet(null);
+        player.getEnderChest().clear();
     }
 
     public Boolean SaveInventory(Player player) {
@@ -256,83 +672,356 @@ public class SMGameModeInventories extends SMFeature {
     }
 
     private Boolean SaveInventory(Player player, String world, Boolean death, String reason) {
-        Boolean success = true;
-        SMXPCalculator xpc = new SMXPCalculator(player);
-        String uuid = player.getUniqueId().toString();
-        String currentGameMode = player.getGameMode().toString();
-        int xp = xpc.getCurrentExp();
-        String inventoryContents = SMJson.toJson(player.getInventory().getContents(), ItemStack[].class);
-        String armourContents = SMJson.toJson(player.getInventory().getArmorContents(), ItemStack[].class);
-        String enderChestContents = SMJson.toJson(player.getEnderChest().getContents(), ItemStack[].class);
-        String location = SMJson.toJson(player.getLocation(), Location.class);
-        int food = player.getFoodLevel();
-        double health = player.getHealth();
-        float saturation = player.getSaturation();
-
-        world = getInventoryWorld(world);
+        return SaveInventory(player, world, player.getGameMode().toString(), death, reason) != null;
+    }
+
+    /**
+     * Save a player inventory.
+     * 
+     * @param player The player.
+     * @param world The world the inventory belongs to.
+     * @param gameMode The game mode the inventory belongs to.
+     * @param death If the inventory is being saved on death.
+     * @param reason The reason recorded with the inventory.
+     * @return A future completed once the inventory is written, or null if the player state could not be copied.
+     */
+    private CompletableFuture<Void> SaveInventory(Player player, String world, String gameMode, Boolean death,
+        String reason) {
+        InventorySnapshot snapshot = captureInventory(player);
+        if (snapshot == null) {
+            return null;
+        }
+
+        return SaveInventory(player, snapshot, world, gameMode, death, reason);
+    }
+
+    /**
+     * Copy the state of a player on the main thread so it can be saved.
+     * 
+     * @param player The player.
+     * @return The player state, or null if it could not be copied.
+     */
+    private static InventorySnapshot captureInventory(Player player) {
+        InventorySnapshot snapshot = new InventorySnapshot();
 
-        // Save player state
         try {
-            PreparedStatement statement = SMDatabase.prepareStatement(
-                "INSERT INTO gamemode_inventories (uuid, death, location, gamemode, xp, inventory, armour, enderchest, reason, world, food, health, saturation) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
-            statement.setString(1, uuid);
-            statement.setInt(2, death == true ? 1 : 0);
-            statement.setString(3, location);
-            statement.setString(4, currentGameMode);
-            statement.setInt(5, xp);
-            statement.setString(6, inventoryContents);
-            statement.setString(7, armourContents);
-            statement.setString(8, enderChestContents);
-            statement.setString(9, reason);
-            statement.setString(10, world);
-            statement.setInt(11, food);
-            statement.setDouble(12, health);
-            statement.setFloat(13, saturation);
-            statement.executeUpdate();
-            statement.close();
-
-            RemoveOldInventories(player, player.getGameMode(), world);
+            snapshot.xp = new SMXPCalculator(player).getCurrentExp();
+            snapshot.inventory = copyItems(player.getInventory().getContents());
+            snapshot.armour = copyItems(player.getInventory().getArmorContents());
+            snapshot.enderChest = copyItems(player.getEnderChest().getContents());
+            snapshot.food = player.getFoodLevel();
+            snapshot.health = player.getHealth();
+            snapshot.saturation = player.getSaturation();
+            snapshot.location = SMJson.toJson(player.getLocation(), Location.class);
         } catch (Exception e) {
             e.printStackTrace();
             SMMessenger.errorLocale(player, "GMI_FAILED");
-            success = false;
+            return null;
         }
 
-        return success;
+        return snapshot;
     }
 
-    private void RemoveOldInventories(Player player, GameMode gameMode, String world) {
-        String uuidString = player.getUniqueId().toString();
-        String gameModeString = gameMode.toString();
+    /**
+     * Save a copied player state. The state is serialized and written on the database writer thread.
+     * 
+     * @param player The player.
+     * @param snapshot The copied player state.
+     * @param world The world the inventory belongs to.
+     * @param gameMode The game mode the inventory belongs to.
+     * @param death If the inventory is being saved on death.
+     * @param reason The reason recorded with the inventory.
+     * @return A future completed once the inventory is written.
+     */
+    private CompletableFuture<Void> SaveInventory(Player player, InventorySnapshot snapshot, String world,
+        String gameMode, Boolean death, String reason) {
+        String uuid = player.getUniqueId().toString();
+        String inventoryWorld = getInventoryWorld(world);
         Integer maxRows = SMConfig.main().getInt("gamemode-inventories.max-count", 50);
 
-        String sql =
-            "WITH RankedRows AS ( " +
-                "SELECT *, " +
-                "ROW_NUMBER() OVER (ORDER BY created DESC) as rn " +
-                "FROM gamemode_inventories " +
-                "WHERE uuid = ? " +
-                "AND gamemode = ? " +
-                "AND world = ? " +
-                ") " +
-                "DELETE FROM gamemode_inventories " +
-                "WHERE id IN ( " +
-                "SELECT id " +
-                "FROM RankedRows " +
-                "WHERE rn > ? " +
-                ");";
+        // A prefetched copy of this inventory would no longer be the latest
+        Prefetch prefetch = prefetches.get(player.getUniqueId());
+        if (prefetch != null && prefetch.matches(gameMode, inventoryWorld)) {
+            prefetches.remove(player.getUniqueId());
+        }
 
-        try {
-            PreparedStatement statement = SMDatabase.prepareStatement(sql);
-            statement.setString(1, uuidString);
-            statement.setString(2, gameModeString);
-            statement.setString(3, world);
-            statement.setInt(4, maxRows);
-            statement.executeUpdate();
-            statement.close();
-        } catch (Exception e) {
+        // Save player state
+        CompletableFuture<Void> future = SMDatabase.executeAsync(connection -> {
+            byte[] inventoryData = SMItemCodec.encode(snapshot.inventory);
+            byte[] armourData = SMItemCodec.encode(snapshot.armour);
+            byte[] enderChestData = SMItemCodec.encode(snapshot.enderChest);
+
+            SMDatabase.transaction(connection, transaction -> {
+                PreparedStatement statement = SMDatabase.prepareCached(transaction,
+                    "INSERT INTO gamemode_inventories (uuid, death, location, gamemode, xp, inventory, armour, enderchest, reason, world, food, health, saturation, inventory_hash, armour_hash, enderchest_hash) VALUES (?, ?, ?, ?, ?, '', '', '', ?, ?, ?, ?, ?, ?, ?, ?)");
+                statement.setString(1, uuid);
+                statement.setInt(2, death == true ? 1 : 0);
+                statement.setString(3, snapshot.location);
+                statement.setString(4, gameMode);
+                statement.setInt(5, snapshot.xp);
+                statement.setString(6, reason);
+                statement.setString(7, inventoryWorld);
+                statement.setInt(8, snapshot.food);
+                statement.setDouble(9, snapshot.health);
+                statement.setFloat(10, snapshot.saturation);
+                statement.setBytes(11, storeBlob(transaction, inventoryData));
+                statement.setBytes(12, storeBlob(transaction, armourData));
+                statement.setBytes(13, storeBlob(transaction, enderChestData));
+                statement.executeUpdate();
+
+                RemoveOldInventories(transaction, uuid, gameMode, inventoryWorld, maxRows);
+            });
+        });
+
+        future.exceptionally(e -> {
             e.printStackTrace();
-            SMMessenger.errorLocale(player, "GMI_FAILED");
+            SMDatabase.runSync(() -> SMMessenger.errorLocale(player, "GMI_FAILED"));
+            return null;
+        });
+
+        return future;
+    }
+
+    /**
+     * Convert stored items to the binary format, leaving data already converted as is.
+     * 
+     * @param data The stored items.
+     * @return The items in the binary format.
+     */
+    private static byte[] convertItems(byte[] data) {
+        if (SMItemCodec.isEncoded(data)) {
+            return data;
+        }
+
+        return SMItemCodec.encode(SMItemCodec.decode(data));
+    }
+
+    /**
+     * Copy an item array so it can be serialized off the main thread.
+     * 
+     * @param items The items to copy.
+     * @return The copied items.
+     */
+    private static ItemStack[] copyItems(ItemStack[] items) {
+        ItemStack[] copy = new ItemStack[items.length];
+        for (int i = 0; i < items.length; i++) {
+            copy[i] = items[i] == null ? null : items[i].clone();
+        }
+
+        return copy;
+    }
+
+    /**
+     * Remove all but the latest inventories for a player, world and game mode, releasing the blobs they used. The
+     * oldest inventory to keep is found by walking the owner index newest first, then everything older than it is
+     * removed as one range of the index.
+     * 
+     * @param connection The connection to use.
+     * @param uuid The player UUID.
+     * @param gameMode The game mode.
+     * @param world The inventory world.
+     * @param maxRows The number of inventories to keep.
+     * @throws SQLException
+     */
+    private static void RemoveOldInventories(Connection connection, String uuid, String gameMode, String world,
+        Integer maxRows) throws SQLException {
+        long cutoffId;
+        List<byte[]> hashes = new ArrayList<>();
+
+        PreparedStatement cutoffStatement = SMDatabase.prepareCached(connection, RETENTION_CUTOFF_QUERY);
+        cutoffStatement.setString(1, uuid);
+        cutoffStatement.setString(2, gameMode);
+        cutoffStatement.setString(3, world);
+        cutoffStatement.setInt(4, Math.max(maxRows - 1, 0));
+
+        try (ResultSet resultSet = cutoffStatement.executeQuery()) {
+            if (!resultSet.next()) {
+                return;
+            }
+
+            cutoffId = resultSet.getLong("id");
+        }
+
+        PreparedStatement selectStatement = SMDatabase.prepareCached(connection, RETENTION_SELECT_QUERY);
+        selectStatement.setString(1, uuid);
+        selectStatement.setString(2, gameMode);
+        selectStatement.setString(3, world);
+        selectStatement.setLong(4, maxRows > 0 ? cutoffId : cutoffId + 1);
+
+        try (ResultSet resultSet = selectStatement.executeQuery()) {
+            while (resultSet.next()) {
+                for (String column : BLOB_COLUMNS) {
+                    hashes.add(resultSet.getBytes(column + "_hash"));
+                }
+            }
+        }
+
+        if (hashes.isEmpty()) {
+            return;
+        }
+
+        PreparedStatement deleteStatement = SMDatabase.prepareCached(connection,
+            "DELETE FROM gamemode_inventories WHERE uuid = ? AND gamemode = ? AND world = ? AND id < ?");
+        deleteStatement.setString(1, uuid);
+        deleteStatement.setString(2, gameMode);
+        deleteStatement.setString(3, world);
+        deleteStatement.setLong(4, maxRows > 0 ? cutoffId : cutoffId + 1);
+        deleteStatement.executeUpdate();
+
+        PreparedStatement releaseStatement = SMDatabase.prepareCached(connection,
+            "UPDATE gamemode_inventory_blobs SET refs = refs - 1 WHERE hash = ?");
+        for (byte[] hash : hashes) {
+            if (hash != null) {
+                releaseStatement.setBytes(1, hash);
+                releaseStatement.addBatch();
+            }
+        }
+        releaseStatement.executeBatch();
+
+        // Remove blobs no longer used by any inventory
+        PreparedStatement collectStatement = SMDatabase.prepareCached(connection,
+            "DELETE FROM gamemode_inventory_blobs WHERE hash = ? AND refs <= 0");
+        for (byte[] hash : hashes) {
+            if (hash != null) {
+                collectStatement.setBytes(1, hash);
+                collectStatement.addBatch();
+            }
+        }
+        collectStatement.executeBatch();
+    }
+
+    /**
+     * Store item data in the blob table, or add a reference to it if the same data is already stored.
+     * 
+     * @param connection The connection to use.
+     * @param data The item data.
+     * @return The hash of the data.
+     * @throws SQLException
+     */
+    private static byte[] storeBlob(Connection connection, byte[] data) throws SQLException {
+        byte[] hash;
+
+        try {
+            hash = MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new SQLException(e);
+        }
+
+        PreparedStatement statement = SMDatabase.prepareCached(connection,
+            "INSERT INTO gamemode_inventory_blobs (hash, data, refs) VALUES (?, ?, 1) " +
+                "ON CONFLICT (hash) DO UPDATE SET refs = refs + 1");
+        statement.setBytes(1, hash);
+        statement.setBytes(2, data);
+        statement.executeUpdate();
+
+        return hash;
+    }
+
+    /**
+     * A player inventory state copied to be saved or loaded from the database.
+     */
+    private static class InventorySnapshot {
+        int xp = 0;
+        ItemStack[] inventory = new ItemStack[0];
+        ItemStack[] armour = new ItemStack[0];
+        ItemStack[] enderChest = new ItemStack[0];
+        int food = 20;
+        double health = 20.0d;
+        float saturation = 0.0f;
+
+        /**
+         * The player location as JSON. Only set when the state is copied from a player.
+         */
+        String location = null;
+    }
+
+    /**
+     * A swap waiting for the old inventory to be saved and the new inventory to load.
+     */
+    private class Swap {
+        final Player player;
+        final String gameMode;
+        final String inventoryWorld;
+        final InventorySnapshot saved;
+        final CompletableFuture<Void> save;
+        final CompletableFuture<InventorySnapshot> load;
+
+        /**
+         * Completed once both the save and the load have finished.
+         */
+        final CompletableFuture<Void> completion;
+
+        private boolean finished = false;
+
+        Swap(Player player, String gameMode, String inventoryWorld, InventorySnapshot saved,
+            CompletableFuture<Void> save, CompletableFuture<InventorySnapshot> load) {
+            this.player = player;
+            this.gameMode = gameMode;
+            this.inventoryWorld = inventoryWorld;
+            this.saved = saved;
+            this.save = save;
+            this.load = load;
+            this.completion = CompletableFuture.allOf(save, load);
+        }
+
+        /**
+         * Apply the loaded inventory and start the next swap queued for the player. If the old inventory could not
+         * be saved it is given back, as it was removed from the player. If only the load failed the player is left
+         * without items, as the old inventory is safe in the database. Only called on the main thread once the swap
+         * has completed.
+         */
+        void finish() {
+            if (finished) {
+                return;
+            }
+
+            finished = true;
+            UUID uuid = player.getUniqueId();
+
+            // A swap given up on when the player quit no longer owns their swap queue
+            boolean active = activeSwaps.remove(uuid, this);
+
+            try {
+                if (!active || !player.isOnline()) {
+                    return;
+                }
+
+                if (save.isCompletedExceptionally()) {
+                    applyInventory(player, saved);
+                } else if (load.isCompletedExceptionally()) {
+                    SMMessenger.errorLocale(player, "GMI_FAILED");
+                } else {
+                    applyInventory(player, load.join());
+                }
+            } finally {
+                if (active) {
+                    finishSwap(uuid);
+                }
+            }
+        }
+    }
+
+    /**
+     * An inventory being loaded ahead of a teleport.
+     */
+    private static class Prefetch {
+        final String gameMode;
+        final String inventoryWorld;
+        final CompletableFuture<InventorySnapshot> future;
+        final long created = System.currentTimeMillis();
+
+        Prefetch(String gameMode, String inventoryWorld, CompletableFuture<InventorySnapshot> future) {
+            this.gameMode = gameMode;
+            this.inventoryWorld = inventoryWorld;
+            this.future = future;
+        }
+
+        boolean matches(String gameMode, String inventoryWorld) {
+            return this.gameMode.equals(gameMode) && this.inventoryWorld.equals(inventoryWorld);
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() - created > PREFETCH_EXPIRY_MS;
         }
     }
 
@@ -36,8 +36,9 @@ public class SMInvincible extends SMFeature {
         });
 
         SMEvent.register(PlayerGameModeChangeEvent.class, EventPriority.LOWEST, ctx -> {
+            Player player = ctx.event.getPlayer();
             STEMCraft.runLater(1, () -> {
-                setInvincible(ctx.event.getPlayer());
+                setInvincible(player);
             });
         });
 
@@ -46,8 +47,9 @@ public class SMInvincible extends SMFeature {
         });
 
         SMEvent.register(PlayerTeleportEvent.class, EventPriority.LOWEST, ctx -> {
+            Player player = ctx.event.getPlayer();
             STEMCraft.runLater(1, () -> {
-                setInvincible(ctx.event.getPlayer());
+                setInvincible(player);
             });
         });
 
@@ -1,5 +1,6 @@
 package com.stemcraft.feature;
 
+import java.util.Arrays;
 import java.util.UUID;
 import org.bukkit.entity.Player;
 import org.bukkit.potion.PotionEffect;
@@ -14,6 +15,10 @@ import com.stemcraft.core.command.SMCommand;
  */
 public class SMNightVision extends SMFeature {
 
+    public SMNightVision() {
+        lazyCommands.addAll(Arrays.asList("nightvision", "nv"));
+    }
+
     /**
      * Enables the night vision feature by registering the command.
      *
@@ -1,5 +1,6 @@
 package com.stemcraft.feature;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import org.bukkit.WeatherType;
 import org.bukkit.entity.Player;
@@ -8,6 +9,10 @@ import com.stemcraft.core.SMMessenger;
 import com.stemcraft.core.command.SMCommand;
 
 public class SMPlayerWeather extends SMFeature {
+    public SMPlayerWeather() {
+        lazyCommands.addAll(Arrays.asList("playerweather", "pweather"));
+    }
+
     @Override
     protected Boolean onEnable() {
         String[] options = {"reset", "clear", "rain", "lookup"};
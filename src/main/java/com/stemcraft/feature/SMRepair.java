@@ -9,6 +9,10 @@ import com.stemcraft.core.command.SMCommand;
 
 public class SMRepair extends SMFeature {
 
+    public SMRepair() {
+        lazyCommands.add("repair");
+    }
+
     @Override
     protected Boolean onEnable() {
         String[] repairTypes = {"hand", "all"};
@@ -7,6 +7,11 @@ import com.stemcraft.core.command.SMCommand;
 public class SMRules extends SMFeature {
     private final static String RULE_BOOK_NAME = "server-rules";
 
+    public SMRules() {
+        loadAfterFeatures.add("SMBooks");
+        lazyCommands.add("rules");
+    }
+
     /**
      * When the feature is enabled
      */
@@ -10,6 +10,10 @@ public class SMSeen extends SMFeature {
     private SimpleDateFormat dateFormat = new SimpleDateFormat("dd MMMM yyyy HH:mm");
     private String permission = "stemcraft.command.seen";
 
+    public SMSeen() {
+        lazyCommands.add("seen");
+    }
+
     @Override
     protected Boolean onEnable() {
         new SMCommand("seen")
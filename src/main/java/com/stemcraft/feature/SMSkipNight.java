@@ -67,8 +67,8 @@ public class SMSkipNight extends SMFeature {
          * PlayerJoinEvent
          */
         SMEvent.register(PlayerJoinEvent.class, (ctx) -> {
+            PlayerJoinEvent event = (PlayerJoinEvent) ctx.event;
             STEMCraft.runLater(20, () -> {
-                PlayerJoinEvent event = (PlayerJoinEvent) ctx.event;
                 Player player = event.getPlayer();
                 World world = player.getLocation().getWorld();
 
@@ -10,6 +10,10 @@ import com.stemcraft.core.tabcomplete.SMTabComplete;
 public class SMSpeed extends SMFeature {
     private String[] movementTypes = {"fly", "walk"};
 
+    public SMSpeed() {
+        lazyCommands.add("speed");
+    }
+
     @Override
     protected Boolean onEnable() {
         // Tab Completion - Type
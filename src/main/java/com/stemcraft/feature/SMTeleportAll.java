@@ -14,6 +14,10 @@ import com.stemcraft.core.SMMessenger;
 import com.stemcraft.core.command.SMCommand;
 
 public class SMTeleportAll extends SMFeature {
+    public SMTeleportAll() {
+        lazyCommands.add("tpall");
+    }
+
     @Override
     protected Boolean onEnable() {
 
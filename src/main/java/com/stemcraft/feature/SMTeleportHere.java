@@ -9,6 +9,10 @@ import com.stemcraft.core.command.SMCommand;
 
 public class SMTeleportHere extends SMFeature {
 
+    public SMTeleportHere() {
+        lazyCommands.add("tphere");
+    }
+
     /**
      * Called when the feature is requested to be enabled.
      * 
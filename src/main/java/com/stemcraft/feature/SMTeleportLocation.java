@@ -5,14 +5,18 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
 import com.stemcraft.STEMCraft;
 import com.stemcraft.core.SMCommon;
 import com.stemcraft.core.SMDatabase;
 import com.stemcraft.core.SMFeature;
+import com.stemcraft.core.SMMessenger;
 import com.stemcraft.core.SMPaginate;
 import com.stemcraft.core.command.SMCommand;
 import com.stemcraft.core.tabcomplete.SMTabComplete;
@@ -25,6 +29,12 @@ import net.md_5.bungee.api.chat.hover.content.Text;
 public class SMTeleportLocation extends SMFeature {
     private HashMap<String, Location> cacheList = new HashMap<>();
 
+    public SMTeleportLocation() {
+        lazyCommands.addAll(Arrays.asList("teleportlocation", "teleportloc", "tploc", "listteleportlocation",
+            "listteleportloc", "listtploc", "addteleportlocation", "addteleportloc", "addtploc", "delteleportlocation",
+            "delteleportloc", "deltploc"));
+    }
+
     @Override
     protected Boolean onEnable() {
         SMDatabase.runMigration("230601229800_CreateTpLocationsTable", () -> {
@@ -41,6 +51,13 @@ public class SMTeleportLocation extends SMFeature {
                 .executeUpdate();
         });
 
+        SMDatabase.runMigration("240116160000_AddTpLocationsNameIndex", () -> {
+            SMDatabase.prepareStatement(
+                "CREATE INDEX IF NOT EXISTS idx_tp_locations_name " +
+                    "ON tp_locations (name, id)")
+                .executeUpdate();
+        });
+
         SMTabComplete.register("tplocations", () -> {
             return List.copyOf(this.cacheList.keySet());
         });
@@ -65,74 +82,49 @@ public class SMTeleportLocation extends SMFeature {
         new SMCommand("listteleportlocation")
             .alias("listteleportloc", "listtploc")
             .action(ctx -> {
-                Integer itemCount = 0;
-
-                try {
-                    PreparedStatement countStatement = SMDatabase.prepareStatement("SELECT COUNT(*) FROM tp_locations");
-                    ResultSet countResultSet = countStatement.executeQuery();
+                Player player = ctx.player;
 
-                    if (countResultSet.next()) {
-                        itemCount = countResultSet.getInt(1);
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+                SMPaginate.Keyset<LocationRow> listing = SMPaginate
+                    .keyset("tp_locations", LocationRow::new, "name", "id")
+                    .columns("name, world, x, y, z, yaw, pitch");
 
-                new SMPaginate(ctx.sender, ctx.getArgInt(1, 1))
-                    .count(itemCount)
-                    .command("listtploc")
+                new SMPaginate(ctx.sender, ctx.getArg(1, "1"))
+                    .command("/listtploc")
                     .title("Teleport Locations")
                     .none("No teleport locations where found")
-                    .showItems((start, max) -> {
-                        List<BaseComponent[]> rows = new ArrayList<>();
-
-                        try {
-                            PreparedStatement statement = SMDatabase.prepareStatement(
-                                "SELECT name, world, x, y, z FROM tp_locations LIMIT ?, ?");
-                            statement.setInt(1, start);
-                            statement.setInt(2, max);
-                            ResultSet resultSet = statement.executeQuery();
-
-                            while (resultSet.next()) {
-                                String name = resultSet.getString("name");
-                                String worldName = resultSet.getString("world");
-                                double x = resultSet.getDouble("x");
-                                double y = resultSet.getDouble("y");
-                                double z = resultSet.getDouble("z");
-
-                                DecimalFormat df = new DecimalFormat("#");
-
-                                TextComponent tpName = new TextComponent(ChatColor.GOLD + name + " " + ChatColor.GRAY
-                                    + df.format(x) + "," + df.format(y) + "," + df.format(z) + " " + worldName);
-                                tpName.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, "/tploc " + name));
-                                tpName.setHoverEvent(
-                                    new HoverEvent(HoverEvent.Action.SHOW_TEXT, new Text("Teleport to X:" + df.format(x)
-                                        + " Y:" + df.format(y) + " Z:" + df.format(z) + " " + worldName)));
-
-                                TextComponent update = new TextComponent(ChatColor.WHITE + "[Update]");
-                                update
-                                    .setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, "/addtploc " + name));
-                                update.setHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT,
-                                    new Text("Update location to X:"
-                                        + Double.parseDouble(df.format(ctx.player.getLocation().getX())) + " Y:"
-                                        + Double.parseDouble(df.format(ctx.player.getLocation().getY())) + " Z:"
-                                        + Double.parseDouble(df.format(ctx.player.getLocation().getZ())) + " "
-                                        + ctx.player.getLocation().getWorld().getName())));
-
-                                TextComponent delTp = new TextComponent(ChatColor.RED + "[Del]");
-                                delTp.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, "/deltploc " + name));
-                                delTp.setHoverEvent(
-                                    new HoverEvent(HoverEvent.Action.SHOW_TEXT, new Text("Delete teleport location")));
-
-                                BaseComponent[] row = new BaseComponent[] {tpName, new TextComponent(" "), update,
-                                        new TextComponent(" "), delTp};
-                                rows.add(row);
-                            }
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-
-                        return rows;
+                    .showKeyset(listing, location -> {
+                        String name = location.name;
+                        String worldName = location.world;
+                        double x = location.x;
+                        double y = location.y;
+                        double z = location.z;
+
+                        DecimalFormat df = new DecimalFormat("#");
+
+                        TextComponent tpName = new TextComponent(ChatColor.GOLD + name + " " + ChatColor.GRAY
+                            + df.format(x) + "," + df.format(y) + "," + df.format(z) + " " + worldName);
+                        tpName.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, "/tploc " + name));
+                        tpName.setHoverEvent(
+                            new HoverEvent(HoverEvent.Action.SHOW_TEXT, new Text("Teleport to X:" + df.format(x)
+                                + " Y:" + df.format(y) + " Z:" + df.format(z) + " " + worldName)));
+
+                        TextComponent update = new TextComponent(ChatColor.WHITE + "[Update]");
+                        update
+                            .setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, "/addtploc " + name));
+                        update.setHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT,
+                            new Text("Update location to X:"
+                                + Double.parseDouble(df.format(player.getLocation().getX())) + " Y:"
+                                + Double.parseDouble(df.format(player.getLocation().getY())) + " Z:"
+                                + Double.parseDouble(df.format(player.getLocation().getZ())) + " "
+                                + player.getLocation().getWorld().getName())));
+
+                        TextComponent delTp = new TextComponent(ChatColor.RED + "[Del]");
+                        delTp.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, "/deltploc " + name));
+                        delTp.setHoverEvent(
+                            new HoverEvent(HoverEvent.Action.SHOW_TEXT, new Text("Delete teleport location")));
+
+                        return new BaseComponent[] {tpName, new TextComponent(" "), update,
+                                new TextComponent(" "), delTp};
                     });
             })
             .register();
@@ -144,6 +136,7 @@ public class SMTeleportLocation extends SMFeature {
                 ctx.checkNotConsole();
                 ctx.checkArgs(1, "TPLOC_USAGE");
 
+                CommandSender sender = ctx.sender;
                 String name = ctx.args.get(0);
                 Location location = ctx.player.getLocation();
 
@@ -154,19 +147,22 @@ public class SMTeleportLocation extends SMFeature {
                 float yaw = location.getYaw();
                 float pitch = location.getPitch();
 
-                try {
-                    PreparedStatement selectStatement = SMDatabase.prepareStatement(
-                        "SELECT COUNT(*) FROM tp_locations WHERE name = ?");
-                    selectStatement.setString(1, name);
-                    ResultSet selectResult = selectStatement.executeQuery();
-                    selectResult.next();
+                SMDatabase.sync(SMDatabase.updateAsync(connection -> {
+                    int rowCount = 0;
 
-                    int rowCount = selectResult.getInt(1);
+                    try (PreparedStatement selectStatement = connection.prepareStatement(
+                        "SELECT COUNT(*) FROM tp_locations WHERE name = ?")) {
+                        selectStatement.setString(1, name);
+                        try (ResultSet selectResult = selectStatement.executeQuery()) {
+                            selectResult.next();
+                            rowCount = selectResult.getInt(1);
+                        }
+                    }
 
                     PreparedStatement statement;
                     if (rowCount > 0) {
                         // Update existing row
-                        statement = SMDatabase.prepareStatement(
+                        statement = connection.prepareStatement(
                             "UPDATE tp_locations SET world = ?, x = ?, y = ?, z = ?, yaw = ?, pitch = ? WHERE name = ?");
 
                         statement.setString(1, world);
@@ -178,7 +174,7 @@ public class SMTeleportLocation extends SMFeature {
                         statement.setString(7, name);
                     } else {
                         // Insert new row
-                        statement = SMDatabase.prepareStatement(
+                        statement = connection.prepareStatement(
                             "INSERT INTO tp_locations (name, world, x, y, z, yaw, pitch) VALUES (?, ?, ?, ?, ?, ?, ?)");
                         statement.setString(1, name);
                         statement.setString(2, world);
@@ -189,17 +185,19 @@ public class SMTeleportLocation extends SMFeature {
                         statement.setFloat(7, pitch);
                     }
 
-                    int rowsAffected = statement.executeUpdate();
+                    try (statement) {
+                        return statement.executeUpdate();
+                    }
+                }), rowsAffected -> {
                     if (rowsAffected > 0) {
-                        ctx.returnSuccessLocale("TPLOC_SAVE_SUCCESSFUL");
+                        SMMessenger.successLocale(sender, "TPLOC_SAVE_SUCCESSFUL");
+                        SMPaginate.invalidateCount("tp_locations");
                     } else {
-                        ctx.returnErrorLocale("TPLOC_SAVE_FAILED");
+                        SMMessenger.errorLocale(sender, "TPLOC_SAVE_FAILED");
                     }
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
 
-                this.buildCacheList();
+                    this.buildCacheList();
+                });
             })
             .register();
 
@@ -210,29 +208,28 @@ public class SMTeleportLocation extends SMFeature {
             .action(ctx -> {
                 ctx.checkArgs(1, "TPLOC_DELETE_USAGE");
 
+                CommandSender sender = ctx.sender;
                 String name = ctx.args.get(0);
                 if (!this.cacheList.containsKey(name)) {
                     ctx.returnErrorLocale("TPLOC_NOT_EXIST", "name", name);
                 }
 
-                try {
-                    PreparedStatement statement;
-                    statement = SMDatabase.prepareStatement(
-                        "DELETE FROM tp_locations WHERE name = ?");
-
-                    statement.setString(1, name);
-
-                    int rowsAffected = statement.executeUpdate();
+                SMDatabase.sync(SMDatabase.updateAsync(connection -> {
+                    try (PreparedStatement statement = connection.prepareStatement(
+                        "DELETE FROM tp_locations WHERE name = ?")) {
+                        statement.setString(1, name);
+                        return statement.executeUpdate();
+                    }
+                }), rowsAffected -> {
                     if (rowsAffected > 0) {
-                        ctx.returnSuccessLocale("TPLOC_DELETE_SUCCESSFUL");
+                        SMMessenger.successLocale(sender, "TPLOC_DELETE_SUCCESSFUL");
+                        SMPaginate.invalidateCount("tp_locations");
                     } else {
-                        ctx.returnErrorLocale("TPLOC_DELETE_FAILED");
+                        SMMessenger.errorLocale(sender, "TPLOC_DELETE_FAILED");
                     }
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
 
-                this.buildCacheList();
+                    this.buildCacheList();
+                });
             })
             .register();
 
@@ -241,27 +238,48 @@ public class SMTeleportLocation extends SMFeature {
     }
 
     private void buildCacheList() {
-        try {
-            PreparedStatement statement = SMDatabase.prepareStatement(
+        SMDatabase.sync(SMDatabase.queryAsync(connection -> {
+            List<LocationRow> locations = new ArrayList<>();
+
+            try (PreparedStatement statement = connection.prepareStatement(
                 "SELECT name, world, x, y, z, yaw, pitch FROM tp_locations");
-            ResultSet resultSet = statement.executeQuery();
+                ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    locations.add(new LocationRow(resultSet));
+                }
+            }
 
+            return locations;
+        }), locations -> {
             this.cacheList.clear();
-            while (resultSet.next()) {
-                String name = resultSet.getString("name");
-                String worldName = resultSet.getString("world");
-                double x = resultSet.getDouble("x");
-                double y = resultSet.getDouble("y");
-                double z = resultSet.getDouble("z");
-                float yaw = resultSet.getFloat("yaw");
-                float pitch = resultSet.getFloat("pitch");
-
-                Location location =
-                    new Location(STEMCraft.getPlugin().getServer().getWorld(worldName), x, y, z, yaw, pitch);
-                this.cacheList.put(name, location);
+            for (LocationRow row : locations) {
+                Location location = new Location(STEMCraft.getPlugin().getServer().getWorld(row.world), row.x, row.y,
+                    row.z, row.yaw, row.pitch);
+                this.cacheList.put(row.name, location);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+        });
+    }
+
+    /**
+     * A teleport location row loaded from the database.
+     */
+    private static class LocationRow {
+        String name;
+        String world;
+        double x;
+        double y;
+        double z;
+        float yaw;
+        float pitch;
+
+        LocationRow(ResultSet resultSet) throws SQLException {
+            this.name = resultSet.getString("name");
+            this.world = resultSet.getString("world");
+            this.x = resultSet.getDouble("x");
+            this.y = resultSet.getDouble("y");
+            this.z = resultSet.getDouble("z");
+            this.yaw = resultSet.getFloat("yaw");
+            this.pitch = resultSet.getFloat("pitch");
         }
     }
 }
@@ -1,5 +1,6 @@
 package com.stemcraft.feature;
 
+import java.util.Arrays;
 import org.bukkit.entity.Player;
 import com.stemcraft.core.SMFeature;
 import com.stemcraft.core.SMMessenger;
@@ -7,6 +8,10 @@ import com.stemcraft.core.command.SMCommand;
 
 public class SMTeleportSpawn extends SMFeature {
 
+    public SMTeleportSpawn() {
+        lazyCommands.addAll(Arrays.asList("tpspawn", "teleportspawn"));
+    }
+
     /**
      * When feature is enabled
      */
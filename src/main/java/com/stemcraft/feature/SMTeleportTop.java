@@ -1,5 +1,6 @@
 package com.stemcraft.feature;
 
+import java.util.Arrays;
 import org.bukkit.Location;
 import org.bukkit.entity.Player;
 import com.stemcraft.core.SMCommon;
@@ -11,6 +12,10 @@ import com.stemcraft.core.command.SMCommand;
  */
 public class SMTeleportTop extends SMFeature {
 
+    public SMTeleportTop() {
+        lazyCommands.addAll(Arrays.asList("tptop", "teleporttop", "top"));
+    }
+
     /**
      * Called when the feature is requested to be enabled.
      * 
@@ -1,13 +1,19 @@
 package com.stemcraft.feature;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.ParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -25,12 +31,14 @@ import org.bukkit.event.player.PlayerInteractEntityEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.MerchantInventory;
 import org.bukkit.inventory.MerchantRecipe;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.stemcraft.STEMCraft;
 import com.stemcraft.core.SMBridge;
 import com.stemcraft.core.SMCommon;
 import com.stemcraft.core.SMDatabase;
 import com.stemcraft.core.SMFeature;
-import com.stemcraft.core.SMJson;
+import com.stemcraft.core.adapters.SMAdapterLocation;
 import com.stemcraft.core.command.SMCommand;
 import com.stemcraft.core.config.SMConfig;
 import com.stemcraft.core.event.SMEvent;
@@ -53,6 +61,16 @@ public class SMTrader extends SMFeature {
     private static Integer LESS_THAN_SECONDS_TO_CALCULATE = 60 * 60 * 24; // If less then this amount of seconds have
                                                                           // passed, delay the trade
 
+    /**
+     * The lots of a material, oldest first, used when stock is bought from the trader.
+     */
+    static final String CONSUME_QUERY = "SELECT id, quantity FROM trades WHERE material = ? ORDER BY created, id";
+
+    /**
+     * The trader stock, loaded from the trades table at enable and kept in step with each trade.
+     */
+    private static StockLedger ledger = new StockLedger();
+
     /**
      * Called when the feature is requested to be enabled.
      * 
@@ -71,6 +89,21 @@ public class SMTrader extends SMFeature {
                 .executeUpdate();
         });
 
+        SMDatabase.runMigration("240116090000_AddTradesMaterialIndex", () -> {
+            SMDatabase.prepareStatement(
+                "CREATE INDEX IF NOT EXISTS idx_trades_material_created ON trades (material, created, id)")
+                .executeUpdate();
+        });
+
+        SMDatabase.runMigration("240116170000_SplitTradesLocation", () -> {
+            SMDatabase.write(connection -> {
+                splitTradesLocation(connection);
+                return null;
+            });
+        });
+
+        SMDatabase.checkQueryPlan(CONSUME_QUERY);
+
         traderName = SMConfig.main().getString("trader.name");
         traderWorlds = SMConfig.main().getStringList("trader.worlds");
         SPAWN_CHECK_INTERVAL = SMConfig.main().getInt("trader.spawn-update");
@@ -80,6 +113,8 @@ public class SMTrader extends SMFeature {
         DELAY_TRADE_BETWEEN_WORLDS = SMConfig.main().getInt("trader.trade-delay-between-worlds");
         LESS_THAN_SECONDS_TO_CALCULATE = SMConfig.main().getInt("trader.trade-delay-force-available");
 
+        loadLedger();
+
         new SMCommand("trader")
             .permission("stemcraft.command.trader")
             .action(ctx -> {
@@ -127,7 +162,7 @@ public class SMTrader extends SMFeature {
                 }
 
                 // Add trader items
-                Map<String, Integer> items = GetItemsToTrade(player.getLocation());
+                Map<String, Integer> items = ledger.getAvailable(player.getLocation());
                 for (String material : items.keySet()) {
                     ItemStack itemStack = SMBridge.newItemStack(material, 1);
                     if (itemStack != null) {
@@ -168,12 +203,14 @@ public class SMTrader extends SMFeature {
         SMEvent.register(InventoryCloseEvent.class, ctx -> {
             if (ctx.event.getInventory() instanceof MerchantInventory) {
                 MerchantInventory merchantInventory = (MerchantInventory) ctx.event.getInventory();
-                if (merchantInventory != trader) {
+                if (merchantInventory.getMerchant() != trader) {
                     return;
                 }
 
                 HumanEntity player = ctx.event.getPlayer();
                 Location location = player.getLocation();
+                Map<String, Integer> sold = new LinkedHashMap<>();
+                Map<String, Integer> bought = new LinkedHashMap<>();
 
                 merchantInventory.getMerchant().getRecipes().forEach(recipe -> {
                     ItemStack result = recipe.getResult();
@@ -186,13 +223,15 @@ public class SMTrader extends SMFeature {
                     if (recipe.getUses() > 0) {
                         if (SMValue.getDenominations().contains(resultName)) {
                             // player sold an item
-                            AddItemToTrader(ingredientName, recipe.getUses() * ingredientItem.getAmount(), location);
+                            sold.merge(ingredientName, recipe.getUses() * ingredientItem.getAmount(), Integer::sum);
                         } else {
                             // player bought an item
-                            RemoveItemFromTrader(resultName, recipe.getUses() * result.getAmount(), location);
+                            bought.merge(resultName, recipe.getUses() * result.getAmount(), Integer::sum);
                         }
                     }
                 });
+
+                UpdateTraderStock(sold, bought, location);
             }
         });
 
@@ -324,94 +363,346 @@ public class SMTrader extends SMFeature {
         return null;
     }
 
-    private static Map<String, Integer> GetItemsToTrade(Location location) {
-        Map<String, Integer> itemMap = new HashMap<>();
+    /**
+     * Load the trader stock ledger from the trades table.
+     */
+    private static void loadLedger() {
+        StockLedger loaded = new StockLedger();
 
         try {
-            PreparedStatement statement = SMDatabase.prepareStatement(
-                "SELECT * FROM trades WHERE 1");
-
-            ResultSet resultSet = statement.executeQuery();
-            while (resultSet.next()) {
-                String material = resultSet.getString("material");
-                Integer quantity = resultSet.getInt("quantity");
-                String itemLocationJson = resultSet.getString("location");
-                String created = resultSet.getString("created");
-                Location itemLocation = SMJson.fromJson(Location.class, itemLocationJson);
-
-                Date createdDate = SMDatabase.DATE_FORMAT.parse(created);
-                long createdMillis = createdDate.getTime();
-                long secondsSinceCreated = (System.currentTimeMillis() - createdMillis) / 1000;
-
-                if (secondsSinceCreated < LESS_THAN_SECONDS_TO_CALCULATE) {
-                    if (location.getWorld().getName().equals(itemLocation.getWorld().getName())) {
-                        Double distance = location.distance(itemLocation);
-                        if (secondsSinceCreated < distance * DELAY_TRADE_BY_BLOCKS) {
-                            continue;
-                        }
-                    } else {
-                        if (secondsSinceCreated < DELAY_TRADE_BETWEEN_WORLDS) {
-                            continue;
+            SMDatabase.read(connection -> {
+                PreparedStatement statement = SMDatabase.prepareCached(connection,
+                    "SELECT material, quantity, world, x, y, z, created FROM trades ORDER BY created");
+
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        try {
+                            long created = SMDatabase.DATE_FORMAT.parse(resultSet.getString("created")).getTime();
+
+                            loaded.add(new TradeLot(resultSet.getString("material"), resultSet.getInt("quantity"),
+                                resultSet.getString("world"), resultSet.getInt("x"), resultSet.getInt("y"),
+                                resultSet.getInt("z"), created));
+                        } catch (ParseException | RuntimeException e) {
+                            e.printStackTrace();
                         }
                     }
                 }
 
-                itemMap.put(material, itemMap.getOrDefault(material, 0) + quantity);
-            }
-        } catch (Exception e) {
+                return null;
+            });
+        } catch (SQLException e) {
             e.printStackTrace();
         }
 
-        return itemMap;
+        ledger = loaded;
     }
 
-    private static void AddItemToTrader(String material, Integer quantity, Location location) {
-        try {
-            PreparedStatement statement = SMDatabase.prepareStatement(
-                "INSERT INTO trades (material, quantity, location) VALUES (?, ?, ?)");
-            statement.setString(1, material);
-            statement.setInt(2, quantity);
-            statement.setString(3, SMJson.toJson(location, Location.class));
-
-            statement.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
+    /**
+     * Update the trader stock with the items sold and bought while the trader was open. The database is updated in a
+     * single transaction on the writer thread.
+     * 
+     * @param sold The quantity of each material sold to the trader.
+     * @param bought The quantity of each material bought from the trader.
+     * @param location The location of the player.
+     */
+    private static void UpdateTraderStock(Map<String, Integer> sold, Map<String, Integer> bought, Location location) {
+        if (sold.isEmpty() && bought.isEmpty()) {
+            return;
         }
-    }
 
-    private static void RemoveItemFromTrader(String material, Integer quantity, Location location) {
-        Integer remaining = quantity;
+        String world = location.getWorld().getName();
+        int x = location.getBlockX();
+        int y = location.getBlockY();
+        int z = location.getBlockZ();
+        long now = System.currentTimeMillis();
+
+        sold.forEach((material, quantity) -> ledger.add(new TradeLot(material, quantity, world, x, y, z, now)));
+        bought.forEach(ledger::remove);
+
+        SMDatabase.executeAsync(connection -> SMDatabase.transaction(connection, transaction -> {
+            if (!sold.isEmpty()) {
+                PreparedStatement statement = SMDatabase.prepareCached(transaction,
+                    "INSERT INTO trades (material, quantity, world, x, y, z) VALUES (?, ?, ?, ?, ?, ?)");
+
+                for (Map.Entry<String, Integer> entry : sold.entrySet()) {
+                    statement.setString(1, entry.getKey());
+                    statement.setInt(2, entry.getValue());
+                    statement.setString(3, world);
+                    statement.setInt(4, x);
+                    statement.setInt(5, y);
+                    statement.setInt(6, z);
+                    statement.addBatch();
+                }
 
-        try {
-            PreparedStatement statement = SMDatabase.prepareStatement(
-                "SELECT * FROM trades WHERE material = ? ORDER BY created");
+                statement.executeBatch();
+            }
+
+            for (Map.Entry<String, Integer> entry : bought.entrySet()) {
+                ConsumeTradeLots(transaction, entry.getKey(), entry.getValue());
+            }
+        }));
+    }
+
+    /**
+     * Move the location JSON of each trade into world and block coordinate columns. The table is rebuilt without the
+     * location column rather than dropping it, as DROP COLUMN needs SQLite 3.35. A location that cannot be converted
+     * fails the migration, so that it is rolled back with the data intact.
+     * 
+     * @param connection The connection to use.
+     * @throws SQLException
+     */
+    static void splitTradesLocation(Connection connection) throws SQLException {
+        List<Long> failed = new ArrayList<>();
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE trades_split (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "material TEXT NOT NULL," +
+                "quantity NUMBER NOT NULL," +
+                "created TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                "world TEXT NOT NULL DEFAULT ''," +
+                "x INTEGER NOT NULL DEFAULT 0," +
+                "y INTEGER NOT NULL DEFAULT 0," +
+                "z INTEGER NOT NULL DEFAULT 0)");
+        }
 
-            ResultSet resultSet = statement.executeQuery();
+        try (PreparedStatement select = connection.prepareStatement(
+            "SELECT id, material, quantity, created, location FROM trades");
+            PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO trades_split (id, material, quantity, created, world, x, y, z) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+            ResultSet resultSet = select.executeQuery()) {
             while (resultSet.next()) {
-                Integer itemId = resultSet.getInt("id");
-                Integer itemQuantity = resultSet.getInt("quantity");
-
-                if (itemQuantity > remaining) {
-                    PreparedStatement updateStatement = SMDatabase.prepareStatement(
-                        "UPDATE trades SET quantity = ? WHERE id = ?");
-                    updateStatement.setInt(1, itemQuantity - remaining);
-                    updateStatement.executeUpdate();
-                    break;
+                long id = resultSet.getLong("id");
+
+                try {
+                    JsonObject location = JsonParser.parseString(resultSet.getString("location")).getAsJsonObject();
+
+                    insert.setString(5, location.get("world").getAsString());
+                    insert.setInt(6, (int) Math.floor(location.get("x").getAsDouble()));
+                    insert.setInt(7, (int) Math.floor(location.get("y").getAsDouble()));
+                    insert.setInt(8, (int) Math.floor(location.get("z").getAsDouble()));
+                } catch (RuntimeException e) {
+                    failed.add(id);
+                    continue;
+                }
+
+                insert.setLong(1, id);
+                insert.setString(2, resultSet.getString("material"));
+                insert.setObject(3, resultSet.getObject("quantity"));
+                insert.setObject(4, resultSet.getObject("created"));
+                insert.addBatch();
+            }
+
+            insert.executeBatch();
+        }
+
+        if (!failed.isEmpty()) {
+            throw new SQLException("The locations of trades " + failed + " could not be converted, fix or remove "
+                + "them and restart the server to run the migration again");
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DROP TABLE trades");
+            statement.executeUpdate("ALTER TABLE trades_split RENAME TO trades");
+            statement.executeUpdate(
+                "CREATE INDEX IF NOT EXISTS idx_trades_material_created ON trades (material, created, id)");
+        }
+    }
+
+    /**
+     * Remove a quantity of a material from the trades table, oldest lots first. Lots that are used up are deleted and
+     * the last lot used is reduced by what remains.
+     * 
+     * @param connection The connection to use.
+     * @param material The material to remove.
+     * @param quantity The quantity to remove.
+     * @return The quantity that could not be removed as there were not enough lots.
+     * @throws SQLException
+     */
+    static int ConsumeTradeLots(Connection connection, String material, int quantity) throws SQLException {
+        int remaining = quantity;
+        List<Long> usedIds = new ArrayList<>();
+        long partialId = -1;
+        int partialQuantity = 0;
+
+        PreparedStatement selectStatement = SMDatabase.prepareCached(connection, CONSUME_QUERY);
+        selectStatement.setString(1, material);
+
+        try (ResultSet resultSet = selectStatement.executeQuery()) {
+            while (remaining > 0 && resultSet.next()) {
+                long id = resultSet.getLong("id");
+                int lotQuantity = resultSet.getInt("quantity");
+
+                if (lotQuantity > remaining) {
+                    partialId = id;
+                    partialQuantity = lotQuantity - remaining;
+                    remaining = 0;
                 } else {
-                    PreparedStatement deleteStatement = SMDatabase.prepareStatement(
-                        "DELETE FROM trades WHERE id = ?");
-                    deleteStatement.setInt(1, itemId);
-                    deleteStatement.executeUpdate();
+                    usedIds.add(id);
+                    remaining -= lotQuantity;
                 }
+            }
+        }
+
+        if (!usedIds.isEmpty()) {
+            PreparedStatement deleteStatement = SMDatabase.prepareCached(connection,
+                "DELETE FROM trades WHERE id = ?");
+            for (Long id : usedIds) {
+                deleteStatement.setLong(1, id);
+                deleteStatement.addBatch();
+            }
+
+            deleteStatement.executeBatch();
+        }
+
+        if (partialId != -1) {
+            PreparedStatement updateStatement = SMDatabase.prepareCached(connection,
+                "UPDATE trades SET quantity = ? WHERE id = ?");
+            updateStatement.setInt(1, partialQuantity);
+            updateStatement.setLong(2, partialId);
+            updateStatement.executeUpdate();
+        }
+
+        return remaining;
+    }
+
+    /**
+     * A quantity of a material sold to the trader, and the block and time it was sold at.
+     */
+    private static class TradeLot {
+        final String material;
+        int quantity;
+        final String world;
+        final int x;
+        final int y;
+        final int z;
+        final long created;
+
+        /**
+         * When the lot becomes available in other worlds, and when it becomes available everywhere.
+         */
+        final long releaseOtherWorlds;
+        final long releaseAll;
+
+        TradeLot(String material, int quantity, String world, int x, int y, int z, long created) {
+            this.material = material;
+            this.quantity = quantity;
+            this.world = SMAdapterLocation.internWorld(world);
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.created = created;
+            this.releaseOtherWorlds = created + DELAY_TRADE_BETWEEN_WORLDS * 1000L;
+            this.releaseAll = created + LESS_THAN_SECONDS_TO_CALCULATE * 1000L;
+        }
+
+        /**
+         * Return if the lot is available to a player at a location.
+         */
+        boolean isAvailableAt(String playerWorld, double playerX, double playerY, double playerZ, long now) {
+            if (now >= releaseAll) {
+                return true;
+            }
+
+            if (!world.equals(playerWorld)) {
+                return now >= releaseOtherWorlds;
+            }
+
+            if (DELAY_TRADE_BY_BLOCKS <= 0) {
+                return true;
+            }
+
+            // Available once the seconds since the trade reach the distance multiplied by the per block delay
+            double reach = (now - created) / 1000d / DELAY_TRADE_BY_BLOCKS;
+            double offsetX = x - playerX;
+            double offsetY = y - playerY;
+            double offsetZ = z - playerZ;
+            return offsetX * offsetX + offsetY * offsetY + offsetZ * offsetZ <= reach * reach;
+        }
+    }
+
+    /**
+     * The trader stock. Lots that have passed the force available delay are merged into a running total per
+     * material. Younger lots are held in a queue in the order they were sold, as their availability still depends on
+     * where the player is.
+     */
+    private static class StockLedger {
+        private final Map<String, Integer> released = new HashMap<>();
+        private final Deque<TradeLot> pending = new ArrayDeque<>();
+
+        /**
+         * Add a lot to the ledger. Lots must be added in the order they were created.
+         */
+        void add(TradeLot lot) {
+            if (System.currentTimeMillis() >= lot.releaseAll) {
+                released.merge(lot.material, lot.quantity, Integer::sum);
+            } else {
+                pending.addLast(lot);
+            }
+        }
 
-                remaining -= itemQuantity;
-                if (remaining <= 0) {
-                    break;
+        /**
+         * Merge any pending lots that are now available everywhere into the released totals.
+         */
+        void release(long now) {
+            while (!pending.isEmpty() && now >= pending.peekFirst().releaseAll) {
+                TradeLot lot = pending.pollFirst();
+                released.merge(lot.material, lot.quantity, Integer::sum);
+            }
+        }
+
+        /**
+         * Get the quantity of each material available to a player at a location.
+         */
+        Map<String, Integer> getAvailable(Location location) {
+            long now = System.currentTimeMillis();
+            release(now);
+
+            Map<String, Integer> available = new HashMap<>(released);
+            String world = location.getWorld().getName();
+
+            for (TradeLot lot : pending) {
+                if (lot.isAvailableAt(world, location.getX(), location.getY(), location.getZ(), now)) {
+                    available.merge(lot.material, lot.quantity, Integer::sum);
                 }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+
+            available.values().removeIf(quantity -> quantity <= 0);
+            return available;
         }
 
+        /**
+         * Remove a quantity of a material, oldest stock first.
+         */
+        void remove(String material, int quantity) {
+            int remaining = quantity;
+
+            Integer releasedQuantity = released.get(material);
+            if (releasedQuantity != null) {
+                int used = Math.min(releasedQuantity, remaining);
+                remaining -= used;
+
+                if (releasedQuantity - used > 0) {
+                    released.put(material, releasedQuantity - used);
+                } else {
+                    released.remove(material);
+                }
+            }
+
+            Iterator<TradeLot> iterator = pending.iterator();
+            while (remaining > 0 && iterator.hasNext()) {
+                TradeLot lot = iterator.next();
+                if (lot.material.equals(material)) {
+                    int used = Math.min(lot.quantity, remaining);
+                    lot.quantity -= used;
+                    remaining -= used;
+
+                    if (lot.quantity <= 0) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
     }
 }
@@ -1,13 +1,16 @@
 package com.stemcraft.feature;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
-import org.bukkit.Bukkit;
+import java.util.Map;
 import org.bukkit.GameMode;
 import org.bukkit.Location;
 import org.bukkit.Material;
@@ -33,6 +36,16 @@ import com.stemcraft.core.event.SMEvent;
 public class SMWaystones extends SMFeature {
     private List<String> waystoneTypes = Arrays.asList("GOLD_BLOCK", "EMERALD_BLOCK", "DIAMOND_BLOCK");
 
+    /**
+     * The maximum distance on each axis to search for a linked waystone.
+     */
+    private static final int SEARCH_DISTANCE = 4000;
+
+    /**
+     * The in memory index of all registered waystones.
+     */
+    private final WaystoneIndex index = new WaystoneIndex();
+
     @Override
     protected Boolean onEnable() {
         // Add database migration
@@ -47,25 +60,23 @@ public class SMWaystones extends SMFeature {
                 "under_block TEXT NOT NULL)").executeUpdate();
         });
 
+        loadWaystones();
+
         SMEvent.register(BlockBreakEvent.class, ctx -> {
             Block block = ctx.event.getBlock();
+            List<WaystoneRow> removed = new ArrayList<>();
+
             if (block.getType() == Material.LODESTONE) {
-                try {
-                    this.removeWaystone(block);
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
+                this.removeWaystone(block, removed);
             } else {
                 Block blockAbove = block.getRelative(BlockFace.UP);
 
                 if (blockAbove.getType() == Material.LODESTONE) {
-                    try {
-                        this.removeWaystone(blockAbove);
-                    } catch (SQLException e) {
-                        e.printStackTrace();
-                    }
+                    this.removeWaystone(blockAbove, removed);
                 }
             }
+
+            saveWaystones(Collections.emptyList(), removed);
         });
 
         SMEvent.register(BlockPlaceEvent.class, ctx -> {
@@ -73,11 +84,9 @@ public class SMWaystones extends SMFeature {
             Block waystone = isValidWaystone(block);
 
             if(waystone != null) {
-                try {
-                    insertWaystone(waystone);
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
+                List<WaystoneRow> inserted = new ArrayList<>();
+                insertWaystone(waystone, inserted);
+                saveWaystones(inserted, Collections.emptyList());
             }
         });
 
@@ -92,69 +101,68 @@ public class SMWaystones extends SMFeature {
             STEMCraft.runOnce("waystone-" + player.getName(), 5L, () -> {
                 if(player.getGameMode() == GameMode.SURVIVAL && ctx.event.getAction() == Action.RIGHT_CLICK_BLOCK) {
                     if (clickedBlock.getType() == Material.LODESTONE && (player.getInventory().getItemInMainHand() == null || player.getInventory().getItemInMainHand().getType().equals(Material.AIR))) {
-                        if(this.checkWaystoneExists(clickedBlock.getLocation())) {
-                            this.teleportToNearestWaystone(clickedBlock.getLocation(), player);
-                        }
+                        this.teleportToNearestWaystone(clickedBlock.getLocation(), player);
                     }
                 }
             });
         });
 
         SMEvent.register(EntityExplodeEvent.class, ctx -> {
-            List<Location> locations = ctx.event.blockList().stream()
-                .map(Block::getLocation)
-                .collect(Collectors.toList());
-
-            try {
-                removeWaystones(locations);
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+            removeWaystones(ctx.event.blockList());
         });
 
         SMEvent.register(BlockPistonExtendEvent.class, ctx -> {
-            List<Location> blockLocations = getPistonBlockLocations(ctx.event.getBlocks(), ctx.event.getDirection());
-
-            try {
-                updateWaystone(blockLocations);
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+            updateWaystones(ctx.event.getBlock().getWorld(),
+                getPistonPositions(getPositions(ctx.event.getBlocks()), ctx.event.getDirection()));
         });
 
         SMEvent.register(BlockPistonRetractEvent.class, ctx -> {
-            List<Location> blockLocations = getPistonBlockLocations(ctx.event.getBlocks(), ctx.event.getDirection());
-            try {
-                updateWaystone(blockLocations);
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+            updateWaystones(ctx.event.getBlock().getWorld(),
+                getPistonPositions(getPositions(ctx.event.getBlocks()), ctx.event.getDirection()));
         });
 
         return true;
     }
 
     /**
-     * Include the blocks before and after the list of blocks in the direction of the piston
+     * Return the positions of a list of blocks.
+     * @param blocks
+     * @return The positions as {x, y, z}.
      */
-    private List<Location> getPistonBlockLocations(List<Block> blocks, BlockFace direction) {
-        List<Location> extendedLocations = new ArrayList<>();
-        
+    private static List<int[]> getPositions(List<Block> blocks) {
+        List<int[]> positions = new ArrayList<>(blocks.size());
         for (Block block : blocks) {
-            extendedLocations.add(block.getLocation());
+            positions.add(new int[] {block.getX(), block.getY(), block.getZ()});
+        }
 
-            Block target = block.getRelative(direction.getOppositeFace());
-            if(target != null) {
-                extendedLocations.add(target.getLocation()); // Block before the move
-            }
+        return positions;
+    }
 
-            target = block.getRelative(direction);
-            if(target != null) {
-                extendedLocations.add(target.getLocation()); // Block before after move
+    /**
+     * Return the positions to check after a piston has moved blocks. These are the moved blocks, the blocks before and
+     * after them in the direction of the piston and the block above each of those, without duplicates.
+     * @param blocks The positions of the moved blocks.
+     * @param direction The direction of the piston.
+     * @return The positions as {x, y, z}.
+     */
+    static List<int[]> getPistonPositions(List<int[]> blocks, BlockFace direction) {
+        Map<Long, int[]> positions = new LinkedHashMap<>();
+        int dx = direction.getModX();
+        int dy = direction.getModY();
+        int dz = direction.getModZ();
+
+        for (int[] block : blocks) {
+            for (int offset = -1; offset <= 1; offset++) {
+                int x = block[0] + dx * offset;
+                int y = block[1] + dy * offset;
+                int z = block[2] + dz * offset;
+
+                positions.putIfAbsent(WaystoneIndex.packPosition(x, y, z), new int[] {x, y, z});
+                positions.putIfAbsent(WaystoneIndex.packPosition(x, y + 1, z), new int[] {x, y + 1, z});
             }
         }
 
-        return extendedLocations;
+        return new ArrayList<>(positions.values());
     }
 
     /**
@@ -179,187 +187,437 @@ public class SMWaystones extends SMFeature {
     }
 
     /**
-     * Remove a Waystone
+     * Load all waystones from the database into the index.
+     */
+    private void loadWaystones() {
+        index.clear();
+
+        try {
+            SMDatabase.read(connection -> {
+                PreparedStatement statement = SMDatabase.prepareCached(connection,
+                    "SELECT world, x, y, z, under_block FROM waystones");
+
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        index.add(resultSet.getString("world"), resultSet.getInt("x"), resultSet.getInt("y"),
+                            resultSet.getInt("z"), resultSet.getString("under_block"));
+                    }
+                }
+
+                return null;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Remove a Waystone from the index. The removed waystone is added to the list to be saved.
      * @param block
-     * @throws SQLException
+     * @param removed
      */
-    private void removeWaystone(Block block) throws SQLException {
-        PreparedStatement statement = SMDatabase.prepareStatement(
-                "DELETE FROM waystones WHERE world = ? AND x = ? AND y = ? AND z = ?"
-        );
-        statement.setString(1, block.getWorld().getName());
-        statement.setInt(2, block.getX());
-        statement.setInt(3, block.getY());
-        statement.setInt(4, block.getZ());
-        statement.executeUpdate();
-        statement.close();
-
-        block.getWorld().playSound(block.getLocation(), Sound.BLOCK_BEACON_DEACTIVATE, 0.5f, 2.0f);
+    private void removeWaystone(Block block, List<WaystoneRow> removed) {
+        String world = block.getWorld().getName();
+        int x = block.getX();
+        int y = block.getY();
+        int z = block.getZ();
+
+        if (index.remove(world, x, y, z)) {
+            removed.add(new WaystoneRow(world, x, y, z, null));
+            block.getWorld().playSound(block.getLocation(), Sound.BLOCK_BEACON_DEACTIVATE, 0.5f, 2.0f);
+        }
     }
 
     /**
-     * Remove a list of blocks that could be a waystone
+     * Remove any waystones that are part of a list of blocks. A waystone is affected if either its lodestone or the
+     * block below is in the list.
      * @param blocks
-     * @throws SQLException
      */
-    private void removeWaystones(List<Location> locations) throws SQLException {
-        if (locations.isEmpty()) return;
-    
-        for (Location location : locations) {
-            Block waystone = isValidWaystone(location.getBlock());
-            if(waystone != null) {
-                removeWaystone(waystone);
+    private void removeWaystones(List<Block> blocks) {
+        if (blocks.isEmpty()) return;
+
+        World world = blocks.get(0).getWorld();
+        List<WaystoneRow> removed = new ArrayList<>();
+        removeWaystones(index, world.getName(), getPositions(blocks), removed);
+
+        playSound(world, removed, Sound.BLOCK_BEACON_DEACTIVATE);
+        saveWaystones(Collections.emptyList(), removed);
+    }
+
+    /**
+     * Remove the waystones whose lodestone or under block is at one of a list of positions from an index.
+     * @param index The waystone index.
+     * @param world The world name.
+     * @param positions The positions as {x, y, z}.
+     * @param removed The list the removed waystones are added to.
+     */
+    static void removeWaystones(WaystoneIndex index, String world, List<int[]> positions, List<WaystoneRow> removed) {
+        for (int[] position : positions) {
+            int x = position[0];
+            int y = position[1];
+            int z = position[2];
+
+            if (index.remove(world, x, y, z)) {
+                removed.add(new WaystoneRow(world, x, y, z, null));
+            } else if (index.remove(world, x, y + 1, z)) {
+                removed.add(new WaystoneRow(world, x, y + 1, z, null));
             }
         }
     }
 
-    private void updateWaystone(List<Location> locations) throws SQLException {
-        STEMCraft.runLater(5, () -> {
-            try {
+    /**
+     * Sync the waystones table with the blocks at the positions after a piston has moved them.
+     * @param world
+     * @param positions
+     */
+    private void updateWaystones(World world, List<int[]> positions) {
+        if (positions.isEmpty()) return;
 
-                for(Location location : locations) {
-                    Location above = location.add(0f, 1f, 0f);
-                    Block waystone = isValidWaystone(above.getBlock());
-                    Boolean exists = checkWaystoneExists(above);
+        STEMCraft.runLater(5, () -> {
+            List<WaystoneRow> inserted = new ArrayList<>();
+            List<WaystoneRow> removed = new ArrayList<>();
 
-                    if(exists && (waystone == null || !waystone.getLocation().equals(above))) {
-                        removeWaystone(above.getBlock());
-                    } else if(!exists && waystone != null && waystone.getLocation().equals(above)) {
-                        insertWaystone(waystone);
-                    }
+            updateWaystones(index, world.getName(), positions, (x, y, z) -> {
+                Block block = world.getBlockAt(x, y, z);
+                if (block.getType() != Material.LODESTONE || isValidWaystone(block) == null) {
+                    return null;
                 }
 
-                for(Location location : locations) {
-                    Block waystone = isValidWaystone(location.getBlock());
-                    Boolean exists = checkWaystoneExists(location);
+                return block.getRelative(BlockFace.DOWN).getType().name();
+            }, inserted, removed);
 
-                    if(exists && (waystone == null || !waystone.getLocation().equals(location))) {
-                        removeWaystone(location.getBlock());
-                    } else if(!exists && waystone != null && waystone.getLocation().equals(location)) {
-                        insertWaystone(waystone);
-                    }
-                }
-            } catch(Exception e) {
-                e.printStackTrace();
-            }
+            playSound(world, removed, Sound.BLOCK_BEACON_DEACTIVATE);
+            playSound(world, inserted, Sound.BLOCK_BEACON_ACTIVATE);
+            saveWaystones(inserted, removed);
         });
     }
 
     /**
-     * Insert a waystone
+     * Update an index with the waystones found at a list of positions. A waystone in the index is removed when its
+     * position no longer holds a waystone, and a waystone found at a position that is not indexed is added.
+     * @param index The waystone index.
+     * @param world The world name.
+     * @param positions The positions as {x, y, z}.
+     * @param lookup Returns the under block of the waystone at a position.
+     * @param inserted The list the added waystones are added to.
+     * @param removed The list the removed waystones are added to.
      */
-    private void insertWaystone(Block block) throws SQLException {
+    static void updateWaystones(WaystoneIndex index, String world, List<int[]> positions, WaystoneLookup lookup,
+        List<WaystoneRow> inserted, List<WaystoneRow> removed) {
+        for (int[] position : positions) {
+            int x = position[0];
+            int y = position[1];
+            int z = position[2];
+            boolean exists = index.contains(world, x, y, z);
+            String underBlock = lookup.getUnderBlock(x, y, z);
+
+            if (exists && underBlock == null) {
+                index.remove(world, x, y, z);
+                removed.add(new WaystoneRow(world, x, y, z, null));
+            } else if (!exists && underBlock != null) {
+                index.add(world, x, y, z, underBlock);
+                inserted.add(new WaystoneRow(world, x, y, z, underBlock));
+            }
+        }
+    }
+
+    /**
+     * Play a sound at each waystone in a list.
+     * @param world
+     * @param waystones
+     * @param sound
+     */
+    private static void playSound(World world, List<WaystoneRow> waystones, Sound sound) {
+        for (WaystoneRow row : waystones) {
+            world.playSound(new Location(world, row.x, row.y, row.z), sound, 0.5f, 2.0f);
+        }
+    }
+
+    /**
+     * Add a waystone to the index. The added waystone is added to the list to be saved.
+     * @param block
+     * @param inserted
+     */
+    private void insertWaystone(Block block, List<WaystoneRow> inserted) {
         Block blockBelow = block.getRelative(BlockFace.DOWN);
 
         String blockBelowName = blockBelow.getType().name();
         if(this.waystoneTypes.contains(blockBelowName)) {
-            PreparedStatement statement = SMDatabase.prepareStatement(
-                    "INSERT INTO waystones (world, x, y, z, under_block) VALUES (?, ?, ?, ?, ?)"
-            );
-            statement.setString(1, block.getWorld().getName());
-            statement.setInt(2, block.getX());
-            statement.setInt(3, block.getY());
-            statement.setInt(4, block.getZ());
-            statement.setString(5, blockBelowName);
-            statement.executeUpdate();
-            statement.close();
-
-            block.getWorld().playSound(block.getLocation(), Sound.BLOCK_BEACON_ACTIVATE, 0.5f, 2.0f);
+            String world = block.getWorld().getName();
+            int x = block.getX();
+            int y = block.getY();
+            int z = block.getZ();
+
+            if (index.add(world, x, y, z, blockBelowName)) {
+                inserted.add(new WaystoneRow(world, x, y, z, blockBelowName));
+                block.getWorld().playSound(block.getLocation(), Sound.BLOCK_BEACON_ACTIVATE, 0.5f, 2.0f);
+            }
         }
     }
 
-    public boolean checkWaystoneExists(Location location) {
-        try {
-            String query = "SELECT COUNT(*) FROM waystones WHERE x = ? AND y = ? AND z = ? AND world = ?";
-            PreparedStatement statement = SMDatabase.prepareStatement(query);
-            statement.setInt(1, location.getBlockX());
-            statement.setInt(2, location.getBlockY());
-            statement.setInt(3, location.getBlockZ());
-            statement.setString(4, location.getWorld().getName());
-            
-            // Execute the query and retrieve the result
-            ResultSet resultSet = statement.executeQuery();
-            if (resultSet.next()) {
-                int count = resultSet.getInt(1);
-                return count > 0; // If count > 0, location is registered; otherwise, it is not
+    /**
+     * Write inserted and removed waystones to the database in a single transaction.
+     * @param inserted
+     * @param removed
+     */
+    private void saveWaystones(List<WaystoneRow> inserted, List<WaystoneRow> removed) {
+        if (inserted.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+
+        SMDatabase.executeAsync(connection -> {
+            SMDatabase.transaction(connection, transaction -> writeWaystones(transaction, inserted, removed));
+        });
+    }
+
+    /**
+     * Write inserted and removed waystones to the database as one batch of each.
+     * @param connection
+     * @param inserted
+     * @param removed
+     * @throws SQLException
+     */
+    static void writeWaystones(Connection connection, List<WaystoneRow> inserted, List<WaystoneRow> removed)
+        throws SQLException {
+        if (!removed.isEmpty()) {
+            PreparedStatement statement = SMDatabase.prepareCached(connection,
+                "DELETE FROM waystones WHERE world = ? AND x = ? AND y = ? AND z = ?");
+            for (WaystoneRow row : removed) {
+                statement.setString(1, row.world);
+                statement.setInt(2, row.x);
+                statement.setInt(3, row.y);
+                statement.setInt(4, row.z);
+                statement.addBatch();
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            statement.executeBatch();
+        }
+
+        if (!inserted.isEmpty()) {
+            PreparedStatement statement = SMDatabase.prepareCached(connection,
+                "INSERT INTO waystones (world, x, y, z, under_block) VALUES (?, ?, ?, ?, ?)");
+            for (WaystoneRow row : inserted) {
+                statement.setString(1, row.world);
+                statement.setInt(2, row.x);
+                statement.setInt(3, row.y);
+                statement.setInt(4, row.z);
+                statement.setString(5, row.underBlock);
+                statement.addBatch();
+            }
+            statement.executeBatch();
         }
-        
-        return false; // Default return value if there's an error or no result found
+    }
+
+    /**
+     * Check if a waystone is registered at a location.
+     * @param location
+     * @return
+     */
+    public boolean checkWaystoneExists(Location location) {
+        return index.contains(location.getWorld().getName(), location.getBlockX(), location.getBlockY(),
+            location.getBlockZ());
     }
 
     private void teleportToNearestWaystone(Location location, Player player) {
+        if (!checkWaystoneExists(location)) {
+            return;
+        }
+
         Block underBlock = location.getBlock().getRelative(BlockFace.DOWN);
-        
-        World world = location.getWorld();
-        int x = location.getBlockX();
-        int y = location.getBlockY();
-        int z = location.getBlockZ();
-        
-        // Adjust the coordinates by +/- 1000
-        int search = 4000;
-        int minX = x - search;
-        int minY = y - search;
-        int minZ = z - search;
-        int maxX = x + search;
-        int maxY = y + search;
-        int maxZ = z + search;
-        
-        try {
-            PreparedStatement statement = SMDatabase.prepareStatement(
-                    "SELECT * FROM waystones WHERE under_block = ? AND world = ? AND x BETWEEN ? AND ? AND y BETWEEN ? AND ? AND z BETWEEN ? AND ?"
-            );
-            statement.setString(1, underBlock.getType().name());
-            statement.setString(2, world.getName());
-            statement.setInt(3, minX);
-            statement.setInt(4, maxX);
-            statement.setInt(5, minY);
-            statement.setInt(6, maxY);
-            statement.setInt(7, minZ);
-            statement.setInt(8, maxZ);
-            
-            ResultSet resultSet = statement.executeQuery();
-
-            Location closestWaystoneLocation = null;
-            double closestDistance = Double.MAX_VALUE;
-
-            while (resultSet.next()) {
-                String resultWorldName = resultSet.getString("world");
-                int resultX = resultSet.getInt("x");
-                int resultY = resultSet.getInt("y");
-                int resultZ = resultSet.getInt("z");
-
-                if(!resultWorldName.equalsIgnoreCase(location.getWorld().getName()) || resultX != location.getBlockX() || resultY != location.getBlockY() || resultZ != location.getBlockZ()) {
-                    Location waystoneLocation = new Location(Bukkit.getWorld(resultWorldName), resultX, resultY, resultZ);
-                    double distance = waystoneLocation.distance(location);
-                    if (distance < closestDistance) {
-                        closestWaystoneLocation = waystoneLocation;
-                        closestDistance = distance;
-                    }
-                }
+        int[] waystone = index.nearest(location.getWorld().getName(), underBlock.getType().name(),
+            location.getBlockX(), location.getBlockY(), location.getBlockZ(), SEARCH_DISTANCE);
+
+        Location closestWaystoneLocation = null;
+        if (waystone != null) {
+            closestWaystoneLocation = new Location(location.getWorld(), waystone[0], waystone[1], waystone[2]);
+        }
+
+        if (closestWaystoneLocation != null) {
+            // Teleport the player to a safe location near the closest waystone
+            Location safeLocation = SMCommon.findSafeLocation(closestWaystoneLocation, 6, true);
+            if (safeLocation != null) {
+                STEMCraft.runLater(() -> {
+                    location.getWorld().playSound(location, Sound.BLOCK_METAL_PRESSURE_PLATE_CLICK_OFF, 1f, 0.5f);
+                    location.getWorld().playSound(location, Sound.BLOCK_BEACON_ACTIVATE, 0.5f, 3f);
+                    player.teleport(safeLocation);
+                    location.getWorld().playSound(safeLocation, Sound.BLOCK_BEACON_ACTIVATE, 0.5f, 3f);
+                    location.getWorld().playSound(safeLocation, Sound.ENTITY_ENDERMAN_TELEPORT, 1f, 1f);
+                });
+            } else {
+                player.sendMessage("Unable to find a safe location near the waystone");
             }
+        } else {
+            SMMessenger.infoLocale(player, "WAYSTONE_NONE_FOUND");
+        }
+    }
+
+    /**
+     * Returns the under block of the waystone whose lodestone is at a position, or null if there is no waystone.
+     */
+    @FunctionalInterface
+    interface WaystoneLookup {
+        String getUnderBlock(int x, int y, int z);
+    }
+
+    /**
+     * A waystone to be written to the database.
+     */
+    static class WaystoneRow {
+        final String world;
+        final int x;
+        final int y;
+        final int z;
+        final String underBlock;
+
+        WaystoneRow(String world, int x, int y, int z, String underBlock) {
+            this.world = world;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.underBlock = underBlock;
+        }
+    }
 
-            if (closestWaystoneLocation != null) {
-                // Teleport the player to a safe location near the closest waystone
-                Location safeLocation = SMCommon.findSafeLocation(closestWaystoneLocation, 6, true);
-                if (safeLocation != null) {
-                    STEMCraft.runLater(() -> {
-                        location.getWorld().playSound(location, Sound.BLOCK_METAL_PRESSURE_PLATE_CLICK_OFF, 1f, 0.5f);
-                        location.getWorld().playSound(location, Sound.BLOCK_BEACON_ACTIVATE, 0.5f, 3f);
-                        player.teleport(safeLocation);
-                        location.getWorld().playSound(safeLocation, Sound.BLOCK_BEACON_ACTIVATE, 0.5f, 3f);
-                        location.getWorld().playSound(safeLocation, Sound.ENTITY_ENDERMAN_TELEPORT, 1f, 1f);
-                    });
-                } else {
-                    player.sendMessage("Unable to find a safe location near the waystone");
+    /**
+     * An in memory index of waystones. Waystones are grouped by world and under block, then bucketed into a grid of
+     * columns so that a nearest search only visits nearby cells. Only accessed from the main thread.
+     */
+    static class WaystoneIndex {
+        /**
+         * The width and depth of each grid cell in blocks.
+         */
+        private static final int CELL_SIZE = 128;
+
+        private final Map<String, Map<Long, String>> positions = new HashMap<>();
+        private final Map<String, Map<String, Map<Long, List<int[]>>>> cells = new HashMap<>();
+
+        /**
+         * Remove all waystones from the index.
+         */
+        public void clear() {
+            positions.clear();
+            cells.clear();
+        }
+
+        /**
+         * Add a waystone to the index.
+         *
+         * @return If the waystone was added. False if there was already a waystone at the position.
+         */
+        public boolean add(String world, int x, int y, int z, String underBlock) {
+            Map<Long, String> worldPositions = positions.computeIfAbsent(world, k -> new HashMap<>());
+            if (worldPositions.putIfAbsent(packPosition(x, y, z), underBlock) != null) {
+                return false;
+            }
+
+            cells.computeIfAbsent(world, k -> new HashMap<>())
+                .computeIfAbsent(underBlock, k -> new HashMap<>())
+                .computeIfAbsent(packCell(Math.floorDiv(x, CELL_SIZE), Math.floorDiv(z, CELL_SIZE)),
+                    k -> new ArrayList<>())
+                .add(new int[] {x, y, z});
+            return true;
+        }
+
+        /**
+         * Remove a waystone from the index.
+         *
+         * @return If a waystone was removed.
+         */
+        public boolean remove(String world, int x, int y, int z) {
+            Map<Long, String> worldPositions = positions.get(world);
+            if (worldPositions == null) {
+                return false;
+            }
+
+            String underBlock = worldPositions.remove(packPosition(x, y, z));
+            if (underBlock == null) {
+                return false;
+            }
+
+            long cellKey = packCell(Math.floorDiv(x, CELL_SIZE), Math.floorDiv(z, CELL_SIZE));
+            Map<Long, List<int[]>> typeCells = cells.get(world).get(underBlock);
+            List<int[]> cell = typeCells.get(cellKey);
+            cell.removeIf(waystone -> waystone[0] == x && waystone[1] == y && waystone[2] == z);
+            if (cell.isEmpty()) {
+                typeCells.remove(cellKey);
+            }
+
+            return true;
+        }
+
+        /**
+         * Return if there is a waystone at the position.
+         */
+        public boolean contains(String world, int x, int y, int z) {
+            Map<Long, String> worldPositions = positions.get(world);
+            return worldPositions != null && worldPositions.containsKey(packPosition(x, y, z));
+        }
+
+        /**
+         * Find the nearest waystone of a type, excluding the waystone at the position itself.
+         *
+         * @param distance The maximum distance on each axis.
+         * @return The waystone position as {x, y, z}, or null if none is in range.
+         */
+        public int[] nearest(String world, String underBlock, int x, int y, int z, int distance) {
+            Map<String, Map<Long, List<int[]>>> worldCells = cells.get(world);
+            Map<Long, List<int[]>> typeCells = worldCells != null ? worldCells.get(underBlock) : null;
+            if (typeCells == null || typeCells.isEmpty()) {
+                return null;
+            }
+
+            int cellX = Math.floorDiv(x, CELL_SIZE);
+            int cellZ = Math.floorDiv(z, CELL_SIZE);
+            int maxRing = Math.floorDiv(distance, CELL_SIZE) + 1;
+            int[] closest = null;
+            long closestDistance = Long.MAX_VALUE;
+
+            for (int ring = 0; ring <= maxRing; ring++) {
+                // Waystones in later rings are at least this far away horizontally
+                long ringDistance = (long) (ring - 1) * CELL_SIZE;
+                if (closest != null && ring > 0 && ringDistance * ringDistance >= closestDistance) {
+                    break;
+                }
+
+                for (int dx = -ring; dx <= ring; dx++) {
+                    for (int dz = -ring; dz <= ring; dz++) {
+                        if (Math.abs(dx) != ring && Math.abs(dz) != ring) {
+                            continue;
+                        }
+
+                        List<int[]> cell = typeCells.get(packCell(cellX + dx, cellZ + dz));
+                        if (cell == null) {
+                            continue;
+                        }
+
+                        for (int[] waystone : cell) {
+                            long offsetX = waystone[0] - x;
+                            long offsetY = waystone[1] - y;
+                            long offsetZ = waystone[2] - z;
+
+                            if ((offsetX == 0 && offsetY == 0 && offsetZ == 0) || Math.abs(offsetX) > distance
+                                || Math.abs(offsetY) > distance || Math.abs(offsetZ) > distance) {
+                                continue;
+                            }
+
+                            long waystoneDistance = offsetX * offsetX + offsetY * offsetY + offsetZ * offsetZ;
+                            if (waystoneDistance < closestDistance) {
+                                closest = waystone;
+                                closestDistance = waystoneDistance;
+                            }
+                        }
+                    }
                 }
-            } else {
-                SMMessenger.infoLocale(player, "WAYSTONE_NONE_FOUND");
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+
+            return closest;
+        }
+
+        static long packPosition(int x, int y, int z) {
+            return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+        }
+
+        private static long packCell(int cellX, int cellZ) {
+            return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
         }
     }
 }
@@ -1,5 +1,6 @@
 package com.stemcraft.feature;
 
+import java.util.Arrays;
 import org.bukkit.entity.Player;
 import com.stemcraft.core.SMBridge;
 import com.stemcraft.core.SMFeature;
@@ -10,6 +11,11 @@ import com.stemcraft.core.command.SMCommand;
  */
 public class SMWorkbench extends SMFeature {
 
+    public SMWorkbench() {
+        lazyCommands.addAll(Arrays.asList("workbench", "anvil", "cartographytable", "grindstone", "loom",
+            "smithingtable", "stonecutter"));
+    }
+
     /**
      * When feature is enabled
      */
@@ -121,8 +121,9 @@ public class SMWorkshop extends SMFeature {
         });
 
         SMEvent.register(PlayerTeleportEvent.class, ctx -> {
+            PlayerTeleportEvent event = ctx.event;
             STEMCraft.runLater(5, () -> {
-                checkRegionMove(ctx.event.getPlayer(), ctx.event.getFrom(), ctx.event.getTo());
+                checkRegionMove(event.getPlayer(), event.getFrom(), event.getTo());
             });
         });
 
@@ -0,0 +1,115 @@
+package com.stemcraft;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * Measures the average time and heap allocation of an operation for the tests tagged "benchmark". These are run with
+ * "mvn test -Pbenchmark" and print their results rather than asserting on them, as timings depend on the machine.
+ */
+public final class SMBenchmark {
+    /**
+     * An operation to measure. The value returned is kept so that the work cannot be optimised away.
+     */
+    @FunctionalInterface
+    public interface Operation {
+        Object run() throws Exception;
+    }
+
+    /**
+     * The result of measuring an operation.
+     */
+    public static final class Result {
+        public final String name;
+        public final double nanosPerOp;
+        public final double bytesPerOp;
+
+        Result(String name, double nanosPerOp, double bytesPerOp) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-40s %12.1f ns/op %12.1f B/op", name, nanosPerOp, bytesPerOp);
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean threads = threadBean();
+
+    /**
+     * Receives the values returned by operations.
+     */
+    private static volatile int sink;
+
+    private SMBenchmark() {
+    }
+
+    /**
+     * Run an operation to warm it up, then measure it and print the result.
+     *
+     * @param name The name to print.
+     * @param iterations The number of measured runs. The same number of runs is used to warm up.
+     * @param operation The operation.
+     * @return The result.
+     * @throws Exception
+     */
+    public static Result measure(String name, int iterations, Operation operation) throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            consume(operation.run());
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long startBytes = allocatedBytes(threadId);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            consume(operation.run());
+        }
+
+        long elapsed = System.nanoTime() - start;
+        long bytes = allocatedBytes(threadId) - startBytes;
+
+        double bytesPerOp = startBytes < 0 ? -1 : (double) bytes / iterations;
+        Result result = new Result(name, (double) elapsed / iterations, bytesPerOp);
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * Print how a result compares with a baseline.
+     *
+     * @param baseline The baseline result.
+     * @param result The result to compare.
+     */
+    public static void compare(Result baseline, Result result) {
+        String allocation = baseline.bytesPerOp > 0
+            ? String.format(Locale.ROOT, "%11.2fx allocation", result.bytesPerOp / baseline.bytesPerOp)
+            : String.format(Locale.ROOT, "%11.1f B/op more allocation", result.bytesPerOp - baseline.bytesPerOp);
+
+        System.out.println(String.format(Locale.ROOT, "%-40s %11.2fx time %s", result.name + " vs " + baseline.name,
+            result.nanosPerOp / baseline.nanosPerOp, allocation));
+    }
+
+    private static void consume(Object value) {
+        sink += value == null ? 0 : System.identityHashCode(value);
+    }
+
+    private static long allocatedBytes(long threadId) {
+        return threads != null ? threads.getThreadAllocatedBytes(threadId) : -1;
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+            if (bean.isThreadAllocatedMemorySupported()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+                return bean;
+            }
+        }
+
+        return null;
+    }
+}
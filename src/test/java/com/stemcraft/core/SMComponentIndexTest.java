@@ -0,0 +1,140 @@
+package com.stemcraft.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import com.stemcraft.SMBenchmark;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads the component index the build writes into the class output and checks it lists the same components as
+ * scanning a jar of that output.
+ */
+class SMComponentIndexTest {
+    @Test
+    void readsTheIndexWrittenByTheBuild() throws Exception {
+        URL url = SMComponentIndexTest.class.getClassLoader().getResource(SMComponentIndex.RESOURCE);
+        assertNotNull(url, "The component index is written to the class output by the process-classes phase");
+
+        Map<String, List<String>> index;
+        try (InputStream stream = url.openStream()) {
+            index = SMComponentIndex.read(stream);
+        }
+
+        Path classes = Paths.get(url.toURI()).getParent();
+        Map<String, List<String>> scanned = SMComponentIndex.scan(new JarInputStream(
+            new ByteArrayInputStream(createJar(classes))));
+
+        assertEquals(sorted(scanned), sorted(index));
+        assertTrue(index.get("feature").contains("com.stemcraft.feature.SMWaystones"));
+        assertTrue(index.get("adapter").contains("com.stemcraft.core.adapters.SMAdapterItemStackArray"));
+        assertTrue(index.get("locale").contains("messages_en.yml"));
+    }
+
+    @Test
+    void readsLineSeparatorsAndBlankLines() throws IOException {
+        // A type with no components is written as a blank line, and Windows builds write CRLF
+        String text = "feature com.stemcraft.feature.SMHub\r\nfeature com.stemcraft.feature.SMJail\r\n\r\n"
+            + "locale messages_en.yml \r\nmalformed\r\n";
+
+        Map<String, List<String>> index = SMComponentIndex.read(
+            new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(Map.of(
+            "feature", List.of("com.stemcraft.feature.SMHub", "com.stemcraft.feature.SMJail"),
+            "locale", List.of("messages_en.yml")), index);
+    }
+
+    @Test
+    void scansOnlyTopLevelComponents() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JarOutputStream jar = new JarOutputStream(bytes)) {
+            for (String name : List.of("com/stemcraft/feature/SMHub.class", "com/stemcraft/feature/SMHub$1.class",
+                "com/stemcraft/feature/sub/SMNested.class", "com/stemcraft/core/adapters/SMAdapterLocation.class",
+                "com/stemcraft/core/SMJson.class", "com/stemcraft/feature/README.txt", "messages_en.yml",
+                "config.yml", "lang/messages_fr.yml")) {
+                jar.putNextEntry(new JarEntry(name));
+                jar.closeEntry();
+            }
+        }
+
+        Map<String, List<String>> index = SMComponentIndex.scan(new JarInputStream(
+            new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(Map.of(
+            "feature", List.of("com.stemcraft.feature.SMHub", "com.stemcraft.feature.sub.SMNested"),
+            "adapter", List.of("com.stemcraft.core.adapters.SMAdapterLocation"),
+            "locale", List.of("messages_en.yml")), index);
+    }
+
+    /**
+     * Compares loading the index with scanning a jar of the class output, which is what happens when the plugin is
+     * built without the index. The plugin jar also holds the shaded dependencies, so a real scan takes longer.
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmarkIndexAgainstScan() throws Exception {
+        URL url = SMComponentIndexTest.class.getClassLoader().getResource(SMComponentIndex.RESOURCE);
+        byte[] index;
+        try (InputStream stream = url.openStream()) {
+            index = stream.readAllBytes();
+        }
+
+        byte[] jar = createJar(Paths.get(url.toURI()).getParent());
+        int iterations = 2000;
+
+        SMBenchmark.Result scan = SMBenchmark.measure("jar scan, " + jar.length / 1024 + " KB", iterations,
+            () -> SMComponentIndex.scan(new JarInputStream(new ByteArrayInputStream(jar))));
+        SMBenchmark.Result read = SMBenchmark.measure("index load, " + index.length + " bytes", iterations,
+            () -> SMComponentIndex.read(new ByteArrayInputStream(index)));
+        SMBenchmark.compare(scan, read);
+    }
+
+    /**
+     * Create a jar of every file below a directory.
+     */
+    private static byte[] createJar(Path directory) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (JarOutputStream jar = new JarOutputStream(bytes); Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                String name = directory.relativize(file).toString().replace('\\', '/');
+                jar.putNextEntry(new JarEntry(name));
+                jar.write(Files.readAllBytes(file));
+                jar.closeEntry();
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static Map<String, List<String>> sorted(Map<String, List<String>> index) {
+        Map<String, List<String>> sorted = new TreeMap<>();
+        for (Map.Entry<String, List<String>> entry : index.entrySet()) {
+            List<String> names = new ArrayList<>(entry.getValue());
+            names.sort(null);
+            sorted.put(entry.getKey(), names);
+        }
+
+        return sorted;
+    }
+}
@@ -0,0 +1,197 @@
+package com.stemcraft.core.adapters;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.stemcraft.SMBenchmark;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes an inventory saved by the old tree based adapters. Creating an ItemStack from its map needs a
+ * running server, so the items are handled by an adapter that keeps the map read or written for each stack.
+ */
+class SMAdapterItemStackArrayTest {
+    private static final String GOLDEN = "inventory-1.19.4.json";
+
+    /**
+     * Reads and writes items as their serialization maps. The maps read are kept while recording.
+     */
+    static class MapItemAdapter extends TypeAdapter<ItemStack> {
+        private final Gson gson;
+        final Map<ItemStack, Map<String, Object>> maps = new IdentityHashMap<>();
+        final List<ItemStack> order = new ArrayList<>();
+        boolean recording = true;
+
+        MapItemAdapter(Gson gson) {
+            this.gson = gson;
+        }
+
+        @Override
+        public void write(JsonWriter out, ItemStack value) throws IOException {
+            SMJsonValues.writeMap(gson, out, maps.get(value));
+        }
+
+        @Override
+        public ItemStack read(JsonReader in) throws IOException {
+            ItemStack item = new ItemStack(Material.STONE);
+            Map<String, Object> map = SMJsonValues.readMap(in);
+            if (recording) {
+                maps.put(item, map);
+                order.add(item);
+            }
+            return item;
+        }
+    }
+
+    private final Gson gson = SMJsonValuesTest.createGson();
+
+    @Test
+    void readsTheOldFormat() throws IOException {
+        String json = readGolden();
+        MapItemAdapter items = new MapItemAdapter(gson);
+
+        ItemStack[] inventory = new SMAdapterItemStackArray(items).read(gson.newJsonReader(new StringReader(json)));
+
+        JsonObject tree = gson.fromJson(json, JsonObject.class);
+        JsonArray contents = tree.getAsJsonArray("contents");
+
+        assertEquals(tree.get("size").getAsInt(), inventory.length);
+        assertEquals(contents.size(), items.order.size());
+
+        boolean[] filled = new boolean[inventory.length];
+        for (int i = 0; i < contents.size(); i++) {
+            JsonObject content = contents.get(i).getAsJsonObject();
+            int slot = content.get("slot").getAsInt();
+            ItemStack item = items.order.get(i);
+
+            filled[slot] = true;
+            assertSame(item, inventory[slot]);
+            assertEquals(readWithTree(content.get("item")), items.maps.get(item), "slot " + slot);
+        }
+
+        for (int i = 0; i < inventory.length; i++) {
+            if (!filled[i]) {
+                assertEquals(Material.AIR, inventory[i].getType(), "slot " + i);
+            }
+        }
+    }
+
+    @Test
+    void writesTheOldFormat() throws IOException {
+        MapItemAdapter items = new MapItemAdapter(gson);
+        ItemStack[] inventory = readGolden(items);
+
+        assertEquals(writeWithTree(inventory, items), write(new SMAdapterItemStackArray(items), inventory));
+    }
+
+    @Test
+    void writesAndReadsNull() throws IOException {
+        SMAdapterItemStackArray adapter = new SMAdapterItemStackArray(new MapItemAdapter(gson));
+
+        assertEquals("null", write(adapter, null));
+        assertEquals(null, adapter.read(gson.newJsonReader(new StringReader("null"))));
+    }
+
+    /**
+     * Compares the streaming adapters with the old tree based path for the 36 slot main inventory.
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmarkInventory() throws Exception {
+        MapItemAdapter items = new MapItemAdapter(gson);
+        ItemStack[] golden = readGolden(items);
+        ItemStack[] inventory = new ItemStack[36];
+        System.arraycopy(golden, 0, inventory, 0, inventory.length);
+
+        SMAdapterItemStackArray adapter = new SMAdapterItemStackArray(items);
+        String json = write(adapter, inventory);
+        int iterations = 20000;
+        items.recording = false;
+
+        SMBenchmark.Result treeWrite = SMBenchmark.measure("write 36 slots, tree", iterations,
+            () -> writeWithTree(inventory, items));
+        SMBenchmark.Result streamWrite = SMBenchmark.measure("write 36 slots, streaming", iterations,
+            () -> write(adapter, inventory));
+        SMBenchmark.compare(treeWrite, streamWrite);
+
+        SMBenchmark.Result treeRead = SMBenchmark.measure("read 36 slots, tree", iterations,
+            () -> readInventoryWithTree(json));
+        SMBenchmark.Result streamRead = SMBenchmark.measure("read 36 slots, streaming", iterations,
+            () -> adapter.read(gson.newJsonReader(new StringReader(json))));
+        SMBenchmark.compare(treeRead, streamRead);
+    }
+
+    private String write(SMAdapterItemStackArray adapter, ItemStack[] inventory) throws IOException {
+        StringWriter writer = new StringWriter();
+        adapter.write(gson.newJsonWriter(writer), inventory);
+        return writer.toString();
+    }
+
+    /**
+     * Write an inventory the way the old adapters did, building a JSON tree of each item map.
+     */
+    private String writeWithTree(ItemStack[] inventory, MapItemAdapter items) {
+        JsonObject jsonMap = new JsonObject();
+        JsonArray jsonArray = new JsonArray();
+
+        for (int i = 0; i < inventory.length; i++) {
+            ItemStack itemStack = inventory[i];
+            if (itemStack != null && itemStack.getType() != Material.AIR) {
+                JsonObject itemJsonObject = new JsonObject();
+                itemJsonObject.addProperty("slot", i);
+                itemJsonObject.add("item", gson.toJsonTree(items.maps.get(itemStack)));
+                jsonArray.add(itemJsonObject);
+            }
+        }
+
+        jsonMap.addProperty("size", inventory.length);
+        jsonMap.add("contents", jsonArray);
+
+        return gson.toJson(jsonMap);
+    }
+
+    /**
+     * Read the item maps of an inventory the way the old adapters did, through a JSON tree.
+     */
+    private List<Map<String, Object>> readInventoryWithTree(String json) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (JsonElement content : gson.fromJson(json, JsonObject.class).getAsJsonArray("contents")) {
+            result.add(readWithTree(content.getAsJsonObject().get("item")));
+        }
+
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readWithTree(JsonElement item) {
+        return gson.fromJson(item, Map.class);
+    }
+
+    private ItemStack[] readGolden(MapItemAdapter items) throws IOException {
+        return new SMAdapterItemStackArray(items).read(gson.newJsonReader(new StringReader(readGolden())));
+    }
+
+    private static String readGolden() throws IOException {
+        try (InputStream stream = SMAdapterItemStackArrayTest.class.getResourceAsStream(GOLDEN)) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
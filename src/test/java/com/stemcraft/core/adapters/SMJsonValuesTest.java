@@ -0,0 +1,237 @@
+package com.stemcraft.core.adapters;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.bukkit.configuration.serialization.ConfigurationSerializable;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Checks that SMJsonValues writes the same JSON as Gson and reads the same maps as the old tree based adapters, using
+ * a Gson instance configured like SMJson.
+ */
+class SMJsonValuesTest {
+    /**
+     * The map type the old adapters serialized item and meta maps as.
+     */
+    private static final Type MAP_TYPE = new TypeToken<LinkedHashMap<String, Object>>() {}.getType();
+
+    enum Slot {
+        HEAD, FEET;
+
+        @Override
+        public String toString() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * A value with no adapter, written by reflection.
+     */
+    static class Plain {
+        String name = "plain";
+        double amount = 0.15;
+        Slot slot = Slot.FEET;
+    }
+
+    /**
+     * A serializable value as found nested in item meta, such as an attribute modifier.
+     */
+    static class Modifier implements ConfigurationSerializable {
+        UUID uuid = UUID.fromString("3b0f6f4e-0c0b-4b4c-9a0e-5c1b0b8f6a21");
+        String name = "speed";
+        double amount = 0.5;
+        List<Object> values = Arrays.asList(1, null, "two");
+
+        @Override
+        public Map<String, Object> serialize() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("name", name);
+            return map;
+        }
+    }
+
+    static class Registered {
+        final int value;
+
+        Registered(int value) {
+            this.value = value;
+        }
+    }
+
+    static class RegisteredChild extends Registered {
+        RegisteredChild(int value) {
+            super(value);
+        }
+    }
+
+    static Gson createGson() {
+        return new GsonBuilder()
+            .disableHtmlEscaping()
+            .setObjectToNumberStrategy(JsonReader::nextInt)
+            .setLenient()
+            .registerTypeAdapter(Registered.class, new TypeAdapter<Registered>() {
+                @Override
+                public void write(JsonWriter out, Registered value) throws IOException {
+                    out.value("registered:" + value.value);
+                }
+
+                @Override
+                public Registered read(JsonReader in) throws IOException {
+                    return new Registered(Integer.parseInt(in.nextString().substring(11)));
+                }
+            })
+            .create();
+    }
+
+    private final Gson gson = createGson();
+
+    @Test
+    void writesPlainValuesLikeGson() throws IOException {
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("list", Arrays.asList(1, 2.5, null, "three", true, Arrays.asList()));
+        nested.put("missing", null);
+        nested.put("empty", new LinkedHashMap<>());
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("==", "ItemMeta");
+        map.put("display-name", "{\"text\":\"Sharp = true <3\"}");
+        map.put("int", 12);
+        map.put("long", 12345678901L);
+        map.put("short", (short) 7);
+        map.put("byte", (byte) -3);
+        map.put("whole-double", 3.0);
+        map.put("double", 0.15);
+        map.put("float", 1.1f);
+        map.put("decimal", new BigDecimal("12.500"));
+        map.put("flag", false);
+        map.put("nothing", null);
+        map.put("nested", nested);
+        map.put("nulls", Arrays.asList(null, null));
+
+        assertWritesLikeGson(map);
+    }
+
+    @Test
+    void writesEnumKeysWithToString() throws IOException {
+        Map<Slot, Object> slots = new EnumMap<>(Slot.class);
+        slots.put(Slot.HEAD, 1);
+        slots.put(Slot.FEET, Arrays.asList("a", "b"));
+
+        Map<Object, Object> keys = new LinkedHashMap<>();
+        keys.put(5, "int key");
+        keys.put(null, "null key");
+        keys.put(Slot.HEAD, "enum key");
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("slots", slots);
+        map.put("keys", keys);
+
+        assertWritesLikeGson(map);
+        assertEquals("{\"slots\":{\"head\":1,\"feet\":[\"a\",\"b\"]},"
+            + "\"keys\":{\"5\":\"int key\",\"null\":\"null key\",\"head\":\"enum key\"}}", write(map));
+    }
+
+    @Test
+    void writesOtherValuesWithTheirRuntimeAdapter() throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("plain", new Plain());
+        map.put("modifiers", Arrays.asList(new Modifier(), new Modifier()));
+        map.put("modifier", new Modifier());
+        map.put("uuid", UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5"));
+        map.put("enum", Slot.HEAD);
+        map.put("registered", new Registered(4));
+        map.put("registered-child", new RegisteredChild(5));
+        map.put("object", new Object());
+        map.put("array", new int[] {1, 2, 3});
+        map.put("character", 'c');
+
+        assertWritesLikeGson(map);
+    }
+
+    @Test
+    void rejectsNonFiniteNumbersLikeGson() {
+        for (Object value : new Object[] {Double.NaN, Double.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NaN}) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("value", value);
+
+            IllegalArgumentException expected =
+                assertThrows(IllegalArgumentException.class, () -> gson.toJson(map, MAP_TYPE));
+            IllegalArgumentException actual = assertThrows(IllegalArgumentException.class, () -> write(map));
+            assertEquals(expected.getMessage(), actual.getMessage());
+        }
+    }
+
+    @Test
+    void readsNumbersLikeTheTreeAdapters() throws IOException {
+        String json = "{\"int\":12,\"negative\":-7,\"fraction\":1.5,\"negative-fraction\":-0.5,\"whole\":3.0,"
+            + "\"exponent\":1e3,\"long\":12345678901,\"huge\":99999999999999999999,\"tiny\":1e-9,\"large\":1e40,"
+            + "\"list\":[0.15,2,null,\"3\"],\"nested\":{\"a\":{\"b\":[{\"c\":7.9}]}},\"text\":\"1.5\",\"flag\":true,"
+            + "\"nothing\":null}";
+
+        Map<String, Object> actual = read(json);
+
+        assertEquals(readWithTree(json), actual);
+        assertEquals(1, actual.get("fraction"));
+        assertEquals(-539222987, actual.get("long"));
+        assertEquals(Arrays.asList(0, 2, null, "3"), actual.get("list"));
+        assertInstanceOf(Integer.class, actual.get("large"));
+    }
+
+    @Test
+    void readsMapsBackAfterWriting() throws IOException {
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("RED", 255);
+        nested.put("BLUE", 0);
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("v", 3337);
+        map.put("type", "DIAMOND_SWORD");
+        map.put("colors", new ArrayList<>(Arrays.asList(nested, nested)));
+        map.put("flag", true);
+
+        assertEquals(map, read(write(map)));
+    }
+
+    private void assertWritesLikeGson(Map<?, ?> map) throws IOException {
+        assertEquals(gson.toJson(map, MAP_TYPE), write(map));
+    }
+
+    private String write(Map<?, ?> map) throws IOException {
+        StringWriter writer = new StringWriter();
+        SMJsonValues.writeMap(gson, gson.newJsonWriter(writer), map);
+        return writer.toString();
+    }
+
+    private Map<String, Object> read(String json) throws IOException {
+        return SMJsonValues.readMap(gson.newJsonReader(new StringReader(json)));
+    }
+
+    /**
+     * Read a map the way the old item and meta adapters did, through a JSON tree.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readWithTree(String json) {
+        JsonElement tree = gson.fromJson(json, JsonElement.class);
+        return gson.fromJson(tree, Map.class);
+    }
+}
@@ -0,0 +1,252 @@
+package com.stemcraft.core.event;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import com.stemcraft.SMBenchmark;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.RegisteredListener;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+
+class SMEventDispatcherTest {
+    static class TestEvent extends Event implements Cancellable {
+        private static final HandlerList handlers = new HandlerList();
+        private boolean cancelled = false;
+
+        TestEvent() {
+        }
+
+        TestEvent(boolean async) {
+            super(async);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void setCancelled(boolean cancel) {
+            this.cancelled = cancel;
+        }
+
+        @Override
+        public HandlerList getHandlers() {
+            return handlers;
+        }
+
+        public static HandlerList getHandlerList() {
+            return handlers;
+        }
+    }
+
+    static class OtherEvent extends Event {
+        private static final HandlerList handlers = new HandlerList();
+
+        @Override
+        public HandlerList getHandlers() {
+            return handlers;
+        }
+
+        public static HandlerList getHandlerList() {
+            return handlers;
+        }
+    }
+
+    @Test
+    void callsCallbacksInOrder() {
+        SMEventDispatcher<TestEvent> dispatcher = new SMEventDispatcher<>(TestEvent.class);
+        List<String> calls = new ArrayList<>();
+
+        dispatcher.add(ctx -> calls.add("first"), false);
+        dispatcher.add(ctx -> {
+            throw new IllegalStateException("Thrown by a test callback");
+        }, false);
+        dispatcher.add(ctx -> calls.add("third"), false);
+
+        dispatcher.execute(dispatcher, new TestEvent());
+
+        assertEquals(List.of("first", "third"), calls);
+        assertEquals(3, dispatcher.size());
+    }
+
+    @Test
+    void skipsCancelledEventsOnlyForCallbacksIgnoringThem() throws Exception {
+        SMEventDispatcher<TestEvent> dispatcher = new SMEventDispatcher<>(TestEvent.class);
+        List<String> calls = new ArrayList<>();
+
+        List<SMEventProcessor<TestEvent>> processors = List.of(
+            ctx -> {
+                calls.add("cancel");
+                ctx.event.setCancelled(true);
+            },
+            ctx -> calls.add("ignoring"),
+            ctx -> {
+                calls.add("uncancel");
+                ctx.event.setCancelled(false);
+            },
+            ctx -> calls.add("ignoring after uncancel"));
+        boolean[] ignoreCancelled = {false, true, false, true};
+
+        RegisteredListener[] perCallback = new RegisteredListener[processors.size()];
+        for (int i = 0; i < processors.size(); i++) {
+            dispatcher.add(processors.get(i), ignoreCancelled[i]);
+            perCallback[i] = listenerPerCallback(TestEvent.class, processors.get(i), ignoreCancelled[i]);
+        }
+
+        for (boolean cancelledBefore : new boolean[] {false, true}) {
+            TestEvent event = new TestEvent();
+            event.setCancelled(cancelledBefore);
+            calls.clear();
+            dispatcher.execute(dispatcher, event);
+
+            assertEquals(List.of("cancel", "uncancel", "ignoring after uncancel"), calls);
+
+            // The same callbacks registered as a listener each, as before, are called the same way
+            List<String> dispatched = new ArrayList<>(calls);
+            event.setCancelled(cancelledBefore);
+            calls.clear();
+            callEvent(perCallback, event);
+
+            assertEquals(dispatched, calls);
+        }
+    }
+
+    @Test
+    void nestedDispatchGetsItsOwnContext() {
+        SMEventDispatcher<TestEvent> dispatcher = new SMEventDispatcher<>(TestEvent.class);
+        TestEvent outer = new TestEvent();
+        TestEvent inner = new TestEvent();
+        List<SMEventContext<TestEvent>> contexts = new ArrayList<>();
+        List<TestEvent> events = new ArrayList<>();
+
+        dispatcher.add(ctx -> {
+            contexts.add(ctx);
+            events.add(ctx.event);
+
+            if (ctx.event == outer) {
+                dispatcher.execute(dispatcher, inner);
+            }
+        }, false);
+        dispatcher.add(ctx -> events.add(ctx.event), false);
+
+        dispatcher.execute(dispatcher, outer);
+
+        assertEquals(List.of(outer, inner, inner, outer), events);
+        assertNotSame(contexts.get(0), contexts.get(1));
+        assertNull(contexts.get(0).event);
+
+        // The next main thread event reuses the context of the first
+        dispatcher.execute(dispatcher, new TestEvent());
+        assertSame(contexts.get(0), contexts.get(2));
+    }
+
+    @Test
+    void asynchronousEventsGetTheirOwnContext() {
+        SMEventDispatcher<TestEvent> dispatcher = new SMEventDispatcher<>(TestEvent.class);
+        List<SMEventContext<TestEvent>> contexts = new ArrayList<>();
+        dispatcher.add(contexts::add, false);
+
+        TestEvent event = new TestEvent(true);
+        dispatcher.execute(dispatcher, new TestEvent());
+        dispatcher.execute(dispatcher, event);
+
+        assertNotSame(contexts.get(0), contexts.get(1));
+        assertSame(event, contexts.get(1).event);
+    }
+
+    @Test
+    void ignoresEventsOfOtherClasses() {
+        SMEventDispatcher<TestEvent> dispatcher = new SMEventDispatcher<>(TestEvent.class);
+        List<Event> events = new ArrayList<>();
+        dispatcher.add(ctx -> events.add(ctx.event), false);
+
+        dispatcher.execute(dispatcher, new OtherEvent());
+
+        assertEquals(List.of(), events);
+    }
+
+    /**
+     * Compares calling one event through a single dispatcher with the listener per callback that SMEvent registered
+     * before, for several callback counts. On a server the executor and callback calls see many classes, so both paths
+     * are warmed up with several callback classes before either is measured.
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmarkFanOut() throws Exception {
+        int iterations = 1000000;
+        int[] counts = {1, 8, 32};
+        int[] calls = new int[1];
+        List<SMEventProcessor<TestEvent>> processors = List.of(
+            ctx -> calls[0]++,
+            ctx -> calls[0] += ctx.event.isCancelled() ? 0 : 1,
+            ctx -> calls[0] += ctx.event.isAsynchronous() ? 2 : 1,
+            ctx -> calls[0] ^= ctx.event.hashCode());
+
+        RegisteredListener[][] perCallback = new RegisteredListener[counts.length][];
+        RegisteredListener[][] dispatched = new RegisteredListener[counts.length][];
+        for (int c = 0; c < counts.length; c++) {
+            perCallback[c] = new RegisteredListener[counts[c]];
+            SMEventDispatcher<TestEvent> dispatcher = new SMEventDispatcher<>(TestEvent.class);
+
+            for (int i = 0; i < counts[c]; i++) {
+                SMEventProcessor<TestEvent> processor = processors.get(i % processors.size());
+                perCallback[c][i] = listenerPerCallback(TestEvent.class, processor, i % 2 == 0);
+                dispatcher.add(processor, i % 2 == 0);
+            }
+
+            dispatched[c] = new RegisteredListener[] {
+                new RegisteredListener(dispatcher, dispatcher, EventPriority.NORMAL, null, false)};
+        }
+
+        TestEvent event = new TestEvent();
+        for (int i = 0; i < iterations; i++) {
+            callEvent(perCallback[i % counts.length], event);
+            callEvent(dispatched[i % counts.length], event);
+        }
+
+        for (int c = 0; c < counts.length; c++) {
+            RegisteredListener[] before = perCallback[c];
+            RegisteredListener[] after = dispatched[c];
+
+            SMBenchmark.Result beforeResult = SMBenchmark.measure(counts[c] + " callbacks, listener each", iterations,
+                () -> callEvent(before, event));
+            SMBenchmark.Result afterResult = SMBenchmark.measure(counts[c] + " callbacks, dispatcher", iterations,
+                () -> callEvent(after, event));
+            SMBenchmark.compare(beforeResult, afterResult);
+        }
+    }
+
+    /**
+     * Call an event on its listeners as HandlerList does.
+     */
+    private static Object callEvent(RegisteredListener[] listeners, Event event) throws Exception {
+        for (RegisteredListener listener : listeners) {
+            listener.callEvent(event);
+        }
+
+        return event;
+    }
+
+    /**
+     * Create the listener SMEvent registered for each callback before events were dispatched by class and priority.
+     */
+    private static <T extends Event> RegisteredListener listenerPerCallback(Class<T> event,
+        SMEventProcessor<T> callback, boolean ignoreCancelled) {
+        return new RegisteredListener(new Listener() {}, (listener, rawEvent) -> {
+            if (event.isInstance(rawEvent)) {
+                @SuppressWarnings("unchecked")
+                SMEventContext<T> context = new SMEventContext<>(listener, (T) rawEvent);
+                callback.process(context);
+            }
+        }, EventPriority.NORMAL, null, ignoreCancelled);
+    }
+}
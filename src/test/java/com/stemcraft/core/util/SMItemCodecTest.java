@@ -0,0 +1,209 @@
+package com.stemcraft.core.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.stemcraft.SMBenchmark;
+import com.stemcraft.core.SMJson.SMSerializeFailedException;
+import com.stemcraft.core.util.SMItemCodec.Frame;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Tests the binary item format below the point where items are created, as creating an ItemStack needs a running
+ * server. The benchmark compares it with the JSON format for an inventory saved by the JSON adapters.
+ */
+class SMItemCodecTest {
+    private static final String GOLDEN = "/com/stemcraft/core/adapters/inventory-1.19.4.json";
+    private static final int DATA_VERSION = 3337;
+    private static final Type CONTENTS_TYPE = new TypeToken<List<Map<String, Object>>>() {}.getType();
+
+    private final Gson gson = new GsonBuilder()
+        .disableHtmlEscaping()
+        .setObjectToNumberStrategy(JsonReader::nextInt)
+        .setLenient()
+        .create();
+
+    @Test
+    void readsTheFrameWritten() throws IOException {
+        Frame frame = goldenFrame();
+
+        Frame read = SMItemCodec.readFrame(SMItemCodec.writeFrame(frame));
+
+        assertEquals(DATA_VERSION, read.dataVersion);
+        assertArrayEquals(frame.materials, read.materials);
+        assertArrayEquals(frame.amounts, read.amounts);
+        assertArrayEquals(frame.snbt, read.snbt);
+    }
+
+    @Test
+    void storesEachMaterialOnce() throws IOException {
+        Frame frame = new Frame(DATA_VERSION, 36);
+        for (int i = 0; i < frame.size(); i += 2) {
+            frame.materials[i] = i % 4 == 0 ? "STONE" : "DIRT";
+            frame.amounts[i] = 64;
+        }
+
+        byte[] data = SMItemCodec.writeFrame(frame);
+
+        try (DataInputStream stream = new DataInputStream(
+            new InflaterInputStream(new ByteArrayInputStream(data, 4, data.length - 4)))) {
+            assertEquals(DATA_VERSION, stream.readInt());
+            assertEquals(36, stream.readUnsignedShort());
+            assertEquals(2, stream.readUnsignedShort());
+            assertEquals("STONE", stream.readUTF());
+            assertEquals("DIRT", stream.readUTF());
+        }
+
+        Frame read = SMItemCodec.readFrame(data);
+        assertArrayEquals(frame.materials, read.materials);
+        assertArrayEquals(frame.amounts, read.amounts);
+    }
+
+    @Test
+    void detectsTheBinaryFormat() throws IOException {
+        assertTrue(SMItemCodec.isEncoded(SMItemCodec.writeFrame(new Frame(DATA_VERSION, 0))));
+        assertFalse(SMItemCodec.isEncoded(null));
+        assertFalse(SMItemCodec.isEncoded(new byte[] {'S', 'M', 'I'}));
+        assertFalse(SMItemCodec.isEncoded(readGolden().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void rejectsUnknownFormatVersions() throws IOException {
+        byte[] data = SMItemCodec.writeFrame(goldenFrame());
+        data[3] = 2;
+
+        assertThrows(SMSerializeFailedException.class, () -> SMItemCodec.readFrame(data));
+    }
+
+    @Test
+    void rejectsMissingData() {
+        assertThrows(SMSerializeFailedException.class, () -> SMItemCodec.decode(null));
+    }
+
+    /**
+     * Compares the size and time of the binary format with JSON for a saved inventory. Only the framing is measured,
+     * not converting items to and from NBT or serialization maps.
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmarkAgainstJson() throws Exception {
+        String json = gson.toJson(gson.fromJson(readGolden(), JsonElement.class));
+        Frame frame = goldenFrame();
+        byte[] binary = SMItemCodec.writeFrame(frame);
+        List<Map<String, Object>> contents = readContents(json);
+        int iterations = 20000;
+
+        System.out.println(String.format(Locale.ROOT, "%-40s %12d bytes", "41 slots, JSON",
+            json.getBytes(StandardCharsets.UTF_8).length));
+        System.out.println(String.format(Locale.ROOT, "%-40s %12d bytes", "41 slots, binary", binary.length));
+
+        SMBenchmark.Result jsonWrite = SMBenchmark.measure("encode 41 slots, JSON", iterations,
+            () -> gson.toJson(contents).getBytes(StandardCharsets.UTF_8));
+        SMBenchmark.Result binaryWrite = SMBenchmark.measure("encode 41 slots, binary", iterations,
+            () -> SMItemCodec.writeFrame(frame));
+        SMBenchmark.compare(jsonWrite, binaryWrite);
+
+        byte[] jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+        SMBenchmark.Result jsonRead = SMBenchmark.measure("decode 41 slots, JSON", iterations,
+            () -> readContents(new String(jsonBytes, StandardCharsets.UTF_8)));
+        SMBenchmark.Result binaryRead = SMBenchmark.measure("decode 41 slots, binary", iterations,
+            () -> SMItemCodec.readFrame(binary));
+        SMBenchmark.compare(jsonRead, binaryRead);
+    }
+
+    private List<Map<String, Object>> readContents(String json) {
+        return gson.fromJson(gson.fromJson(json, JsonObject.class).get("contents"), CONTENTS_TYPE);
+    }
+
+    /**
+     * Build the frame the binary format would store for the saved inventory. Items with meta are stored as SNBT.
+     */
+    @SuppressWarnings("unchecked")
+    private Frame goldenFrame() throws IOException {
+        JsonObject inventory = gson.fromJson(readGolden(), JsonObject.class);
+        Frame frame = new Frame(DATA_VERSION, inventory.get("size").getAsInt());
+
+        for (Map<String, Object> content : readContents(readGolden())) {
+            int slot = ((Number) content.get("slot")).intValue();
+            Map<String, Object> item = (Map<String, Object>) content.get("item");
+            String type = (String) item.get("type");
+            int amount = item.containsKey("amount") ? ((Number) item.get("amount")).intValue() : 1;
+
+            if (item.containsKey("meta")) {
+                Map<String, Object> tag = new LinkedHashMap<>((Map<String, Object>) item.get("meta"));
+                tag.remove("==");
+                tag.remove("meta-type");
+
+                frame.snbt[slot] = "{id:\"minecraft:" + type.toLowerCase(Locale.ROOT) + "\",Count:" + amount + "b,tag:"
+                    + toSnbt(tag) + "}";
+            } else {
+                frame.materials[slot] = type;
+                frame.amounts[slot] = amount;
+            }
+        }
+
+        return frame;
+    }
+
+    private static String toSnbt(Object value) {
+        StringBuilder builder = new StringBuilder();
+
+        if (value instanceof Map) {
+            builder.append('{');
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (builder.length() > 1) {
+                    builder.append(',');
+                }
+                builder.append(quote(entry.getKey().toString())).append(':').append(toSnbt(entry.getValue()));
+            }
+            builder.append('}');
+        } else if (value instanceof List) {
+            builder.append('[');
+            for (Object element : (List<?>) value) {
+                if (builder.length() > 1) {
+                    builder.append(',');
+                }
+                builder.append(toSnbt(element));
+            }
+            builder.append(']');
+        } else if (value instanceof Boolean) {
+            builder.append((Boolean) value ? "1b" : "0b");
+        } else if (value instanceof Number) {
+            builder.append(value);
+        } else {
+            builder.append(quote(String.valueOf(value)));
+        }
+
+        return builder.toString();
+    }
+
+    private static String quote(String text) {
+        return '"' + text.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    private static String readGolden() throws IOException {
+        try (InputStream stream = SMItemCodecTest.class.getResourceAsStream(GOLDEN)) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
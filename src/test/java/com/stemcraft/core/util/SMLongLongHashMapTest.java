@@ -0,0 +1,154 @@
+package com.stemcraft.core.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests SMLongLongHashMap against a HashMap, including keys that collide at the end of the table and wrap around to
+ * its start, where removing an entry has to move the rest of the probe sequence back.
+ */
+class SMLongLongHashMapTest {
+    /**
+     * The table size of a new map, which resizes once it holds more than half this number of entries.
+     */
+    private static final int CAPACITY = 16;
+
+    @Test
+    void packsAndUnpacksNegativeCoordinates() {
+        int[][] coordinates = {{0, 0}, {-1, 1}, {1, -1}, {-1, -1}, {Integer.MIN_VALUE, Integer.MAX_VALUE},
+            {Integer.MAX_VALUE, Integer.MIN_VALUE}};
+
+        for (int[] coordinate : coordinates) {
+            long key = SMLongLongHashMap.pack(coordinate[0], coordinate[1]);
+
+            assertEquals(coordinate[0], SMLongLongHashMap.unpackHigh(key));
+            assertEquals(coordinate[1], SMLongLongHashMap.unpackLow(key));
+        }
+        assertNotEquals(SMLongLongHashMap.pack(-1, 0), SMLongLongHashMap.pack(0, -1));
+    }
+
+    @Test
+    void removeMovesCollisionsBackAcrossTheEndOfTheTable() {
+        // Keys that probe from the last slot wrap around into the first slots, and keys that belong in the first
+        // slot probe past them. Only the keys from the first slot may stay in front of a gap left at the end.
+        for (int lastCount = 1; lastCount <= 4; lastCount++) {
+            List<Long> keys = findKeys(CAPACITY - 1, lastCount);
+            keys.addAll(findKeys(0, 5 - lastCount));
+
+            // Remove the keys one at a time starting from each position in the probe sequence
+            for (int start = 0; start < keys.size(); start++) {
+                SMLongLongHashMap map = new SMLongLongHashMap();
+                Map<Long, Long> expected = new HashMap<>();
+                for (long key : keys) {
+                    put(map, expected, key, key * 2);
+                }
+
+                for (int i = 0; i < keys.size(); i++) {
+                    long key = keys.get((start + i) % keys.size());
+
+                    assertTrue(map.remove(key));
+                    assertFalse(map.remove(key));
+                    expected.remove(key);
+                    assertMatches(expected, map);
+                }
+            }
+        }
+    }
+
+    @Test
+    void matchesAHashMapAcrossResizes() {
+        Random random = new Random(42);
+        SMLongLongHashMap map = new SMLongLongHashMap();
+        Map<Long, Long> expected = new HashMap<>();
+
+        // A small key range keeps the map dense with repeated puts and removes of the same keys
+        for (int i = 0; i < 100000; i++) {
+            long key = SMLongLongHashMap.pack(random.nextInt(64) - 32, random.nextInt(64) - 32);
+
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key) != null, map.remove(key));
+            } else {
+                put(map, expected, key, random.nextLong());
+            }
+
+            if (i % 1000 == 0) {
+                assertMatches(expected, map);
+            }
+        }
+
+        assertMatches(expected, map);
+        for (long key : new ArrayList<>(expected.keySet())) {
+            assertTrue(map.remove(key));
+            expected.remove(key);
+        }
+        assertMatches(expected, map);
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void clearKeepsTheMapUsable() {
+        SMLongLongHashMap map = new SMLongLongHashMap(1000);
+        Map<Long, Long> expected = new HashMap<>();
+        for (long key = 0; key < 1000; key++) {
+            put(map, expected, key, key);
+        }
+
+        map.clear();
+        expected.clear();
+        assertMatches(expected, map);
+
+        for (long key = 500; key < 2500; key++) {
+            put(map, expected, key, -key);
+        }
+        assertMatches(expected, map);
+    }
+
+    /**
+     * Find keys whose probe sequence starts at a slot of a new map.
+     */
+    private static List<Long> findKeys(int slot, int count) {
+        List<Long> keys = new ArrayList<>();
+        for (long key = 1; keys.size() < count; key++) {
+            if ((SMLongLongHashMap.hash(key) & (CAPACITY - 1)) == slot) {
+                keys.add(key);
+            }
+        }
+
+        return keys;
+    }
+
+    private static void put(SMLongLongHashMap map, Map<Long, Long> expected, long key, long value) {
+        map.put(key, value);
+        expected.put(key, value);
+    }
+
+    private static void assertMatches(Map<Long, Long> expected, SMLongLongHashMap map) {
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected.isEmpty(), map.isEmpty());
+
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertTrue(map.containsKey(entry.getKey()), "missing " + entry.getKey());
+            assertEquals(entry.getValue(), map.get(entry.getKey(), Long.MIN_VALUE));
+        }
+
+        Map<Long, Long> iterated = new HashMap<>();
+        map.forEach((key, value) -> assertEquals(null, iterated.put(key, value)));
+        assertEquals(expected, iterated);
+
+        // Keys that were never stored, or were removed, are not found
+        for (long key : expected.keySet()) {
+            if (!expected.containsKey(key + 1)) {
+                assertFalse(map.containsKey(key + 1));
+                assertEquals(7, map.get(key + 1, 7));
+            }
+        }
+    }
+}
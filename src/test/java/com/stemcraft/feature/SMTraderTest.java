@@ -0,0 +1,319 @@
+package com.stemcraft.feature;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests SMTrader.ConsumeTradeLots against a synthetic trade history in an in-memory database with the schema the
+ * trader migrations create, and the migration that splits the trade location into columns.
+ */
+class SMTraderTest {
+    private static final int LOT_COUNT = 10000;
+    private static final String[] MATERIALS = {"DIAMOND", "EMERALD", "IRON_INGOT", "GOLD_INGOT", "COAL", "OAK_LOG",
+        "WHEAT", "BREAD", "STONE", "GLASS"};
+
+    private Connection connection;
+
+    /**
+     * The seeded lots of each material, in the order they should be consumed.
+     */
+    private final List<List<long[]>> lots = new ArrayList<>();
+
+    @BeforeEach
+    void seed() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE trades (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "material TEXT NOT NULL," +
+                "quantity NUMBER NOT NULL," +
+                "created TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                "world TEXT NOT NULL DEFAULT ''," +
+                "x INTEGER NOT NULL DEFAULT 0," +
+                "y INTEGER NOT NULL DEFAULT 0," +
+                "z INTEGER NOT NULL DEFAULT 0)");
+            statement.executeUpdate(
+                "CREATE INDEX idx_trades_material_created ON trades (material, created, id)");
+        }
+
+        for (int i = 0; i < MATERIALS.length; i++) {
+            lots.add(new ArrayList<>());
+        }
+
+        // Lots are inserted out of time order, and some share a timestamp, so both parts of the ordering matter
+        Random random = new Random(42);
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement(
+            "INSERT INTO trades (material, quantity, created, world) VALUES (?, ?, ?, 'world')",
+            Statement.RETURN_GENERATED_KEYS)) {
+            for (int i = 0; i < LOT_COUNT; i++) {
+                int material = random.nextInt(MATERIALS.length);
+                int quantity = 1 + random.nextInt(64);
+                int second = random.nextInt(LOT_COUNT / 4);
+
+                statement.setString(1, MATERIALS[material]);
+                statement.setInt(2, quantity);
+                statement.setString(3, String.format("2024-01-%02d %02d:%02d:%02d", 1 + second / 86400,
+                    second / 3600 % 24, second / 60 % 60, second % 60));
+                statement.executeUpdate();
+
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    keys.next();
+                    lots.get(material).add(new long[] {second, keys.getLong(1), quantity});
+                }
+            }
+        }
+        connection.commit();
+
+        Comparator<long[]> oldestFirst = Comparator.<long[]>comparingLong(lot -> lot[0]).thenComparingLong(lot -> lot[1]);
+        for (List<long[]> materialLots : lots) {
+            materialLots.sort(oldestFirst);
+        }
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void consumesOldestLotsFirstAndReducesThePartialLot() throws SQLException {
+        List<long[]> diamonds = lots.get(0);
+        int quantity = (int) (diamonds.get(0)[2] + diamonds.get(1)[2] + diamonds.get(2)[2]) + 1;
+
+        assertEquals(0, SMTrader.ConsumeTradeLots(connection, "DIAMOND", quantity));
+
+        List<long[]> remaining = readLots("DIAMOND");
+        assertEquals(diamonds.size() - 3, remaining.size());
+        assertFalse(containsId(remaining, diamonds.get(0)[1]));
+        assertFalse(containsId(remaining, diamonds.get(1)[1]));
+        assertFalse(containsId(remaining, diamonds.get(2)[1]));
+
+        // The fourth oldest lot gave one item and everything after it is untouched
+        assertEquals(diamonds.get(3)[1], remaining.get(0)[0]);
+        assertEquals(diamonds.get(3)[2] - 1, remaining.get(0)[1]);
+        for (int i = 1; i < remaining.size(); i++) {
+            assertEquals(diamonds.get(i + 3)[1], remaining.get(i)[0]);
+            assertEquals(diamonds.get(i + 3)[2], remaining.get(i)[1]);
+        }
+    }
+
+    @Test
+    void deletesALotUsedExactly() throws SQLException {
+        List<long[]> emeralds = lots.get(1);
+
+        assertEquals(0, SMTrader.ConsumeTradeLots(connection, "EMERALD", (int) emeralds.get(0)[2]));
+
+        List<long[]> remaining = readLots("EMERALD");
+        assertEquals(emeralds.size() - 1, remaining.size());
+        assertEquals(emeralds.get(1)[1], remaining.get(0)[0]);
+        assertEquals(emeralds.get(1)[2], remaining.get(0)[1]);
+    }
+
+    @Test
+    void returnsTheQuantityThatCouldNotBeFilled() throws SQLException {
+        long total = lots.get(2).stream().mapToLong(lot -> lot[2]).sum();
+        int otherRows = countRows() - lots.get(2).size();
+
+        assertEquals(25, SMTrader.ConsumeTradeLots(connection, "IRON_INGOT", (int) total + 25));
+        assertTrue(readLots("IRON_INGOT").isEmpty());
+        assertEquals(otherRows, countRows());
+
+        assertEquals(7, SMTrader.ConsumeTradeLots(connection, "IRON_INGOT", 7));
+        assertEquals(5, SMTrader.ConsumeTradeLots(connection, "NETHERITE_INGOT", 5));
+    }
+
+    @Test
+    void consumesAcrossManyLotsInOrder() throws SQLException {
+        List<long[]> coal = lots.get(4);
+        int half = coal.size() / 2;
+        int quantity = 0;
+        for (int i = 0; i < half; i++) {
+            quantity += coal.get(i)[2];
+        }
+
+        assertEquals(0, SMTrader.ConsumeTradeLots(connection, "COAL", quantity));
+
+        List<long[]> remaining = readLots("COAL");
+        List<Long> expectedIds = new ArrayList<>();
+        for (long[] lot : coal.subList(half, coal.size())) {
+            expectedIds.add(lot[1]);
+        }
+
+        List<Long> remainingIds = new ArrayList<>();
+        for (long[] lot : remaining) {
+            remainingIds.add(lot[0]);
+        }
+
+        assertEquals(expectedIds, remainingIds);
+    }
+
+    @Test
+    void selectUsesTheMaterialIndex() throws SQLException {
+        List<String> details = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN QUERY PLAN " + SMTrader.CONSUME_QUERY);
+            ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                details.add(resultSet.getString("detail"));
+            }
+        }
+
+        assertTrue(details.stream().anyMatch(detail -> detail.contains("USING INDEX idx_trades_material_created")),
+            details.toString());
+        assertFalse(details.stream().anyMatch(detail -> detail.startsWith("USE TEMP B-TREE")), details.toString());
+    }
+
+    @Test
+    void splitsTheLocationIntoColumns() throws SQLException {
+        try (Connection oldConnection = createLocationTrades()) {
+            SMTrader.splitTradesLocation(oldConnection);
+
+            try (Statement statement = oldConnection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT * FROM trades ORDER BY id")) {
+                assertEquals(8, resultSet.getMetaData().getColumnCount());
+                for (int i = 1; i <= resultSet.getMetaData().getColumnCount(); i++) {
+                    assertFalse("location".equals(resultSet.getMetaData().getColumnName(i)));
+                }
+
+                assertTrue(resultSet.next());
+                assertEquals(1, resultSet.getLong("id"));
+                assertEquals("DIAMOND", resultSet.getString("material"));
+                assertEquals(3, resultSet.getInt("quantity"));
+                assertEquals("2024-01-01 10:00:00", resultSet.getString("created"));
+                assertEquals("world", resultSet.getString("world"));
+                assertEquals(10, resultSet.getInt("x"));
+                assertEquals(64, resultSet.getInt("y"));
+                assertEquals(-21, resultSet.getInt("z"));
+
+                assertTrue(resultSet.next());
+                assertEquals(2, resultSet.getLong("id"));
+                assertEquals("world_nether", resultSet.getString("world"));
+                assertEquals(-1, resultSet.getInt("x"));
+                assertFalse(resultSet.next());
+            }
+
+            // New trades keep counting from the old ids, and the lots are still read through the index
+            try (Statement statement = oldConnection.createStatement()) {
+                statement.executeUpdate("INSERT INTO trades (material, quantity, world) VALUES ('COAL', 1, 'world')");
+                try (ResultSet resultSet = statement.executeQuery("SELECT MAX(id) FROM trades")) {
+                    resultSet.next();
+                    assertEquals(3, resultSet.getLong(1));
+                }
+                try (ResultSet resultSet = statement.executeQuery("EXPLAIN QUERY PLAN " + SMTrader.CONSUME_QUERY
+                    .replace("?", "'COAL'"))) {
+                    resultSet.next();
+                    assertTrue(resultSet.getString("detail").contains("USING INDEX idx_trades_material_created"));
+                }
+            }
+        }
+    }
+
+    @Test
+    void keepsTheTableWhenALocationCannotBeConverted() throws SQLException {
+        try (Connection oldConnection = createLocationTrades()) {
+            try (Statement statement = oldConnection.createStatement()) {
+                statement.executeUpdate("INSERT INTO trades (material, quantity, location) VALUES ('COAL', 5, 'x')");
+                statement.executeUpdate(
+                    "INSERT INTO trades (material, quantity, location) VALUES ('COAL', 6, '{\"world\":\"world\"}')");
+            }
+
+            // The migration runs in a transaction, which is rolled back when it fails
+            oldConnection.setAutoCommit(false);
+            SQLException exception = assertThrows(SQLException.class,
+                () -> SMTrader.splitTradesLocation(oldConnection));
+            oldConnection.rollback();
+            oldConnection.setAutoCommit(true);
+
+            assertTrue(exception.getMessage().contains("[3, 4]"), exception.getMessage());
+            try (Statement statement = oldConnection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT id, location FROM trades ORDER BY id")) {
+                List<String> locations = new ArrayList<>();
+                while (resultSet.next()) {
+                    assertEquals(locations.size() + 1, resultSet.getLong("id"));
+                    locations.add(resultSet.getString("location"));
+                }
+                assertEquals(4, locations.size());
+                assertEquals("x", locations.get(2));
+            }
+            try (Statement statement = oldConnection.createStatement();
+                ResultSet resultSet = statement.executeQuery(
+                    "SELECT COUNT(*) FROM sqlite_master WHERE name = 'trades_split'")) {
+                resultSet.next();
+                assertEquals(0, resultSet.getInt(1));
+            }
+        }
+    }
+
+    /**
+     * Create a database with the trades table as it was before the location was split, holding two trades.
+     */
+    private static Connection createLocationTrades() throws SQLException {
+        Connection oldConnection = DriverManager.getConnection("jdbc:sqlite::memory:");
+
+        try (Statement statement = oldConnection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE trades (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "material TEXT NOT NULL," +
+                "quantity NUMBER NOT NULL," +
+                "location TEXT NOT NULL," +
+                "created TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+            statement.executeUpdate(
+                "CREATE INDEX idx_trades_material_created ON trades (material, created, id)");
+            statement.executeUpdate("INSERT INTO trades (material, quantity, location, created) VALUES ('DIAMOND', 3, "
+                + "'{\"world\":\"world\",\"x\":10.5,\"y\":64.0,\"z\":-20.25,\"yaw\":90.0,\"pitch\":0.0}', "
+                + "'2024-01-01 10:00:00')");
+            statement.executeUpdate("INSERT INTO trades (material, quantity, location) VALUES ('EMERALD', 2, "
+                + "'{\"world\":\"world_nether\",\"x\":-0.5,\"y\":70,\"z\":3}')");
+        }
+
+        return oldConnection;
+    }
+
+    /**
+     * Read the id and quantity of the lots of a material in the order they will be consumed.
+     */
+    private List<long[]> readLots(String material) throws SQLException {
+        List<long[]> result = new ArrayList<>();
+
+        try (PreparedStatement statement = connection.prepareStatement(SMTrader.CONSUME_QUERY)) {
+            statement.setString(1, material);
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    result.add(new long[] {resultSet.getLong("id"), resultSet.getLong("quantity")});
+                }
+            }
+        }
+
+        return Collections.unmodifiableList(result);
+    }
+
+    private int countRows() throws SQLException {
+        try (Statement statement = connection.createStatement();
+            ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM trades")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    private static boolean containsId(List<long[]> lots, long id) {
+        return lots.stream().anyMatch(lot -> lot[0] == id);
+    }
+}
@@ -0,0 +1,254 @@
+package com.stemcraft.feature;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import com.stemcraft.SMBenchmark;
+import com.stemcraft.feature.SMWaystones.WaystoneIndex;
+import com.stemcraft.feature.SMWaystones.WaystoneLookup;
+import com.stemcraft.feature.SMWaystones.WaystoneRow;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.bukkit.block.BlockFace;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the position sets SMWaystones computes for explosions and pistons, and the batched writes they produce, with
+ * waystones placed among 1,000 affected positions. Blocks are not created, as that needs a running server.
+ */
+class SMWaystonesTest {
+    private static final String WORLD = "world";
+    private static final int POSITION_COUNT = 1000;
+    private static final int WAYSTONE_COUNT = 50;
+
+    private Connection connection;
+    private WaystoneIndex index;
+
+    /**
+     * The waystones in the index in the main world, by packed position.
+     */
+    private final Map<Long, String> waystones = new HashMap<>();
+
+    /**
+     * The waystones among the affected positions, by packed position.
+     */
+    private final Map<Long, String> affectedWaystones = new HashMap<>();
+
+    /**
+     * The affected positions. Waystones, the blocks below them and other blocks are mixed.
+     */
+    private final List<int[]> positions = new ArrayList<>();
+
+    @BeforeEach
+    void seed() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE waystones (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "world TEXT NOT NULL," +
+                "x INT NOT NULL," +
+                "y INT NOT NULL," +
+                "z INT NOT NULL," +
+                "under_block TEXT NOT NULL)");
+        }
+
+        index = new WaystoneIndex();
+        Random random = new Random(42);
+        List<WaystoneRow> rows = new ArrayList<>();
+
+        // Waystones outside the affected area and in another world are indexed as well, and must be kept
+        for (int i = 0; i < WAYSTONE_COUNT; i++) {
+            addWaystone(rows, "world_nether", i, 64, 0);
+            addWaystone(rows, WORLD, 1000 + i, 64, 1000);
+        }
+
+        for (int i = 0; i < WAYSTONE_COUNT; i++) {
+            int x = i * 3;
+            int z = random.nextInt(32);
+            addWaystone(rows, WORLD, x, 64, z);
+            long key = WaystoneIndex.packPosition(x, 64, z);
+            affectedWaystones.put(key, waystones.get(key));
+
+            // Half of the waystones are affected by their lodestone, the others by the block below
+            positions.add(i % 2 == 0 ? new int[] {x, 64, z} : new int[] {x, 63, z});
+        }
+
+        while (positions.size() < POSITION_COUNT) {
+            int[] position = {random.nextInt(150), 40 + random.nextInt(40), random.nextInt(32)};
+            long key = WaystoneIndex.packPosition(position[0], position[1], position[2]);
+            long above = WaystoneIndex.packPosition(position[0], position[1] + 1, position[2]);
+
+            if (!waystones.containsKey(key) && !waystones.containsKey(above)) {
+                positions.add(position);
+            }
+        }
+
+        Collections.shuffle(positions, random);
+        SMWaystones.writeWaystones(connection, rows, Collections.emptyList());
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void explosionRemovesOnlyIndexedWaystones() throws SQLException {
+        List<WaystoneRow> removed = new ArrayList<>();
+
+        SMWaystones.removeWaystones(index, WORLD, positions, removed);
+
+        assertEquals(WAYSTONE_COUNT, removed.size());
+        Set<Long> removedKeys = new HashSet<>();
+        for (WaystoneRow row : removed) {
+            long key = WaystoneIndex.packPosition(row.x, row.y, row.z);
+
+            assertEquals(WORLD, row.world);
+            assertTrue(affectedWaystones.containsKey(key), "not affected " + row.x + " " + row.y + " " + row.z);
+            assertTrue(removedKeys.add(key), "removed twice " + row.x + " " + row.y + " " + row.z);
+            assertFalse(index.contains(WORLD, row.x, row.y, row.z));
+        }
+
+        assertEquals(3 * WAYSTONE_COUNT, countRows());
+        SMWaystones.writeWaystones(connection, Collections.emptyList(), removed);
+        assertEquals(2 * WAYSTONE_COUNT, countRows());
+
+        for (int i = 0; i < WAYSTONE_COUNT; i++) {
+            assertTrue(index.contains("world_nether", i, 64, 0));
+            assertTrue(index.contains(WORLD, 1000 + i, 64, 1000));
+        }
+    }
+
+    @Test
+    void explosionWithoutWaystonesRemovesNothing() {
+        List<WaystoneRow> removed = new ArrayList<>();
+
+        SMWaystones.removeWaystones(index, "world_the_end", positions, removed);
+
+        assertEquals(0, removed.size());
+    }
+
+    @Test
+    void pistonPositionsIncludeNeighboursAndAboveOnce() {
+        List<int[]> blocks = List.of(new int[] {0, 64, 0}, new int[] {1, 64, 0});
+
+        List<int[]> result = SMWaystones.getPistonPositions(blocks, BlockFace.EAST);
+
+        Set<Long> keys = new HashSet<>();
+        for (int[] position : result) {
+            assertTrue(keys.add(WaystoneIndex.packPosition(position[0], position[1], position[2])));
+        }
+
+        Set<Long> expected = new HashSet<>();
+        for (int x = -1; x <= 2; x++) {
+            expected.add(WaystoneIndex.packPosition(x, 64, 0));
+            expected.add(WaystoneIndex.packPosition(x, 65, 0));
+        }
+        assertEquals(expected, keys);
+    }
+
+    @Test
+    void pistonSyncUpdatesOnlyChangedWaystones() throws SQLException {
+        // Every other affected waystone was moved away, and one new waystone was pushed into place
+        Map<Long, String> world = new HashMap<>(waystones);
+        Set<Long> movedAway = new HashSet<>();
+        int count = 0;
+        for (Long key : affectedWaystones.keySet()) {
+            if (count++ % 2 == 0) {
+                world.remove(key);
+                movedAway.add(key);
+            }
+        }
+        world.put(WaystoneIndex.packPosition(151, 64, 0), "GOLD_BLOCK");
+
+        List<int[]> affected = new ArrayList<>(positions);
+        affected.add(new int[] {151, 63, 0});
+        List<WaystoneRow> inserted = new ArrayList<>();
+        List<WaystoneRow> removed = new ArrayList<>();
+
+        SMWaystones.updateWaystones(index, WORLD, SMWaystones.getPistonPositions(affected, BlockFace.UP),
+            (x, y, z) -> world.get(WaystoneIndex.packPosition(x, y, z)), inserted, removed);
+
+        assertEquals(1, inserted.size());
+        assertEquals(151, inserted.get(0).x);
+        assertEquals("GOLD_BLOCK", inserted.get(0).underBlock);
+        assertTrue(index.contains(WORLD, 151, 64, 0));
+
+        Set<Long> removedKeys = new HashSet<>();
+        for (WaystoneRow row : removed) {
+            removedKeys.add(WaystoneIndex.packPosition(row.x, row.y, row.z));
+            assertFalse(index.contains(WORLD, row.x, row.y, row.z));
+        }
+        assertEquals(movedAway, removedKeys);
+
+        SMWaystones.writeWaystones(connection, inserted, removed);
+        assertEquals(3 * WAYSTONE_COUNT + 1 - movedAway.size(), countRows());
+    }
+
+    /**
+     * Measures the positions and index updates for an explosion and a piston move over 1,000 positions, with 10,000
+     * other waystones in the index.
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmarkPositionSets() throws Exception {
+        List<WaystoneRow> rows = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            addWaystone(rows, WORLD, -100000 + i * 16, 64, -100000);
+        }
+
+        WaystoneLookup lookup = (x, y, z) -> waystones.get(WaystoneIndex.packPosition(x, y, z));
+        int iterations = 2000;
+
+        SMBenchmark.measure("explosion, 1000 blocks", iterations, () -> {
+            List<WaystoneRow> removed = new ArrayList<>();
+            SMWaystones.removeWaystones(index, WORLD, positions, removed);
+            for (WaystoneRow row : removed) {
+                index.add(row.world, row.x, row.y, row.z, affectedWaystones.get(WaystoneIndex.packPosition(row.x,
+                    row.y, row.z)));
+            }
+            return removed;
+        });
+
+        SMBenchmark.measure("piston, 1000 blocks", iterations, () -> {
+            List<WaystoneRow> inserted = new ArrayList<>();
+            List<WaystoneRow> removed = new ArrayList<>();
+            SMWaystones.updateWaystones(index, WORLD, SMWaystones.getPistonPositions(positions, BlockFace.NORTH),
+                lookup, inserted, removed);
+            return removed;
+        });
+    }
+
+    private void addWaystone(List<WaystoneRow> rows, String world, int x, int y, int z) {
+        String underBlock = x % 2 == 0 ? "GOLD_BLOCK" : "EMERALD_BLOCK";
+
+        index.add(world, x, y, z, underBlock);
+        rows.add(new WaystoneRow(world, x, y, z, underBlock));
+        if (WORLD.equals(world)) {
+            waystones.put(WaystoneIndex.packPosition(x, y, z), underBlock);
+        }
+    }
+
+    private int countRows() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM waystones");
+            ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+}